@@ -0,0 +1,215 @@
+package com.docstore.benchmark;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docstore.core.dao.GenericDAO;
+import com.docstore.core.entity.TUsr;
+
+/**
+ * One embedded database per trial: H2 in MySQL mode, created from
+ * data/script.txt and seeded with datasetSize users, with the DAO wiring of
+ * applicationContext-benchmark.xml on top.
+ *
+ * The script is looked up at the docstore.benchmark.script system property,
+ * ../data/script.txt by default (the benchmark is run from its module
+ * directory).
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+	private static final int SEED_BATCH_SIZE = 1000;
+
+	private static final AtomicLong DATABASE_COUNT = new AtomicLong();
+
+	@Param({ "1000", "10000", "100000" })
+	public int datasetSize;
+
+	private ClassPathXmlApplicationContext context;
+
+	private GenericDAO genericDAO;
+
+	private TransactionTemplate transactionTemplate;
+
+	private int[] ids;
+
+	private final AtomicLong newUserCount = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		System.setProperty("docstore.benchmark.url", "jdbc:h2:mem:docstore_"
+				+ DATABASE_COUNT.incrementAndGet()
+				+ ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1");
+		final File script = new File(System.getProperty(
+				"docstore.benchmark.script", "../data/script.txt"));
+
+		// the schema has to exist before Hibernate starts
+		final DataSource schemaDataSource = new org.springframework.jdbc.datasource.DriverManagerDataSource(
+				System.getProperty("docstore.benchmark.url"), "sa", "");
+		final Connection connection = schemaDataSource.getConnection();
+		try {
+			ScriptLoader.run(connection, script);
+		} finally {
+			connection.close();
+		}
+
+		context = new ClassPathXmlApplicationContext(
+				"applicationContext-benchmark.xml");
+		genericDAO = context.getBean("genericDAO", GenericDAO.class);
+		transactionTemplate = new TransactionTemplate(context.getBean(
+				"transactionManager", PlatformTransactionManager.class));
+		seed(context.getBean("dataSource", DataSource.class));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		final Connection connection = context.getBean("dataSource",
+				DataSource.class).getConnection();
+		try {
+			final Statement statement = connection.createStatement();
+			statement.execute("shutdown");
+			statement.close();
+		} finally {
+			connection.close();
+		}
+		context.close();
+	}
+
+	/**
+	 * Insert datasetSize users with JDBC batches, taking the ids from the
+	 * same t_unique_key blocks the entity uses.
+	 */
+	private void seed(final DataSource dataSource) throws Exception {
+		ids = new int[datasetSize];
+		final Connection connection = dataSource.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			final PreparedStatement insert = connection
+					.prepareStatement("insert into t_usr (usr_id, usr_name, email, password, first_name, last_name)"
+							+ " values (?, ?, ?, ?, ?, ?)");
+			for (int i = 0; i < datasetSize; i++) {
+				ids[i] = genericDAO.generateID("t_usr", "t_unique_key",
+						"key_value", "key_name", "49").intValue();
+				final TUsr user = seededUser(i);
+				insert.setInt(1, ids[i]);
+				insert.setString(2, user.getUsrName());
+				insert.setString(3, user.getEmail());
+				insert.setString(4, user.getPassword());
+				insert.setString(5, user.getFirstName());
+				insert.setString(6, user.getLastName());
+				insert.addBatch();
+				if ((i + 1) % SEED_BATCH_SIZE == 0) {
+					insert.executeBatch();
+				}
+			}
+			insert.executeBatch();
+			insert.close();
+			connection.commit();
+		} finally {
+			connection.close();
+		}
+	}
+
+	public GenericDAO getGenericDAO() {
+		return genericDAO;
+	}
+
+	public TransactionTemplate getTransactionTemplate() {
+		return transactionTemplate;
+	}
+
+	/**
+	 * @return the id of a random seeded user
+	 */
+	public int randomId() {
+		return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+	}
+
+	/**
+	 * @param count
+	 *            number of consecutive seeded ids
+	 * @return the index of a random run of count seeded ids
+	 */
+	public int randomIndex(final int count) {
+		return ThreadLocalRandom.current().nextInt(
+				Math.max(1, ids.length - count));
+	}
+
+	public int idAt(final int index) {
+		return ids[index];
+	}
+
+	/**
+	 * @param index
+	 *            index of a seeded user
+	 * @return a detached copy of that user as seeded, without its version
+	 */
+	public TUsr seededUser(final int index) {
+		final TUsr user = new TUsr();
+		user.setUsrId(ids[index]);
+		user.setUsrName("seed.user." + index);
+		user.setEmail("seed.user." + index + "@docstore.com");
+		user.setPassword("password");
+		user.setFirstName("Seed");
+		user.setLastName("User " + index);
+		return user;
+	}
+
+	/**
+	 * @param count
+	 *            number of users
+	 * @return count new users, stored in one transaction
+	 */
+	public List<TUsr> storeNewUsers(final int count) {
+		final List<TUsr> users = new ArrayList<TUsr>(count);
+		for (int i = 0; i < count; i++) {
+			users.add(newUser());
+		}
+		return transactionTemplate
+				.execute(new TransactionCallback<List<TUsr>>() {
+					public List<TUsr> doInTransaction(
+							final TransactionStatus status) {
+						return genericDAO.storeBatch(users);
+					}
+				});
+	}
+
+	/**
+	 * @return a new transient user with a unique name
+	 */
+	public TUsr newUser() {
+		final long n = newUserCount.incrementAndGet();
+		final TUsr user = new TUsr();
+		user.setUsrName("new.user." + n);
+		user.setEmail("new.user." + n + "@docstore.com");
+		user.setPassword("password");
+		user.setFirstName("New");
+		user.setLastName("User " + n);
+		return user;
+	}
+
+}
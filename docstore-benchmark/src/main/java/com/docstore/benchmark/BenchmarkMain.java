@@ -0,0 +1,35 @@
+package com.docstore.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count of the docstore.benchmark.threads
+ * system property (default 1,4,16). Other JMH command line options are passed
+ * through, e.g. -p datasetSize=10000 or a benchmark name pattern.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		final String threads = System.getProperty("docstore.benchmark.threads",
+				"1,4,16");
+		for (String count : threads.split(",")) {
+			new Runner(new OptionsBuilder().parent(commandLine)
+					.threads(Integer.parseInt(count.trim()))
+					.resultFormat(ResultFormatType.JSON)
+					.result("jmh-result-" + count.trim() + "-threads.json")
+					.build()).run();
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.docstore.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import com.docstore.core.dao.BulkMode;
+import com.docstore.core.dao.KeysetPage;
+import com.docstore.core.entity.TUsr;
+
+/**
+ * Throughput of the GenericDAO operations the portal depends on, for every
+ * datasetSize of BenchmarkDatabase. Write benchmarks handle BATCH_SIZE rows
+ * per invocation in one transaction, through the EntityManager (MANAGED) or
+ * a StatelessSession (the *Stateless variants); updates write the
+ * ThreadUsers of the calling thread. Page benchmarks read PAGE_SIZE rows.
+ * Add -prof gc to compare the allocation of the two modes.
+ *
+ * Run with BenchmarkMain to repeat the suite for several thread counts, or
+ * directly with java -jar target/benchmarks.jar -t 8.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class GenericDAOBenchmark {
+
+	static final int BATCH_SIZE = 100;
+
+	static final int PAGE_SIZE = 50;
+
+	@Benchmark
+	public TUsr get(final BenchmarkDatabase db) {
+		return db.getGenericDAO().get(TUsr.class, db.randomId());
+	}
+
+	@Benchmark
+	public List<TUsr> storeBatch(final BenchmarkDatabase db) {
+		return storeBatch(db, BulkMode.MANAGED);
+	}
+
+	@Benchmark
+	public List<TUsr> storeBatchStateless(final BenchmarkDatabase db) {
+		return storeBatch(db, BulkMode.STATELESS);
+	}
+
+	@Benchmark
+	public List<TUsr> updateBatch(final BenchmarkDatabase db,
+			final ThreadUsers threadUsers) {
+		return updateBatch(db, threadUsers, BulkMode.MANAGED);
+	}
+
+	@Benchmark
+	public List<TUsr> updateBatchStateless(final BenchmarkDatabase db,
+			final ThreadUsers threadUsers) {
+		return updateBatch(db, threadUsers, BulkMode.STATELESS);
+	}
+
+	@Benchmark
+	public Integer updateBatchByNamedQuery(final BenchmarkDatabase db,
+			final ThreadUsers threadUsers) {
+		final List<List<Object>> rows = new ArrayList<List<Object>>(BATCH_SIZE);
+		for (TUsr user : threadUsers.nextBatch()) {
+			final List<Object> row = new ArrayList<Object>(2);
+			// the id keeps emails of concurrent threads apart
+			row.add("named." + user.getUsrId() + "." + System.nanoTime()
+					+ "@docstore.com");
+			row.add(user.getUsrId());
+			rows.add(row);
+		}
+		return inTransaction(db, new TransactionCallback<Integer>() {
+			public Integer doInTransaction(final TransactionStatus status) {
+				return db.getGenericDAO().updateBatchByNamedQuery(
+						"TUsr.updateEmail", rows);
+			}
+		});
+	}
+
+	@Benchmark
+	public List<TUsr> loadAll(final BenchmarkDatabase db) {
+		return db.getGenericDAO().loadAll(TUsr.class);
+	}
+
+	@Benchmark
+	public List<TUsr> pagedNamedQueryByOffset(final BenchmarkDatabase db) {
+		return db.getGenericDAO().findEntitiesByNamedQueryMultiCond(
+				"TUsr.findPageAfterId",
+				Collections.<Object> singletonList(Integer.valueOf(0)),
+				db.randomIndex(PAGE_SIZE), PAGE_SIZE);
+	}
+
+	@Benchmark
+	public KeysetPage<TUsr> pagedNamedQueryByKeyset(final BenchmarkDatabase db) {
+		return db.getGenericDAO().findEntitiesByNamedQueryKeyset(
+				"TUsr.findPageAfterId", null, "usrId",
+				Integer.valueOf(db.idAt(db.randomIndex(PAGE_SIZE))), PAGE_SIZE);
+	}
+
+	private static List<TUsr> storeBatch(final BenchmarkDatabase db,
+			final BulkMode mode) {
+		final List<TUsr> users = new ArrayList<TUsr>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			users.add(db.newUser());
+		}
+		return inTransaction(db, new TransactionCallback<List<TUsr>>() {
+			public List<TUsr> doInTransaction(final TransactionStatus status) {
+				return db.getGenericDAO().storeBatch(users, mode);
+			}
+		});
+	}
+
+	private static List<TUsr> updateBatch(final BenchmarkDatabase db,
+			final ThreadUsers threadUsers, final BulkMode mode) {
+		final List<TUsr> users = new ArrayList<TUsr>(BATCH_SIZE);
+		for (TUsr stored : threadUsers.nextBatch()) {
+			// detached copy, as a controller would bind it from a form
+			final TUsr user = new TUsr();
+			user.setUsrId(stored.getUsrId());
+			user.setUsrName(stored.getUsrName());
+			user.setEmail("updated." + stored.getUsrId() + "."
+					+ System.nanoTime() + "@docstore.com");
+			user.setPassword(stored.getPassword());
+			user.setFirstName(stored.getFirstName());
+			user.setLastName(stored.getLastName());
+			users.add(user);
+		}
+		return inTransaction(db, new TransactionCallback<List<TUsr>>() {
+			public List<TUsr> doInTransaction(final TransactionStatus status) {
+				return db.getGenericDAO().updateBatch(users, mode);
+			}
+		});
+	}
+
+	private static <T> T inTransaction(final BenchmarkDatabase db,
+			final TransactionCallback<T> callback) {
+		return db.getTransactionTemplate().execute(callback);
+	}
+
+}
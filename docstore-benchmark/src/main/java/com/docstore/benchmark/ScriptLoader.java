@@ -0,0 +1,117 @@
+package com.docstore.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs data/script.txt, which is written for MySQL, against H2 in MySQL
+ * mode.
+ *
+ * H2 accepts the backquoted identifiers and int(11) columns as they are; the
+ * few statements it does not understand are rewritten or skipped:
+ * create database is skipped (the benchmark database is the JDBC url),
+ * alter table ... auto_increment is skipped (t_usr ids come from t_unique_key)
+ * and add unique key / add key become add constraint ... unique / create
+ * index.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public final class ScriptLoader {
+
+	private static final Pattern CREATE_DATABASE = Pattern.compile(
+			"create\\s+database\\b.*", Pattern.CASE_INSENSITIVE
+					| Pattern.DOTALL);
+
+	private static final Pattern AUTO_INCREMENT = Pattern.compile(
+			"alter\\s+table\\s+\\S+\\s+auto_increment\\s*=\\s*\\d+",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern ADD_UNIQUE_KEY = Pattern.compile(
+			"alter\\s+table\\s+(\\S+)\\s+add\\s+unique\\s+(?:key|index)\\s+(\\S+)\\s*(\\(.*\\))",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private static final Pattern ADD_KEY = Pattern.compile(
+			"alter\\s+table\\s+(\\S+)\\s+add\\s+(?:key|index)\\s+(\\S+)\\s*(\\(.*\\))",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private ScriptLoader() {
+	}
+
+	/**
+	 * @param connection
+	 *            the H2 connection
+	 * @param script
+	 *            the MySQL script
+	 * @throws IOException
+	 *             if the script cannot be read
+	 * @throws SQLException
+	 *             if a statement fails
+	 */
+	public static void run(final Connection connection, final File script)
+			throws IOException, SQLException {
+		final Statement statement = connection.createStatement();
+		try {
+			for (String sql : readStatements(script)) {
+				final String h2Sql = toH2(sql);
+				if (h2Sql != null) {
+					statement.execute(h2Sql);
+				}
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * @return the statements of the script without -- comments
+	 */
+	static List<String> readStatements(final File script) throws IOException {
+		final StringBuilder text = new StringBuilder();
+		for (String line : Files.readAllLines(script.toPath(),
+				Charset.forName("UTF-8"))) {
+			if (!line.trim().startsWith("--")) {
+				text.append(line).append('\n');
+			}
+		}
+		final List<String> statements = new ArrayList<String>();
+		for (String sql : text.toString().split(";")) {
+			if (sql.trim().length() > 0) {
+				statements.add(sql.trim());
+			}
+		}
+		return statements;
+	}
+
+	/**
+	 * @return the statement in a form H2 accepts, null to skip it
+	 */
+	static String toH2(final String sql) {
+		if (CREATE_DATABASE.matcher(sql).matches()
+				|| AUTO_INCREMENT.matcher(sql).matches()) {
+			return null;
+		}
+		Matcher matcher = ADD_UNIQUE_KEY.matcher(sql);
+		if (matcher.matches()) {
+			return "alter table " + matcher.group(1) + " add constraint "
+					+ matcher.group(2) + " unique " + matcher.group(3);
+		}
+		matcher = ADD_KEY.matcher(sql);
+		if (matcher.matches()) {
+			return "create index " + matcher.group(2) + " on "
+					+ matcher.group(1) + " " + matcher.group(3);
+		}
+		return sql;
+	}
+
+}
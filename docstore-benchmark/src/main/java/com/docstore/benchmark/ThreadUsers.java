@@ -0,0 +1,59 @@
+package com.docstore.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.docstore.core.entity.TUsr;
+
+/**
+ * The users one benchmark thread updates: its own slice of the seeded users,
+ * topped up with new users when the slice is smaller than BATCH_SIZE.
+ * Updates of detached copies are checked against the current version, so
+ * threads updating the same rows would fail with optimistic locking
+ * exceptions; with rows of its own every thread measures the DAO, not the
+ * contention.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+public class ThreadUsers {
+
+	private List<TUsr> users;
+
+	@Setup(Level.Trial)
+	public void setUp(final BenchmarkDatabase db,
+			final ThreadParams threadParams) {
+		final int from = db.datasetSize * threadParams.getThreadIndex()
+				/ threadParams.getThreadCount();
+		final int to = db.datasetSize * (threadParams.getThreadIndex() + 1)
+				/ threadParams.getThreadCount();
+		users = new ArrayList<TUsr>(Math.max(to - from,
+				GenericDAOBenchmark.BATCH_SIZE));
+		for (int i = from; i < to; i++) {
+			users.add(db.seededUser(i));
+		}
+		if (users.size() < GenericDAOBenchmark.BATCH_SIZE) {
+			users.addAll(db.storeNewUsers(GenericDAOBenchmark.BATCH_SIZE
+					- users.size()));
+		}
+	}
+
+	/**
+	 * @return a random run of BATCH_SIZE users of this thread
+	 */
+	public List<TUsr> nextBatch() {
+		final int from = ThreadLocalRandom.current().nextInt(
+				users.size() - GenericDAOBenchmark.BATCH_SIZE + 1);
+		return users.subList(from, from + GenericDAOBenchmark.BATCH_SIZE);
+	}
+
+}
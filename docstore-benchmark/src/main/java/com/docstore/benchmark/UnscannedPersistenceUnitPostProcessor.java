@@ -0,0 +1,24 @@
+package com.docstore.benchmark;
+
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.orm.jpa.persistenceunit.PersistenceUnitPostProcessor;
+
+/**
+ * Clears the root of the persistence unit so that Hibernate does not scan
+ * benchmarks.jar for entities and orm.xml: the unit lists all of its mappings,
+ * and the scanner of Hibernate 4.1 fails on the Java 8 class files of the
+ * shaded dependencies.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class UnscannedPersistenceUnitPostProcessor implements
+		PersistenceUnitPostProcessor {
+
+	public void postProcessPersistenceUnitInfo(
+			final MutablePersistenceUnitInfo pui) {
+		pui.setPersistenceUnitRootUrl(null);
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous facade over GenericDAO. Every call runs on the DAO executor in
+ * a transaction of its own, so several independent lookups can be started
+ * from one request thread and combined with CompletableFuture.allOf.
+ *
+ * The transaction of the calling thread is never joined: reads do not see
+ * its uncommitted changes and writes commit even if it rolls back. The
+ * returned entities are detached.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public interface AsyncGenericDAO {
+
+	/**
+	 * Retrieve an entity object by its primary key.
+	 *
+	 * @param <T> the generic type
+	 * @param <I> the generic type
+	 * @param clazz name of the class
+	 * @param identification the primary key value
+	 * @return a future of the entity, completed with null if not found
+	 */
+	<T, I extends Serializable> CompletableFuture<T> get(Class<T> clazz,
+			I identification);
+
+	/**
+	 * Retrieve entities using a JPA named query.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name to be searched
+	 * @return a future of the entities
+	 */
+	<T extends Object> CompletableFuture<List<T>> findEntitiesByNamedQuery(
+			final String queryName);
+
+	/**
+	 * Retrieve entities based on given search criteria.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name to be searched
+	 * @param queryParams conditional parameters to be used in query
+	 * @return a future of the entities
+	 */
+	<T extends Object> CompletableFuture<List<T>> findEntitiesByNamedQuery(
+			final String queryName, final List<Object> queryParams);
+
+	/**
+	 * Retrieve a range of entities based on given search criteria.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name to be searched
+	 * @param queryParams conditional parameters to be used in query
+	 * @param index specifies start of the result
+	 * @param maxresult specifies end of the result
+	 * @return a future of the entities
+	 */
+	<T extends Object> CompletableFuture<List<T>> findEntitiesByNamedQueryMultiCond(
+			final String queryName, final List<Object> queryParams,
+			final int index, final int maxresult);
+
+	/**
+	 * Retrieve a range of entities using a named query with an IN clause.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name to be searched
+	 * @param queryParams conditional parameters to be used in query using IN clause
+	 * @param index specifies start of the result
+	 * @param maxresult specifies end of the result
+	 * @return a future of the entities
+	 */
+	<T extends Object> CompletableFuture<List<T>> findEntitiesByNamedInQuery(
+			final String queryName, final List<Object> queryParams,
+			final int index, final int maxresult);
+
+	/**
+	 * persist entities using batch process.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of an entity
+	 * @return a future of the persisted entities, completed after commit
+	 */
+	<T extends Object> CompletableFuture<List<T>> storeBatch(
+			final List<T> entityList);
+
+	/**
+	 * Save all changes made to existing entities using batch process.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of entities to be updated
+	 * @return a future of the updated entities, completed after commit
+	 */
+	<T extends Object> CompletableFuture<List<T>> updateBatch(
+			final List<T> entityList);
+
+	/**
+	 * Run arbitrary DAO work on the DAO executor in a transaction of its own.
+	 *
+	 * @param <R> the result type
+	 * @param task the work to run
+	 * @param readOnly whether the transaction is read-only
+	 * @return a future of the task result, completed with a
+	 *         RejectedExecutionException if the executor queue is full or the
+	 *         DAO was destroyed
+	 */
+	<R> CompletableFuture<R> submit(final Callable<R> task,
+			final boolean readOnly);
+
+}
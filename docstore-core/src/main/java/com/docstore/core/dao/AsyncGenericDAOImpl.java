@@ -0,0 +1,292 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docstore.core.datasource.DatabaseContextHolder;
+
+/**
+ * Class provides API implementation for AsyncGenericDAO.
+ *
+ * Tasks run on a fixed pool of poolSize threads, which should match the
+ * maximum size of the connection pool, in front of a bounded queue. A task
+ * submitted while the queue is full or after destroy is not run; its future
+ * completes with a RejectedExecutionException. Tasks never run on the calling
+ * thread, where they would suspend its transaction and hold a second
+ * connection. With virtualThreads every task gets a virtual thread instead
+ * (JDK 21 and later) and at most poolSize of them use the database at a time.
+ * Each task runs in a new transaction.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class AsyncGenericDAOImpl implements AsyncGenericDAO, InitializingBean,
+		DisposableBean {
+
+	private static final Log LOGGER = LogFactory
+			.getLog(AsyncGenericDAOImpl.class);
+
+	private GenericDAO genericDAO;
+
+	private PlatformTransactionManager transactionManager;
+
+	private int poolSize = 20;
+
+	private int queueCapacity = 1000;
+
+	private boolean virtualThreads = false;
+
+	private ExecutorService executor;
+
+	private Semaphore permits;
+
+	private TransactionTemplate readOnlyTemplate;
+
+	private TransactionTemplate readWriteTemplate;
+
+	@Override
+	public void afterPropertiesSet() {
+		readOnlyTemplate = newTransactionTemplate(true);
+		readWriteTemplate = newTransactionTemplate(false);
+		if (virtualThreads) {
+			executor = newVirtualThreadExecutor();
+			if (executor != null) {
+				permits = new Semaphore(poolSize, true);
+				return;
+			}
+			LOGGER.warn("Virtual threads are not available on this JVM, using "
+					+ poolSize + " platform threads");
+		}
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						queueCapacity), new ThreadFactory() {
+					public Thread newThread(final Runnable runnable) {
+						final Thread thread = new Thread(runnable, "async-dao-"
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public <T, I extends Serializable> CompletableFuture<T> get(
+			final Class<T> clazz, final I identification) {
+		return submit(new Callable<T>() {
+			public T call() {
+				return genericDAO.get(clazz, identification);
+			}
+		}, true);
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> findEntitiesByNamedQuery(
+			final String queryName) {
+		return submit(new Callable<List<T>>() {
+			public List<T> call() {
+				return genericDAO.findEntitiesByNamedQuery(queryName);
+			}
+		}, true);
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> findEntitiesByNamedQuery(
+			final String queryName, final List<Object> queryParams) {
+		return submit(new Callable<List<T>>() {
+			public List<T> call() {
+				return genericDAO.findEntitiesByNamedQuery(queryName,
+						queryParams);
+			}
+		}, true);
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> findEntitiesByNamedQueryMultiCond(
+			final String queryName, final List<Object> queryParams,
+			final int index, final int maxresult) {
+		return submit(new Callable<List<T>>() {
+			public List<T> call() {
+				return genericDAO.findEntitiesByNamedQueryMultiCond(queryName,
+						queryParams, index, maxresult);
+			}
+		}, true);
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> findEntitiesByNamedInQuery(
+			final String queryName, final List<Object> queryParams,
+			final int index, final int maxresult) {
+		return submit(new Callable<List<T>>() {
+			public List<T> call() {
+				return genericDAO.findEntitiesByNamedInQuery(queryName,
+						queryParams, index, maxresult);
+			}
+		}, true);
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> storeBatch(final List<T> entityList) {
+		return submit(new Callable<List<T>>() {
+			public List<T> call() {
+				return genericDAO.storeBatch(entityList);
+			}
+		}, false);
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> updateBatch(final List<T> entityList) {
+		return submit(new Callable<List<T>>() {
+			public List<T> call() {
+				return genericDAO.updateBatch(entityList);
+			}
+		}, false);
+	}
+
+	@Override
+	public <R> CompletableFuture<R> submit(final Callable<R> task,
+			final boolean readOnly) {
+		final TransactionTemplate template = readOnly ? readOnlyTemplate
+				: readWriteTemplate;
+		final CompletableFuture<R> future = new CompletableFuture<R>();
+		// a caller that wrote keeps reading its writes from the primary
+		final Object databaseContext = DatabaseContextHolder.snapshot();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					if (future.isDone()) {
+						// cancelled while queued
+						return;
+					}
+					final Object callerContext = DatabaseContextHolder
+							.snapshot();
+					DatabaseContextHolder.restore(databaseContext);
+					try {
+						future.complete(runInTransaction(template, task));
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
+					} finally {
+						DatabaseContextHolder.restore(callerContext);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// queue full or destroyed
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private <R> R runInTransaction(final TransactionTemplate template,
+			final Callable<R> task) throws InterruptedException {
+		if (permits != null) {
+			permits.acquire();
+		}
+		try {
+			return template.execute(new TransactionCallback<R>() {
+				public R doInTransaction(final TransactionStatus status) {
+					try {
+						return task.call();
+					} catch (RuntimeException e) {
+						throw e;
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}
+			});
+		} finally {
+			if (permits != null) {
+				permits.release();
+			}
+		}
+	}
+
+	private TransactionTemplate newTransactionTemplate(final boolean readOnly) {
+		final TransactionTemplate template = new TransactionTemplate(
+				transactionManager);
+		// never join a transaction the task thread might be bound to
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.setReadOnly(readOnly);
+		return template;
+	}
+
+	/**
+	 * @return Executors.newVirtualThreadPerTaskExecutor() if the JVM has it,
+	 *         else null
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	public void setGenericDAO(final GenericDAO genericDAO) {
+		this.genericDAO = genericDAO;
+	}
+
+	public void setTransactionManager(
+			final PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * @param poolSize
+	 *            number of tasks using the database at a time, normally the
+	 *            maximum size of the connection pool
+	 */
+	public void setPoolSize(final int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * @param queueCapacity
+	 *            tasks waiting for a pool thread before further tasks are
+	 *            rejected
+	 */
+	public void setQueueCapacity(final int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * @param virtualThreads
+	 *            run every task on a virtual thread when the JVM supports it
+	 */
+	public void setVirtualThreads(final boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+}
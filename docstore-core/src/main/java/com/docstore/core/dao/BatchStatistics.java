@@ -0,0 +1,150 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput statistics of a batch operation. Every flushed batch is recorded
+ * with its row count and duration, together with the entities held by the
+ * persistence context and the used heap at the end of the batch, so the
+ * MANAGED and STATELESS bulk modes can be compared.
+ * 
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public class BatchStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<Integer> batchRows = new ArrayList<Integer>();
+
+	private final List<Long> batchNanos = new ArrayList<Long>();
+
+	private long rowCount;
+
+	private long elapsedNanos;
+
+	private BulkMode mode = BulkMode.MANAGED;
+
+	private int peakManagedEntities;
+
+	private long peakUsedHeapBytes;
+
+	public BatchStatistics() {
+	}
+
+	public BatchStatistics(final BulkMode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Record a flushed batch.
+	 * 
+	 * @param rows
+	 *            the number of rows written by the batch
+	 * @param nanos
+	 *            the time taken by the batch in nanoseconds
+	 */
+	public void addBatch(final int rows, final long nanos) {
+		batchRows.add(rows);
+		batchNanos.add(nanos);
+		rowCount += rows;
+		elapsedNanos += nanos;
+	}
+
+	/**
+	 * Record a flushed batch with the memory held at its end.
+	 * 
+	 * @param rows
+	 *            the number of rows written by the batch
+	 * @param nanos
+	 *            the time taken by the batch in nanoseconds
+	 * @param managedEntities
+	 *            entities in the persistence context before it was cleared
+	 */
+	public void addBatch(final int rows, final long nanos,
+			final int managedEntities) {
+		addBatch(rows, nanos);
+		peakManagedEntities = Math.max(peakManagedEntities, managedEntities);
+		final Runtime runtime = Runtime.getRuntime();
+		peakUsedHeapBytes = Math.max(peakUsedHeapBytes, runtime.totalMemory()
+				- runtime.freeMemory());
+	}
+
+	public BulkMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the most entities the persistence context held at the end of a
+	 *         batch, 0 for STATELESS
+	 */
+	public int getPeakManagedEntities() {
+		return peakManagedEntities;
+	}
+
+	/**
+	 * @return the highest used heap sampled at the end of a batch; includes
+	 *         garbage not yet collected, so compare runs of the same size
+	 */
+	public long getPeakUsedHeapBytes() {
+		return peakUsedHeapBytes;
+	}
+
+	public int getBatchCount() {
+		return batchRows.size();
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+	}
+
+	/**
+	 * @return the overall throughput in rows per second
+	 */
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : rowCount * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return the throughput of every batch in rows per second, in execution
+	 *         order
+	 */
+	public List<Double> getBatchRowsPerSecond() {
+		final List<Double> throughput = new ArrayList<Double>(batchRows.size());
+		for (int i = 0; i < batchRows.size(); i++) {
+			final long nanos = batchNanos.get(i);
+			throughput.add(nanos == 0 ? 0 : batchRows.get(i) * 1e9 / nanos);
+		}
+		return Collections.unmodifiableList(throughput);
+	}
+
+	/**
+	 * @return the duration of every batch in milliseconds, in execution order
+	 */
+	public List<Long> getBatchMillis() {
+		final List<Long> millis = new ArrayList<Long>(batchNanos.size());
+		for (Long nanos : batchNanos) {
+			millis.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+		}
+		return Collections.unmodifiableList(millis);
+	}
+
+	@Override
+	public String toString() {
+		return "BatchStatistics [mode=" + mode + ", rows=" + rowCount
+				+ ", batches=" + getBatchCount() + ", elapsedMillis="
+				+ getElapsedMillis() + ", rowsPerSecond=" + getRowsPerSecond()
+				+ ", peakManagedEntities=" + peakManagedEntities
+				+ ", peakUsedHeapBytes=" + peakUsedHeapBytes + "]";
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.docstore.core.dao;
+
+/**
+ * How the batch methods of GenericDAO write entities.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public enum BulkMode {
+
+	/**
+	 * Through the EntityManager: merge reads every updated entity first and
+	 * each entity is snapshotted for dirty checking until the next flush.
+	 * Cascades, listeners and the second level cache work as usual.
+	 */
+	MANAGED,
+
+	/**
+	 * Through a Hibernate StatelessSession on the same connection and
+	 * transaction: every entity becomes a plain insert or update, added to
+	 * the JDBC batch, with no persistence context, dirty checking, cascades
+	 * or listeners. The second level cache region of the written classes is
+	 * evicted afterwards.
+	 */
+	STATELESS
+
+}
@@ -0,0 +1,74 @@
+package com.docstore.core.dao;
+
+import java.util.Set;
+
+import org.hibernate.CustomEntityDirtinessStrategy;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import com.docstore.core.entity.DirtyTrackable;
+
+/**
+ * Dirty checks DirtyTrackable entities from the properties their setters
+ * recorded instead of comparing every property with the loaded snapshot.
+ * Entities with no recorded change are skipped by the flush altogether.
+ * When there is a snapshot, a recorded property only counts if its value
+ * differs from it, so setting a property back or merging in an unchanged
+ * copy writes nothing. An entity reattached with Session.update has no
+ * snapshot, and its recorded properties are written as they are.
+ *
+ * Configured with hibernate.entity_dirtiness_strategy; other entities are
+ * dirty checked as usual.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class DirtyTrackingStrategy implements CustomEntityDirtinessStrategy {
+
+	@Override
+	public boolean canDirtyCheck(final Object entity,
+			final EntityPersister persister, final Session session) {
+		return entity instanceof DirtyTrackable;
+	}
+
+	@Override
+	public boolean isDirty(final Object entity,
+			final EntityPersister persister, final Session session) {
+		return !((DirtyTrackable) entity).getDirtyProperties().isEmpty();
+	}
+
+	@Override
+	public void resetDirty(final Object entity,
+			final EntityPersister persister, final Session session) {
+		((DirtyTrackable) entity).clearDirtyProperties();
+	}
+
+	@Override
+	public void findDirty(final Object entity,
+			final EntityPersister persister, final Session session,
+			final DirtyCheckContext dirtyCheckContext) {
+		final Set<String> dirtyProperties = ((DirtyTrackable) entity)
+				.getDirtyProperties();
+		final EntityEntry entry = ((SessionImplementor) session)
+				.getPersistenceContext().getEntry(entity);
+		// AttributeInformation.getLoadedValue() reads the select-before-update
+		// snapshot, which is null otherwise; use the loaded state instead
+		final Object[] loadedState = entry == null ? null : entry
+				.getLoadedState();
+		dirtyCheckContext.doDirtyChecking(new AttributeChecker() {
+			public boolean isDirty(final AttributeInformation attribute) {
+				if (!dirtyProperties.contains(attribute.getName())) {
+					return false;
+				}
+				return loadedState == null
+						|| !attribute.getType().isSame(
+								attribute.getCurrentValue(),
+								loadedState[attribute.getAttributeIndex()]);
+			}
+		});
+	}
+
+}
@@ -2,7 +2,9 @@ package com.docstore.core.dao;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 
@@ -32,6 +34,34 @@ public interface GenericDAO {
 	 */
 	<T extends Serializable> void remove(final T entity);
 
+	/**
+	 * Evict an entity object from the second level cache. Required when the
+	 * underlying row was changed without going through the entity manager.
+	 *
+	 * @param <T> the generic type
+	 * @param clazz name of the class
+	 * @param identification the primary key value of the cached entity
+	 */
+	<T> void evict(Class<T> clazz, Serializable identification);
+
+	/**
+	 * Evict all entity objects of the given class from the second level cache.
+	 *
+	 * @param <T> the generic type
+	 * @param clazz name of the class
+	 */
+	<T> void evictAll(Class<T> clazz);
+
+	/**
+	 * Invalidate the cached entities, natural ids and query results of the
+	 * given class after its table was written around the entity manager, e.g.
+	 * by JDBC.
+	 *
+	 * @param <T> the generic type
+	 * @param clazz name of the class
+	 */
+	<T> void invalidate(Class<T> clazz);
+
 	/**
 	 * Stores a new entity object in to the persistent store.
 	 *
@@ -41,6 +71,29 @@ public interface GenericDAO {
 	 */
 	<T extends Serializable> T store(final T entity);
 
+	/**
+	 * Stores a new entity object under the identifier it already carries,
+	 * bypassing its id generator, e.g. when the id was allocated globally
+	 * for a sharded table.
+	 *
+	 * @param <T> the generic type
+	 * @param entity entity object with its identifier set
+	 * @return persisted entity object
+	 */
+	<T extends Serializable> T storeWithId(final T entity);
+
+	/**
+	 * Stores new entity objects under the identifiers they already carry,
+	 * like storeWithId, as JDBC batched inserts through a StatelessSession
+	 * (see BulkMode.STATELESS). An identifier that exists already fails the
+	 * batch with a constraint violation instead of being looked up first.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList entity objects with their identifiers set
+	 * @return the persisted entity objects
+	 */
+	<T extends Serializable> List<T> storeBatchWithId(final List<T> entityList);
+
 	/**
 	 * Save all changes made to an existing entity object.
 	 *
@@ -72,6 +125,36 @@ public interface GenericDAO {
 	 */
 	<T, I extends Serializable> T get(Class<T> clazz, I identification);
 
+	/**
+	 * Retrieve an object based on the value of its single @NaturalId
+	 * property. The natural id is resolved to the primary key from the
+	 * persistence context or the natural id cache of the entity when it has
+	 * one, so repeated lookups need no query.
+	 *
+	 * @param <T> the generic type
+	 * @param clazz name of the class
+	 * @param naturalId the natural id value
+	 * @return an Object if it exists against given natural id. Returns null if
+	 * not found
+	 */
+	<T> T getByNaturalId(Class<T> clazz, Object naturalId);
+
+	/**
+	 * Retrieve objects based on a collection of primary key values. Entities
+	 * already in the persistence context or the second level cache are
+	 * served from there; the others are loaded with IN queries of at most
+	 * inListChunkSize keys each.
+	 *
+	 * @param <T> the generic type
+	 * @param <I> the generic type
+	 * @param clazz name of the class
+	 * @param identifications the primary key values
+	 * @return the entities in the order of the given keys, without the keys
+	 * that were not found
+	 */
+	<T, I extends Serializable> List<T> getAll(Class<T> clazz,
+			Collection<I> identifications);
+
 	/**
 	 * Fetch count of records based on given search criteria using JPA named
 	 * query.
@@ -107,6 +190,37 @@ public interface GenericDAO {
 	 * @return
 	 */
 	int executeUpdateOnNativeQuery(final String query);
+
+	/**
+	 * Method to execute a Native SQL query for INSERT, UPDATE or DELETE
+	 * operation. Only the cached data of the given entities is invalidated.
+	 *
+	 * @param query The native query to be executed
+	 * @param affectedEntities the entity classes whose tables are updated
+	 * @return the number of updated rows
+	 */
+	int executeUpdateOnNativeQuery(final String query,
+			final Class<?>... affectedEntities);
+
+	/**
+	 * Method to execute a Native SQL query with positional ? parameters for
+	 * INSERT, UPDATE or DELETE operation. Without
+	 * affectedEntities all cached data is invalidated.
+	 *
+	 * @param query The native query to be executed
+	 * @param queryParams positional parameters to be used in query
+	 * @param affectedEntities the entity classes whose tables are updated
+	 * @return the number of updated rows
+	 */
+	int executeUpdateOnNativeQuery(final String query,
+			final List<Object> queryParams, final Class<?>... affectedEntities);
+
+	/**
+	 * Fetch the query result cache statistics of every cacheable named query.
+	 *
+	 * @return hit, miss and put counts keyed by the named query name
+	 */
+	Map<String, QueryCacheStatistics> getQueryCacheStatistics();
 	
 
 	/**
@@ -130,6 +244,29 @@ public interface GenericDAO {
 	 */
 	BigInteger countByNativeQuery(final String query);
 
+	/**
+	 * Method to execute a Native SQL query with positional ? parameters. The
+	 * SQL text stays the same for every value, so the prepared statement is
+	 * reused from the statement cache.
+	 *
+	 * @param <T> the generic type
+	 * @param query The native query to be executed
+	 * @param queryParams positional parameters to be used in query
+	 * @return a list of an Object if it exists against given search criteria
+	 */
+	<T extends Object> List<T> findByNativeQuery(final String query,
+			final List<Object> queryParams);
+
+	/**
+	 * Method to execute a Native SQL count query with positional parameters.
+	 *
+	 * @param query The native query to be executed
+	 * @param queryParams positional parameters to be used in query
+	 * @return BigInteger count if it exists against given search criteria
+	 */
+	BigInteger countByNativeQuery(final String query,
+			final List<Object> queryParams);
+
 	/**
 	 * loads all given entity objects.
 	 *
@@ -139,6 +276,42 @@ public interface GenericDAO {
 	 */
 	<T extends Object> List<T> loadAll(final Class<T> clazz);
 
+	/**
+	 * Streams all given entity objects to a callback in constant memory.
+	 *
+	 * @param <T> the generic type
+	 * @param clazz the name of the entity class
+	 * @param callback invoked for every entity object
+	 * @return the number of processed rows
+	 */
+	<T extends Object> long streamAll(final Class<T> clazz,
+			final RowCallback<T> callback);
+
+	/**
+	 * Streams the result of a named query to a callback in constant memory.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name to be searched
+	 * @param queryParams conditional parameters to be used in query
+	 * @param callback invoked for every row
+	 * @return the number of processed rows
+	 */
+	<T extends Object> long streamEntitiesByNamedQuery(final String queryName,
+			final List<Object> queryParams, final RowCallback<T> callback);
+
+	/**
+	 * Streams the result of a Native SQL query to a callback in constant
+	 * memory.
+	 *
+	 * @param <T> the generic type
+	 * @param query The native query to be executed
+	 * @param queryParams positional parameters to be used in query
+	 * @param callback invoked for every row
+	 * @return the number of processed rows
+	 */
+	<T extends Object> long streamByNativeQuery(final String query,
+			final List<Object> queryParams, final RowCallback<T> callback);
+
 	/**
 	 * Retrieve entities based on given search criteria.
 	 *
@@ -187,6 +360,55 @@ public interface GenericDAO {
 			final String queryName, final List<Object> queryParams,
 			final int index, final int maxresult);
 
+	/**
+	 * Retrieve a page of entities ordered by a unique key attribute using
+	 * keyset pagination.
+	 *
+	 * @param <T> the generic type
+	 * @param clazz the name of the entity class
+	 * @param keyAttribute the unique attribute the pages are ordered by
+	 * @param lastKey the last key of the previous page, null for the first page
+	 * @param pageSize the maximum number of entities in the page, at least 1
+	 * @return the page and the key to continue from
+	 */
+	<T extends Object> KeysetPage<T> findEntitiesByKeyset(final Class<T> clazz,
+			final String keyAttribute, final Serializable lastKey,
+			final int pageSize);
+
+	/**
+	 * Retrieve a page of entities using keyset pagination on a named query
+	 * that takes the last key as its last positional parameter.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name to be searched
+	 * @param queryParams conditional parameters to be used in query
+	 * @param keyAttribute the attribute the named query is ordered by
+	 * @param lastKey the last key of the previous page, for the first page a
+	 * value lower than any key; never null
+	 * @param pageSize the maximum number of entities in the page, at least 1
+	 * @return the page and the key to continue from
+	 */
+	<T extends Object> KeysetPage<T> findEntitiesByNamedQueryKeyset(
+			final String queryName, final List<Object> queryParams,
+			final String keyAttribute, final Serializable lastKey,
+			final int pageSize);
+
+	/**
+	 * Retrieve a page of rows using keyset pagination on a native query that
+	 * takes the last key as its last positional parameter.
+	 *
+	 * @param query The native query to be executed
+	 * @param queryParams conditional parameters to be used in query
+	 * @param keyColumn zero based position of the key in the selected columns
+	 * @param lastKey the last key of the previous page, for the first page a
+	 * value lower than any key; never null
+	 * @param pageSize the maximum number of rows in the page, at least 1
+	 * @return the page and the key to continue from
+	 */
+	KeysetPage<Object> findByNativeQueryKeyset(final String query,
+			final List<Object> queryParams, final int keyColumn,
+			final Serializable lastKey, final int pageSize);
+
 	/**
 	 * Retrieve entities based on given search criteria.
 	 *
@@ -208,6 +430,37 @@ public interface GenericDAO {
 	 */
 	<T extends Object> List<T> storeBatch(final List<T> entityList);
 
+	/**
+	 * persist entities using JDBC batching and report the throughput.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of an entity
+	 * @return rows and duration of every flushed batch
+	 */
+	<T extends Object> BatchStatistics bulkInsert(final List<T> entityList);
+
+	/**
+	 * persist entities using batch process in the given mode.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of an entity
+	 * @param mode MANAGED or STATELESS
+	 * @return a list of persisted entities objects
+	 */
+	<T extends Object> List<T> storeBatch(final List<T> entityList,
+			final BulkMode mode);
+
+	/**
+	 * persist entities in the given mode and report throughput and memory.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of an entity
+	 * @param mode MANAGED or STATELESS
+	 * @return rows, duration and memory of every flushed batch
+	 */
+	<T extends Object> BatchStatistics bulkInsert(final List<T> entityList,
+			final BulkMode mode);
+
 	/**
 	 * Save all changes made to an existing entities objects using batch process.
 	 *
@@ -217,6 +470,31 @@ public interface GenericDAO {
 	 */
 	<T extends Object> List<T> updateBatch(final List<T> entityList);
 
+	/**
+	 * Save all changes made to existing entities using batch process in the
+	 * given mode. STATELESS writes every column of every entity without
+	 * reading it first.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of entities to be updated
+	 * @param mode MANAGED or STATELESS
+	 * @return list of updated entities object
+	 */
+	<T extends Object> List<T> updateBatch(final List<T> entityList,
+			final BulkMode mode);
+
+	/**
+	 * Update existing entities in the given mode and report throughput and
+	 * memory.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of entities to be updated
+	 * @param mode MANAGED or STATELESS
+	 * @return rows, duration and memory of every flushed batch
+	 */
+	<T extends Object> BatchStatistics bulkUpdate(final List<T> entityList,
+			final BulkMode mode);
+
 	/**
 	 * Updates the entity objects present in the given named query using batch
 	 * process.
@@ -228,6 +506,19 @@ public interface GenericDAO {
 	int updateBatchByNamedQuery(final String query,
 			final List<List<Object>> queryParams);
 
+	/**
+	 * Executes an UPDATE or DELETE named query for every parameter row using
+	 * a single prepared statement and JDBC batches. An UPDATE of a @Version
+	 * entity has to be written as "update versioned ...".
+	 *
+	 * @param queryName The named query name to be executed
+	 * @param queryParams one list of positional parameters per row
+	 * @param chunkSize the number of rows sent per JDBC batch
+	 * @return the update count of every row, in input order
+	 */
+	int[] executeBatchByNamedQuery(final String queryName,
+			final List<List<Object>> queryParams, final int chunkSize);
+
 	/**
 	 * get JPA session.
 	 *
@@ -296,6 +587,29 @@ public interface GenericDAO {
 	<T extends Object> List<T> findEntitiesByBuildQueries(final String query,
 			final List<Object> queryParams, final int index, final int maxresult);
 
+	/**
+	 * Retrieve entities, or the selected paths, matching a dynamic search.
+	 * Searches of the same shape reuse one cached criteria query and plan.
+	 *
+	 * @param <T> the generic type
+	 * @param criteria filters, sort order and projection
+	 * @param index specifies start of the result
+	 * @param maxresult specifies end of the result
+	 * @return the entities, or the values or Object[] of the projection
+	 */
+	<T extends Object> List<T> findEntitiesByCriteria(
+			final SearchCriteria<?> criteria, final int index,
+			final int maxresult);
+
+	/**
+	 * Count the entities matching a dynamic search.
+	 *
+	 * @param criteria filters of the search; sort order and projection are
+	 * ignored
+	 * @return the number of matching entities
+	 */
+	long countEntitiesByCriteria(final SearchCriteria<?> criteria);
+
 	/**
 	 * Fetch count of records based on given search criteria using JPA named
 	 * query.
@@ -331,7 +645,73 @@ public interface GenericDAO {
 			final List<Object> queryParams, final int index, final int maxresult);
 
 	/**
-	 * code to generate unique number from t_unique_key.
+	 * Registers the signature of a stored procedure so that it can be called
+	 * by name. Registering a name again replaces the earlier definition.
+	 *
+	 * @param definition
+	 *            the procedure name, parameter types and directions
+	 */
+	void registerProcedure(ProcedureDefinition definition);
+
+	/**
+	 * Calls a registered stored procedure through a CallableStatement.
+	 *
+	 * @param procedureName
+	 *            the name the procedure was registered with
+	 * @param args
+	 *            the values of the IN and INOUT parameters, in call order;
+	 *            null is bound as SQL NULL of the declared type
+	 * @return the OUT parameters and result set rows of the call
+	 */
+	ProcedureResult callProcedure(String procedureName, Object... args);
+
+	/**
+	 * Calls a registered stored procedure once per argument array on a single
+	 * CallableStatement. Procedures without OUT parameters or result set are
+	 * sent as JDBC batches of jdbcBatchSize calls; the others are executed one
+	 * after the other on the same prepared call.
+	 *
+	 * @param procedureName
+	 *            the name the procedure was registered with
+	 * @param argsList
+	 *            the arguments of every call
+	 * @return the result of every call, in input order
+	 */
+	List<ProcedureResult> callProcedureBatch(String procedureName,
+			List<Object[]> argsList);
+
+	/**
+	 * Loads a large key set into a temporary table of the current connection
+	 * with batched inserts, so that a stored procedure or native query can
+	 * join against it instead of splitting a comma-joined list, e.g.
+	 * <code>join tmp_zip k on k.key_value = z.zip_code</code>. The table has
+	 * the single primary key column key_value; duplicate keys are dropped. It
+	 * is emptied when loaded again and dropped when the transaction
+	 * completes.
+	 *
+	 * @param tableName
+	 *            the temporary table name
+	 * @param columnDefinition
+	 *            the SQL type of the key column: an integer type, optionally
+	 *            UNSIGNED, CHAR, VARCHAR, BINARY or VARBINARY with a length,
+	 *            DECIMAL with precision and scale, DATE or DATETIME; e.g.
+	 *            VARCHAR(10) or BIGINT
+	 * @param keys
+	 *            the keys to load
+	 * @throws IllegalArgumentException
+	 *             if the table name is not a plain identifier or the column
+	 *             type is not one of these
+	 * @throws IllegalStateException
+	 *             if there is no transaction, since temporary tables only
+	 *             live on the connection that created them
+	 */
+	void loadBulkKeys(String tableName, String columnDefinition,
+			Collection<?> keys);
+
+	/**
+	 * code to generate unique number from t_unique_key, in blocks of 51 ids
+	 * (maxlo 50). Groups shared with a TableGenerator, such as t_usr, must use
+	 * the 5-argument variant with the generator's maxlo instead.
 	 *
 	 * @param group group name for which unique id needs be generated
 	 * @param table a unique key generator table name
@@ -343,7 +723,11 @@ public interface GenericDAO {
 			final String valueCol, final String pKeyColumn);
 
 	/**
-	 * Generate id.
+	 * Generate id. Ids are handed out from an in-memory block of maxlo + 1
+	 * ids per (table, group), so the key table is only touched once a block.
+	 * Every caller of a group must pass the same maxlo, and it must match
+	 * the allocationSize - 1 of a TableGenerator sharing the row; a different
+	 * maxlo for a group already in use is rejected.
 	 *
 	 * @param group the group
 	 * @param table the table
@@ -355,7 +739,8 @@ public interface GenericDAO {
 	Long generateID(String group, String table, String valueCol,String pKeyColumn, String maxlo);
    
 	/**
-	 * Switch database context.
+	 * Switch database context: route every following call of the current
+	 * request to the primary database, e.g. to read data just written.
 	 */
 	public void switchDatabaseContext();
 	
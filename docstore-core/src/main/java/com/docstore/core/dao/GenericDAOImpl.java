@@ -2,31 +2,89 @@ package com.docstore.core.dao;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Properties;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceException;
 import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.ParameterExpression;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
-
+import javax.persistence.criteria.Selection;
+import javax.sql.DataSource;
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.ReplicationMode;
+import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
-import org.hibernate.cfg.Configuration;
-import org.hibernate.cfg.NamingStrategy;
-import org.hibernate.cfg.ObjectNameNormalizer;
-import org.hibernate.dialect.Dialect;
-import org.hibernate.id.MultipleHiLoPerTableGenerator;
-import org.hibernate.internal.SessionImpl;
-import org.hibernate.type.BigIntegerType;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.StatelessSession;
+import org.hibernate.action.internal.BulkOperationCleanupAction;
+import org.hibernate.engine.internal.Versioning;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.query.spi.ParameterMetadata;
+import org.hibernate.engine.spi.NamedQueryDefinition;
+import org.hibernate.engine.spi.NamedSQLQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.hql.spi.ParameterTranslations;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.jdbc.Work;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.type.SerializableType;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+import org.springframework.orm.jpa.EntityManagerFactoryInfo;
 import org.springframework.orm.jpa.JpaCallback;
 import org.springframework.orm.jpa.support.JpaDaoSupport;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 import com.docstore.core.dao.GenericDAO;
+import com.docstore.core.datasource.DatabaseContextHolder;
+import com.docstore.core.monitor.DAOMetricsRegistry;
 
 /**
  * Class provides API implementation for GenericDAO.
@@ -43,12 +101,80 @@ import com.docstore.core.dao.GenericDAO;
 @SuppressWarnings("unchecked")
 public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 
+	/**
+	 * Blocks of 51 ids, the size key rows advanced before the allocators were
+	 * cached. t_usr callers pass maxlo 49 to match the TUsr TableGenerator.
+	 */
 	private static final String DEFAULT_MAX_LO = "50";
 
+	private static final String QUERY_CACHE_REGION = "query.entityQueryCache";
+
+	private static final Pattern ATTRIBUTE_NAME = Pattern
+			.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	/** Key column types loadBulkKeys accepts. */
+	private static final Pattern BULK_KEY_TYPE = Pattern.compile(
+			"(?:(?:TINY|SMALL|MEDIUM|BIG)?INT(?:EGER)?(?: UNSIGNED)?"
+					+ "|(?:VAR)?(?:CHAR|BINARY)\\(\\d{1,5}\\)"
+					+ "|DECIMAL\\(\\d{1,2}(?:, ?\\d{1,2})?\\)"
+					+ "|DATE|DATETIME)", Pattern.CASE_INSENSITIVE);
+
+	private Set<String> cacheableQueries = Collections.emptySet();
+
+	private int streamingFetchSize = Integer.MIN_VALUE;
+
+	private int jdbcBatchSize = 50;
+
+	private int readOnlyFetchSize = 100;
+
+	private int inListChunkSize = 500;
+
+	private int bulkKeyBatchSize = 1000;
+
+	private int maxCriteriaTemplates = 1000;
+
+	private final ConcurrentMap<String, CriteriaTemplate> criteriaTemplates = new ConcurrentHashMap<String, CriteriaTemplate>();
+
+	private final ConcurrentMap<String, BatchStatement> batchStatements = new ConcurrentHashMap<String, BatchStatement>();
+
+	private final ConcurrentMap<String, HiLoIdAllocator> idAllocators = new ConcurrentHashMap<String, HiLoIdAllocator>();
+
+	private final ConcurrentMap<String, ProcedureDefinition> procedures = new ConcurrentHashMap<String, ProcedureDefinition>();
+
+	private boolean idPrefetch = true;
+
+	private DAOMetricsRegistry metricsRegistry;
+
+	private static final ExecutorService ID_PREFETCH_EXECUTOR = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, "id-block-prefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 
 	private static final Predicate[] VOID_PREDICATE_ARRAY = {};
+
+	private static final String BULK_KEY_COLUMN = "key_value";
 	private boolean isChildConditionAvailable = false;
 
+	private static final ProcedureDefinition IS_SHAPE_CONTINUOUS = ProcedureDefinition
+			.named("P2_isShape_Continuous_M").in(Types.BIGINT)
+			.in(Types.BIGINT).in(Types.VARCHAR).in(Types.VARCHAR)
+			.in(Types.VARCHAR).returningResultSet();
+
+	private static final ProcedureDefinition UPDATE_SHAPE_ASSIGNMENT = ProcedureDefinition
+			.named("P7_Update_Shape_AssignUnAssignGeo_M").in(Types.BIGINT)
+			.in(Types.BIGINT).in(Types.VARCHAR).in(Types.VARCHAR)
+			.in(Types.VARCHAR).in(Types.VARCHAR).in(Types.INTEGER)
+			.returningResultSet();
+
+	public GenericDAOImpl() {
+		registerProcedure(IS_SHAPE_CONTINUOUS);
+		registerProcedure(UPDATE_SHAPE_ASSIGNMENT);
+	}
+
 	/**
 	 * Stores a new entity object in to the persistent store
 	 * 
@@ -66,6 +192,42 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 		return entity;
 	}
 
+	/**
+	 * Stores a new entity object under the identifier it already carries;
+	 * persist() would reject it as detached and merge() would generate a new
+	 * identifier.
+	 * 
+	 * @param entity
+	 *            entity object with its identifier set
+	 * @return persisted entity object
+	 */
+	public <T extends Serializable> T storeWithId(final T entity) {
+		getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				entityMgr.unwrap(Session.class).replicate(entity,
+						ReplicationMode.EXCEPTION);
+				return null;
+			}
+		});
+		return entity;
+	}
+
+	/**
+	 * Stores new entity objects under the identifiers they already carry in
+	 * JDBC batches of jdbcBatchSize rows. Unlike storeWithId no select checks
+	 * for an existing row first.
+	 * 
+	 * @param entityList
+	 *            entity objects with their identifiers set
+	 * @return the persisted entity objects
+	 */
+	public <T extends Serializable> List<T> storeBatchWithId(
+			final List<T> entityList) {
+		statelessBatch(entityList, true, true);
+		return entityList;
+	}
+
 	/**
 	 * Save all changes made to an existing entity object
 	 * 
@@ -99,13 +261,17 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 		 */
 
 		if (entity != null && entity.size() > 0) {
-			List<T> list = new ArrayList<T>();
-			for (T t : entity) {
-				list.add((T) getJpaTemplate().merge(t));
-
-			}
-			getJpaTemplate().flush();
-			return list;
+			return (List<T>) getJpaTemplate().execute(new JpaCallback() {
+				public Object doInJpa(final EntityManager entityMgr)
+						throws PersistenceException {
+					List<T> list = new ArrayList<T>();
+					for (T t : entity) {
+						list.add(reattach(entityMgr, t));
+					}
+					entityMgr.flush();
+					return list;
+				}
+			});
 		} else {
 			//throw new OpservDataAccessException("entity cannot be empty");
 			return null;
@@ -200,27 +366,41 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 	 * @return list of updated entities object
 	 */
 	public <T extends Object> List<T> updateBatch(final List<T> entityList) {
-		return (List<T>) getJpaTemplate().execute(new JpaCallback() {
-			public Object doInJpa(final EntityManager entityMgr)
-					throws PersistenceException {
-				/* System.out.println("=========== Store List ==========="); */
+		return updateBatch(entityList, BulkMode.MANAGED);
+	}
 
-				int batchSize = 1000;
-				for (int i = 0; i < entityList.size(); i++) {
-					Object entity = entityList.get(i);
-					System.out.println("Store Entity : " + entity);
-					entityMgr.merge(entity);
-					if ((i + 1) % batchSize == 0) {
-						entityMgr.flush();
-						entityMgr.clear();
-					}
-				}
-				entityMgr.flush();
-				entityMgr.clear();
-				return entityList;
-			}
-		});
+	/**
+	 * Save all changes made to an existing entities objects using batch
+	 * process in the given mode
+	 * 
+	 * @param entityList
+	 *            list of objects to be updated
+	 * @param mode
+	 *            MANAGED or STATELESS
+	 * 
+	 * @return list of updated entities object
+	 */
+	public <T extends Object> List<T> updateBatch(final List<T> entityList,
+			final BulkMode mode) {
+		bulkUpdate(entityList, mode);
+		return entityList;
+	}
 
+	/**
+	 * Update existing entities in the given mode. MANAGED merges them, which
+	 * reads each entity before updating it; STATELESS updates every column
+	 * without reading.
+	 * 
+	 * @param entityList
+	 *            list of objects to be updated
+	 * @param mode
+	 *            MANAGED or STATELESS
+	 * @return the throughput and memory of every flushed batch
+	 */
+	public <T extends Object> BatchStatistics bulkUpdate(
+			final List<T> entityList, final BulkMode mode) {
+		return mode == BulkMode.STATELESS ? statelessBatch(entityList, false, false)
+				: managedBatch(entityList, false);
 	}
 
 	/**
@@ -237,37 +417,286 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 	 */
 	public int updateBatchByNamedQuery(final String queryName,
 			final List<List<Object>> queryParams) {
-		return (Integer) getJpaTemplate().execute(new JpaCallback() {
+		executeBatchByNamedQuery(queryName, queryParams, jdbcBatchSize);
+		return queryParams.size();
+	}
+
+	/**
+	 * Executes an UPDATE or DELETE named query once per parameter row as a
+	 * JDBC batch. The named query is translated to SQL once and cached; each
+	 * row is bound to the same PreparedStatement with addBatch, using the
+	 * Hibernate type the query expects like Query.setParameter, and the rows
+	 * are sent in chunks of chunkSize (as multi-statement packets when
+	 * rewriteBatchedStatements is enabled). Second level cache regions and
+	 * cached query results of the affected tables are invalidated like for a
+	 * regular bulk update.
+	 * 
+	 * HQL named queries may use ?1 style or ? parameters; native named
+	 * queries must use plain JDBC ? parameters.
+	 * 
+	 * @param queryName
+	 *            The named query name to be executed
+	 * @param queryParams
+	 *            one list of positional parameters per row
+	 * @param chunkSize
+	 *            the number of rows sent per executeBatch call
+	 * @return the update count of every row, in input order; may contain
+	 *         Statement.SUCCESS_NO_INFO if the driver rewrote the batch
+	 */
+	public int[] executeBatchByNamedQuery(final String queryName,
+			final List<List<Object>> queryParams, final int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive");
+		}
+		return (int[]) getJpaTemplate().execute(new JpaCallback() {
 			public Object doInJpa(final EntityManager entityMgr)
 					throws PersistenceException {
-				System.out.println("=========== Store List ===========");
-				int batchSize = 100;
-				int i = 0;
-				for (List<Object> argObj : queryParams) {
-					final Query queryNamed = entityMgr
-							.createNamedQuery(queryName);
-					if (argObj != null) {
-						Iterator itr = argObj.iterator();
-						int paramCounter = 1;
-						while (itr.hasNext()) {
-							queryNamed.setParameter(paramCounter, itr.next());
-							paramCounter++;
+				final Session session = entityMgr.unwrap(Session.class);
+				final BatchStatement statement = getBatchStatement(
+						(SessionFactoryImplementor) session
+								.getSessionFactory(), queryName);
+				// pending changes must reach the database before the bulk
+				// statement, like the auto flush of Query.executeUpdate
+				session.flush();
+
+				final int[] updateCounts = new int[queryParams.size()];
+				session.doWork(new Work() {
+					public void execute(final Connection connection)
+							throws SQLException {
+						final PreparedStatement ps = connection
+								.prepareStatement(statement.sql);
+						try {
+							int row = 0;
+							int chunkStart = 0;
+							for (List<Object> argObj : queryParams) {
+								statement.bind(ps, argObj,
+										(SessionImplementor) session);
+								ps.addBatch();
+								row++;
+								if (row % chunkSize == 0) {
+									copyCounts(ps.executeBatch(), updateCounts,
+											chunkStart);
+									chunkStart = row;
+								}
+							}
+							if (row > chunkStart) {
+								copyCounts(ps.executeBatch(), updateCounts,
+										chunkStart);
+							}
+						} finally {
+							ps.close();
 						}
 					}
-					queryNamed.executeUpdate();
-					i++;
-					if ((i + 1) % batchSize == 0) {
-						entityMgr.flush();
-						entityMgr.clear();
-					}
-				}
+				});
 
-				entityMgr.flush();
-				entityMgr.clear();
-				return i;
+				final BulkOperationCleanupAction cleanup = new BulkOperationCleanupAction(
+						(SessionImplementor) session, statement.querySpaces);
+				((EventSource) session).getActionQueue().addAction(cleanup);
+				return updateCounts;
 			}
 		});
+	}
+
+	private static void copyCounts(final int[] chunkCounts,
+			final int[] updateCounts, final int offset) {
+		System.arraycopy(chunkCounts, 0, updateCounts, offset,
+				chunkCounts.length);
+	}
+
+	/**
+	 * Resolves a named query to its SQL and the order in which the
+	 * positional parameters appear in it; the result is cached per query
+	 * name.
+	 */
+	private BatchStatement getBatchStatement(
+			final SessionFactoryImplementor sessionFactory,
+			final String queryName) {
+		BatchStatement statement = batchStatements.get(queryName);
+		if (statement != null) {
+			return statement;
+		}
+
+		final NamedQueryDefinition namedQuery = sessionFactory
+				.getNamedQuery(queryName);
+		if (namedQuery != null) {
+			final HQLQueryPlan plan = sessionFactory.getQueryPlanCache()
+					.getHQLQueryPlan(namedQuery.getQueryString(), false,
+							Collections.EMPTY_MAP);
+			final QueryTranslator[] translators = plan.getTranslators();
+			if (translators.length != 1
+					|| !translators[0].isManipulationStatement()
+					|| plan.getSqlStrings().length != 1) {
+				throw new IllegalArgumentException("Named query " + queryName
+						+ " is not a single table UPDATE or DELETE");
+			}
+			final String sql = plan.getSqlStrings()[0];
+			final ParameterTranslations translations = translators[0]
+					.getParameterTranslations();
+			// sql locations number the parameter specifications of the
+			// statement; one covers a placeholder per column of its type
+			int specifications = 0;
+			for (int i = 1; i <= translations.getOrdinalParameterCount(); i++) {
+				specifications = Math.max(specifications,
+						translations.getOrdinalParameterSqlLocation(i) + 1);
+			}
+			for (Object name : translations.getNamedParameterNames()) {
+				for (int location : translations
+						.getNamedParameterSqlLocations((String) name)) {
+					specifications = Math.max(specifications, location + 1);
+				}
+			}
+			final int[] parameterIndexes = new int[specifications];
+			final Type[] parameterTypes = new Type[specifications];
+			Arrays.fill(parameterIndexes, -1);
+			for (int i = 1; i <= translations.getOrdinalParameterCount(); i++) {
+				final int location = translations
+						.getOrdinalParameterSqlLocation(i);
+				parameterIndexes[location] = i - 1;
+				parameterTypes[location] = translations
+						.getOrdinalParameterExpectedType(i);
+			}
+			for (Object name : translations.getNamedParameterNames()) {
+				final int paramIndex;
+				try {
+					paramIndex = Integer.parseInt((String) name) - 1;
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Named query "
+							+ queryName + " uses named parameter :" + name
+							+ ", only positional parameters are supported");
+				}
+				for (int location : translations
+						.getNamedParameterSqlLocations((String) name)) {
+					parameterIndexes[location] = paramIndex;
+					parameterTypes[location] = translations
+							.getNamedParameterExpectedType((String) name);
+				}
+			}
+			int placeholders = 0;
+			for (int i = 0; i < specifications; i++) {
+				if (parameterIndexes[i] < 0) {
+					// e.g. the version seed of an UPDATE VERSIONED
+					throw new IllegalArgumentException("Named query "
+							+ queryName
+							+ " binds a parameter that is not positional");
+				}
+				placeholders += parameterTypes[i] == null ? 1
+						: parameterTypes[i].getColumnSpan(sessionFactory);
+			}
+			if (placeholders != countPlaceholders(sql)) {
+				throw new IllegalArgumentException("Parameters of named query "
+						+ queryName + " do not match the placeholders of "
+						+ sql);
+			}
+			statement = new BatchStatement(sql, parameterIndexes,
+					parameterTypes, translators[0].getQuerySpaces());
+		} else {
+			final NamedSQLQueryDefinition namedSQLQuery = sessionFactory
+					.getNamedSQLQuery(queryName);
+			if (namedSQLQuery == null) {
+				throw new IllegalArgumentException("No named query "
+						+ queryName);
+			}
+			final String sql = namedSQLQuery.getQueryString();
+			final ParameterMetadata metadata = sessionFactory
+					.getQueryPlanCache().getSQLParameterMetadata(sql);
+			if (!metadata.getNamedParameterNames().isEmpty()) {
+				throw new IllegalArgumentException("Named native query "
+						+ queryName + " must use plain ? parameters");
+			}
+			final int[] parameterIndexes = new int[metadata
+					.getOrdinalParameterCount()];
+			for (int i = 0; i < parameterIndexes.length; i++) {
+				parameterIndexes[i] = i;
+			}
+			statement = new BatchStatement(sql, parameterIndexes,
+					new Type[parameterIndexes.length],
+					namedSQLQuery.getQuerySpaces());
+		}
+
+		final BatchStatement existing = batchStatements.putIfAbsent(queryName,
+				statement);
+		return existing != null ? existing : statement;
+	}
+
+	private static int countPlaceholders(final String sql) {
+		int count = 0;
+		boolean inLiteral = false;
+		for (int i = 0; i < sql.length(); i++) {
+			final char c = sql.charAt(i);
+			if (c == '\'') {
+				inLiteral = !inLiteral;
+			} else if (c == '?' && !inLiteral) {
+				count++;
+			}
+		}
+		return count;
+	}
 
+	/**
+	 * SQL of a named query together with the positional parameter bound to
+	 * each parameter specification and the Hibernate type it is bound with.
+	 * A missing type, as for native queries, is guessed from the value the
+	 * way Query.setParameter does.
+	 */
+	private static final class BatchStatement {
+
+		private final String sql;
+
+		private final int[] parameterIndexes;
+
+		private final Type[] parameterTypes;
+
+		private final Set<Serializable> querySpaces;
+
+		BatchStatement(final String sql, final int[] parameterIndexes,
+				final Type[] parameterTypes,
+				final Collection<? extends Serializable> querySpaces) {
+			this.sql = sql;
+			this.parameterIndexes = parameterIndexes;
+			this.parameterTypes = parameterTypes;
+			this.querySpaces = querySpaces == null ? Collections
+					.<Serializable> emptySet() : new HashSet<Serializable>(
+					querySpaces);
+		}
+
+		void bind(final PreparedStatement ps, final List<Object> params,
+				final SessionImplementor session) throws SQLException {
+			final SessionFactoryImplementor factory = session.getFactory();
+			int position = 1;
+			for (int i = 0; i < parameterIndexes.length; i++) {
+				if (params == null || parameterIndexes[i] >= params.size()) {
+					throw new HibernateException("No value for parameter "
+							+ (parameterIndexes[i] + 1) + " of " + sql);
+				}
+				final Object value = params.get(parameterIndexes[i]);
+				final Type type = parameterTypes[i] != null ? parameterTypes[i]
+						: guessType(factory, value);
+				type.nullSafeSet(ps, value, position, session);
+				position += type.getColumnSpan(factory);
+			}
+		}
+
+		private static Type guessType(final SessionFactoryImplementor factory,
+				final Object value) {
+			if (value == null) {
+				return StandardBasicTypes.SERIALIZABLE;
+			}
+			final Class<?> clazz = HibernateProxyHelper
+					.getClassWithoutInitializingProxy(value);
+			final Type type = factory.getTypeResolver().heuristicType(
+					clazz.getName());
+			if (type != null && !(type instanceof SerializableType)) {
+				return type;
+			}
+			if (factory.getClassMetadata(clazz) != null) {
+				return factory.getTypeHelper().entity(clazz);
+			}
+			if (type != null) {
+				return type;
+			}
+			throw new HibernateException("Could not determine a type for "
+					+ clazz.getName());
+		}
 	}
 
 	/**
@@ -291,6 +720,54 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 //		});
 //	}
 
+	/**
+	 * Makes a detached entity managed again for an update. An entity with a
+	 * version is reattached with Session.update: the flush then runs only the
+	 * UPDATE ... WHERE version = ?, and a concurrent change fails it with an
+	 * optimistic lock exception. merge would SELECT the row first; it is still
+	 * used for entities without a version and when the persistence context
+	 * already holds the row.
+	 * 
+	 * @return the managed instance
+	 */
+	private <T> T reattach(final EntityManager entityMgr, final T entity) {
+		if (entityMgr.contains(entity)) {
+			return entity;
+		}
+		final SessionImplementor session = (SessionImplementor) entityMgr
+				.unwrap(Session.class);
+		final EntityPersister persister = session.getEntityPersister(null,
+				entity);
+		if (persister.isVersioned()) {
+			final Serializable id = persister.getIdentifier(entity, session);
+			if (id != null
+					&& session.getPersistenceContext().getEntity(
+							session.generateEntityKey(id, persister)) == null) {
+				if (persister.getVersion(entity) != null) {
+					((Session) session).update(entity);
+					return entity;
+				}
+				copyCurrentVersion(persister, entity, ((Session) session).get(
+						persister.getEntityName(), id));
+			}
+		}
+		return entityMgr.merge(entity);
+	}
+
+	/**
+	 * A detached copy of a versioned entity without its version, e.g. bound
+	 * from a form that does not carry it, would be taken for a new entity.
+	 * Giving it the version of the current row updates it as before the
+	 * version existed: after a SELECT and without the optimistic check.
+	 */
+	private static void copyCurrentVersion(final EntityPersister persister,
+			final Object entity, final Object current) {
+		if (current != null) {
+			persister.setPropertyValue(entity, persister.getVersionProperty(),
+					persister.getVersion(current));
+		}
+	}
+
 	/**
 	 * Remove an entity object from the persistent unit
 	 * 
@@ -304,8 +781,78 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 		 * System.out.println("Enity : " + entity);
 		 */
 
-		getJpaTemplate().remove(entity);
+		getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				// A detached instance is merged first so that the managed copy
+				// is removed and its second level cache entry invalidated.
+				entityMgr.remove(entityMgr.contains(entity) ? entity
+						: entityMgr.merge(entity));
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Evict an entity object from the second level cache.
+	 * 
+	 * @param clazz
+	 *            name of the class
+	 * @param identification
+	 *            the primary key value of the cached entity
+	 */
+	public <T> void evict(final Class<T> clazz,
+			final Serializable identification) {
+		getJpaTemplate().getEntityManagerFactory().getCache()
+				.evict(clazz, identification);
+	}
+
+	/**
+	 * Evict all entity objects of the given class from the second level cache.
+	 * 
+	 * @param clazz
+	 *            name of the class
+	 */
+	public <T> void evictAll(final Class<T> clazz) {
+		getJpaTemplate().getEntityManagerFactory().getCache().evict(clazz);
+	}
 
+	/**
+	 * Invalidate everything cached about the given class after its table was
+	 * written around the entity manager: the entity and natural id regions
+	 * and the cached query results over its query spaces. In a transaction
+	 * this happens on completion, like after executeBatchByNamedQuery;
+	 * otherwise the rows are committed already and it happens at once.
+	 * 
+	 * @param clazz
+	 *            name of the class
+	 */
+	public <T> void invalidate(final Class<T> clazz) {
+		getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final SessionImplementor session = (SessionImplementor) entityMgr
+						.unwrap(Session.class);
+				final SessionFactoryImplementor factory = session.getFactory();
+				final Serializable[] querySpaces = factory.getEntityPersister(
+						clazz.getName()).getQuerySpaces();
+				factory.getCache().evictNaturalIdRegion(clazz);
+				if (TransactionSynchronizationManager
+						.isActualTransactionActive()) {
+					final BulkOperationCleanupAction cleanup = new BulkOperationCleanupAction(
+							session, new HashSet<Serializable>(Arrays
+									.asList(querySpaces)));
+					((EventSource) session).getActionQueue().addAction(cleanup);
+				} else {
+					factory.getCache().evictEntityRegion(clazz);
+					if (factory.getUpdateTimestampsCache() != null) {
+						factory.getUpdateTimestampsCache().invalidate(
+								querySpaces);
+					}
+				}
+				return null;
+			}
+		});
 	}
 
 	/**
@@ -325,7 +872,130 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 		 * System.out.println("=========== Find By Id ===========");
 		 * System.out.println("Id : " + identification);
 		 */
-		return getJpaTemplate().find(clazz, identification);
+		return getJpaTemplate().execute(new JpaCallback<T>() {
+			public T doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				prepareRead(entityMgr);
+				return entityMgr.find(clazz, identification);
+			}
+		});
+	}
+
+	/**
+	 * Retrieve an object based on the value of its single @NaturalId
+	 * property, resolved to the primary key from the persistence context or
+	 * the natural id cache before falling back to a query.
+	 * 
+	 * @param clazz
+	 *            name of the class
+	 * @param naturalId
+	 *            the natural id value
+	 * @return an Object if it exists against given natural id. Returns null if
+	 *         not found
+	 */
+	public <T> T getByNaturalId(final Class<T> clazz, final Object naturalId) {
+		return getJpaTemplate().execute(new JpaCallback<T>() {
+			public T doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				prepareRead(entityMgr);
+				return clazz.cast(entityMgr.unwrap(Session.class)
+						.bySimpleNaturalId(clazz).load(naturalId));
+			}
+		});
+	}
+
+	/**
+	 * Retrieve objects based on a collection of primary key values, in the
+	 * order of the keys. Entities found in the persistence context or the
+	 * second level cache cost no query; the rest are loaded with IN queries
+	 * of at most inListChunkSize keys each. A shorter chunk is padded with
+	 * its last key to the next power of two, like the IN lists of
+	 * SearchCriteria, so only a few distinct statements are prepared.
+	 * 
+	 * @param clazz
+	 *            name of the class
+	 * @param identifications
+	 *            the primary key values
+	 * @return the entities found, in the order of the given keys
+	 */
+	public <T, I extends Serializable> List<T> getAll(final Class<T> clazz,
+			final Collection<I> identifications) {
+		if (identifications == null || identifications.isEmpty()) {
+			return new ArrayList<T>();
+		}
+		return getJpaTemplate().execute(new JpaCallback<List<T>>() {
+			public List<T> doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				prepareRead(entityMgr);
+				final SessionImplementor session = (SessionImplementor) entityMgr
+						.unwrap(Session.class);
+				final ClassMetadata metadata = session.getFactory()
+						.getClassMetadata(clazz);
+				if (metadata == null) {
+					throw new IllegalArgumentException(clazz.getName()
+							+ " is not an entity");
+				}
+				final EntityPersister persister = session.getFactory()
+						.getEntityPersister(metadata.getEntityName());
+				final Cache cache = entityMgr.getEntityManagerFactory()
+						.getCache();
+
+				final Map<Serializable, T> found = new HashMap<Serializable, T>();
+				final List<Serializable> misses = new ArrayList<Serializable>();
+				for (Serializable id : new LinkedHashSet<I>(identifications)) {
+					if (id == null) {
+						continue;
+					}
+					final Object managed = session.getPersistenceContext()
+							.getEntity(session.generateEntityKey(id, persister));
+					if (managed != null) {
+						found.put(id, clazz.cast(managed));
+					} else if (cache.contains(clazz, id)) {
+						found.put(id, entityMgr.find(clazz, id));
+					} else {
+						misses.add(id);
+					}
+				}
+
+				final String idAttribute = metadata.getIdentifierPropertyName();
+				if (idAttribute == null) {
+					// @IdClass keys cannot be bound to an IN list
+					for (Serializable id : misses) {
+						found.put(id, entityMgr.find(clazz, id));
+					}
+				} else {
+					final String jpql = "select e from " + clazz.getName()
+							+ " e where e." + idAttribute + " in (:ids)";
+					for (int from = 0; from < misses.size(); from += inListChunkSize) {
+						final List<Serializable> chunk = new ArrayList<Serializable>(
+								misses.subList(from, Math.min(from
+										+ inListChunkSize, misses.size())));
+						final int padded = Math.min(
+								SearchCriteria.paddedSize(chunk.size()),
+								inListChunkSize);
+						while (chunk.size() < padded) {
+							chunk.add(chunk.get(chunk.size() - 1));
+						}
+						final Query query = entityMgr.createQuery(jpql);
+						applyReadOnly(entityMgr, query);
+						query.setParameter("ids", chunk);
+						for (Object entity : query.getResultList()) {
+							found.put(metadata.getIdentifier(entity, session),
+									clazz.cast(entity));
+						}
+					}
+				}
+
+				final List<T> result = new ArrayList<T>(identifications.size());
+				for (I id : identifications) {
+					final T entity = id == null ? null : found.get(id);
+					if (entity != null) {
+						result.add(entity);
+					}
+				}
+				return result;
+			}
+		});
 	}
 
 	/**
@@ -344,6 +1014,8 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 					throws PersistenceException {
 				/* System.out.println("=========== findEntities ==========="); */
 				final Query namedQuery = entityMgr.createNamedQuery(queryName);
+				applyQueryCache(namedQuery, queryName);
+				applyReadOnly(entityMgr, namedQuery);
 				return namedQuery.getResultList();
 			}
 		});
@@ -402,14 +1074,14 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 				// System.out.println("queryName : " + queryName + "index : " + index +
 				// "maxresult : " + maxresult);
 
-				// Setting the Query Cache for the query
-				// queryNamed.setHint("org.hibernate.cacheable", true);
-				// queryNamed.setHint("org.hibernate.cacheRegion",
-				// "query.entityQueryCache");
-
 				if (queryParams != null && queryParams.size() > 0) {
 					final Query queryNamed = entityMgr
 							.createNamedQuery(queryName);
+
+					// Setting the Query Cache for the query
+					applyQueryCache(queryNamed, queryName);
+					applyReadOnly(entityMgr, queryNamed);
+
 					Iterator itr = queryParams.iterator();
 					int paramCounter = 1;
 					while (itr.hasNext()) {
@@ -458,6 +1130,8 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 				// "maxresult : " + maxresult);
 
 				final Query queryNamed = entityMgr.createNamedQuery(queryName);
+				applyQueryCache(queryNamed, queryName);
+				applyReadOnly(entityMgr, queryNamed);
 				if (queryParams != null) {
 					queryNamed.setParameter("paramList", queryParams);
 				}
@@ -491,6 +1165,7 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 				final Query namedQuery = entityMgr.createNativeQuery(queryName,
 						transformer);
 				// namedQuery.unwrap(DataSetDescription.class);
+				applyReadOnly(entityMgr, namedQuery);
 				return namedQuery.getResultList();
 			}
 		});
@@ -554,11 +1229,8 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 							.createNamedQuery(queryName);
 
 					// Setting the Query Cache for the query
-					/*
-					 * queryNamed.setHint("org.hibernate.cacheable", true);
-					 * queryNamed.setHint("org.hibernate.cacheRegion",
-					 * "query.entityQueryCache");
-					 */
+					applyQueryCache(queryNamed, queryName);
+					applyReadOnly(entityMgr, queryNamed);
 
 					if (queryParams != null) {
 						Iterator itr = queryParams.iterator();
@@ -595,46 +1267,327 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 
 	}
 
-
 	/**
-	 * Method to execute a Native SQL query.
+	 * Method to execute a Native SQL query for INSERT, UPDATE or DELETE
+	 * operation that only touches the tables of the given entities. Only the
+	 * cached query results and second level cache regions of those entities
+	 * are invalidated, whereas {@link #executeUpdateOnNativeQuery(String)}
+	 * has to invalidate all of them.
 	 * 
 	 * @param query
 	 *            The native query to be executed
-	 * @return a list of an Object if it exists against given search criteria.
-	 *         Returns null if not found
+	 * @param affectedEntities
+	 *            the entity classes whose tables are updated by the query
+	 * @return the number of updated rows
 	 */
-	public <T extends Object> List<T> findByNativeQuery(final String query) {
-		return (List<T>) getJpaTemplate().execute(new JpaCallback() {
+	public int executeUpdateOnNativeQuery(final String query,
+			final Class<?>... affectedEntities) {
+		return (Integer) getJpaTemplate().execute(new JpaCallback() {
 			public Object doInJpa(final EntityManager entityMgr)
 					throws PersistenceException {
-				/* System.out.println("=========== findEntities ==========="); */
-				final Query queryJPQL = entityMgr.createNativeQuery(query);
-				return queryJPQL.getResultList();
+				final SQLQuery sqlQuery = entityMgr.unwrap(Session.class)
+						.createSQLQuery(query);
+				for (Class<?> affectedEntity : affectedEntities) {
+					sqlQuery.addSynchronizedEntityClass(affectedEntity);
+				}
+				return sqlQuery.executeUpdate();
 			}
 		});
 	}
 
-
 	/**
-	 * Method to execute a Native SQL query.
+	 * Method to execute a Native SQL query with positional parameters for
+	 * INSERT, UPDATE or DELETE operation. With affectedEntities only their
+	 * cached data is invalidated, as in
+	 * {@link #executeUpdateOnNativeQuery(String, Class...)}.
 	 * 
 	 * @param query
-	 *            The native query to be executed
-	 * @return a list of an Object if it exists against given search criteria.
-	 *         Returns null if not found
+	 *            The native query to be executed, with ? for the parameters
+	 * @param queryParams
+	 *            positional parameters to be used in query
+	 * @param affectedEntities
+	 *            the entity classes whose tables are updated by the query
+	 * @return the number of updated rows
 	 */
-	public BigInteger countByNativeQuery(final String query) {
-		return (BigInteger) getJpaTemplate().execute(new JpaCallback() {
+	public int executeUpdateOnNativeQuery(final String query,
+			final List<Object> queryParams, final Class<?>... affectedEntities) {
+		return (Integer) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final SQLQuery sqlQuery = entityMgr.unwrap(Session.class)
+						.createSQLQuery(query);
+				for (Class<?> affectedEntity : affectedEntities) {
+					sqlQuery.addSynchronizedEntityClass(affectedEntity);
+				}
+				if (queryParams != null) {
+					// Hibernate numbers plain ? parameters from 0
+					for (int i = 0; i < queryParams.size(); i++) {
+						sqlQuery.setParameter(i, queryParams.get(i));
+					}
+				}
+				return sqlQuery.executeUpdate();
+			}
+		});
+	}
+
+	/**
+	 * Returns the query result cache statistics of every cacheable named
+	 * query.
+	 * 
+	 * @return statistics keyed by the named query name
+	 */
+	public Map<String, QueryCacheStatistics> getQueryCacheStatistics() {
+		final SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) getSessionFactory();
+		final Map<String, QueryCacheStatistics> statistics = new LinkedHashMap<String, QueryCacheStatistics>();
+		for (String queryName : cacheableQueries) {
+			String queryString = null;
+			final NamedQueryDefinition namedQuery = sessionFactory
+					.getNamedQuery(queryName);
+			if (namedQuery != null) {
+				queryString = namedQuery.getQueryString();
+			} else {
+				final NamedSQLQueryDefinition namedSQLQuery = sessionFactory
+						.getNamedSQLQuery(queryName);
+				if (namedSQLQuery != null) {
+					queryString = namedSQLQuery.getQueryString();
+				}
+			}
+			if (queryString != null) {
+				final QueryStatistics queryStatistics = sessionFactory
+						.getStatistics().getQueryStatistics(queryString);
+				statistics.put(queryName, new QueryCacheStatistics(queryName,
+						queryStatistics.getCacheHitCount(), queryStatistics
+								.getCacheMissCount(), queryStatistics
+								.getCachePutCount(), queryStatistics
+								.getExecutionCount()));
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Names of the named queries whose results are kept in the query cache.
+	 * Results are cached per query name, positional parameters and
+	 * index/maxresult, and are invalidated whenever one of the tables of the
+	 * query is updated through this DAO.
+	 * 
+	 * @param cacheableQueries
+	 *            the named query names
+	 */
+	public void setCacheableQueries(final Set<String> cacheableQueries) {
+		this.cacheableQueries = cacheableQueries == null ? Collections
+				.<String> emptySet() : new HashSet<String>(cacheableQueries);
+	}
+
+	/**
+	 * Enables the query cache on the given named query if it has been
+	 * configured as cacheable. A query that may be routed to a replica only
+	 * reads the cache: its result can be behind the primary and would stay
+	 * cached until the next update of its tables.
+	 */
+	private void applyQueryCache(final Query query, final String queryName) {
+		if (cacheableQueries.contains(queryName)) {
+			query.setHint("org.hibernate.cacheable", true);
+			query.setHint("org.hibernate.cacheRegion", QUERY_CACHE_REGION);
+			if (DatabaseContextHolder.isReplicaRead()) {
+				query.setHint("org.hibernate.cacheMode", CacheMode.GET);
+			}
+		}
+	}
+
+	/**
+	 * Inside a read-only transaction, marks the session so that entities are
+	 * loaded read-only, without dirty-check snapshots, and flushes only at
+	 * commit rather than before every query. Both are reset when the
+	 * transaction completes.
+	 * 
+	 * @return whether the current transaction is read-only
+	 */
+	private boolean prepareRead(final EntityManager entityMgr) {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()
+				|| !TransactionSynchronizationManager
+						.isCurrentTransactionReadOnly()) {
+			return false;
+		}
+		final Session session = entityMgr.unwrap(Session.class);
+		if (!session.isDefaultReadOnly()) {
+			final FlushMode flushMode = session.getFlushMode();
+			session.setDefaultReadOnly(true);
+			if (!flushMode.lessThan(FlushMode.COMMIT)) {
+				session.setFlushMode(FlushMode.COMMIT);
+			}
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCompletion(final int status) {
+							if (session.isOpen()) {
+								session.setDefaultReadOnly(false);
+								session.setFlushMode(flushMode);
+							}
+						}
+					});
+		}
+		return true;
+	}
+
+	/**
+	 * Applies prepareRead and, inside a read-only transaction, the read-only
+	 * and fetch size hints to the query.
+	 */
+	private void applyReadOnly(final EntityManager entityMgr, final Query query) {
+		if (prepareRead(entityMgr)) {
+			query.setHint("org.hibernate.readOnly", true);
+			if (readOnlyFetchSize > 0) {
+				query.setHint("org.hibernate.fetchSize", readOnlyFetchSize);
+			}
+		}
+	}
+
+	/**
+	 * JDBC fetch size of queries run in a read-only transaction, 0 for the
+	 * driver default. MySQL Connector/J ignores it unless useCursorFetch is
+	 * enabled on the connection.
+	 * 
+	 * @param readOnlyFetchSize
+	 *            rows fetched per round trip
+	 */
+	public void setReadOnlyFetchSize(final int readOnlyFetchSize) {
+		this.readOnlyFetchSize = readOnlyFetchSize;
+	}
+
+	/**
+	 * Maximum number of keys bound to one IN list by getAll.
+	 * 
+	 * @param inListChunkSize
+	 *            keys per query, at least 1
+	 */
+	public void setInListChunkSize(final int inListChunkSize) {
+		if (inListChunkSize < 1) {
+			throw new IllegalArgumentException(
+					"inListChunkSize must be positive");
+		}
+		this.inListChunkSize = inListChunkSize;
+	}
+
+	/**
+	 * Number of keys sent per batch by loadBulkKeys; with
+	 * rewriteBatchedStatements each batch becomes one multi-row INSERT, split
+	 * by the driver to fit max_allowed_packet.
+	 * 
+	 * @param bulkKeyBatchSize
+	 *            keys per batch
+	 */
+	public void setBulkKeyBatchSize(final int bulkKeyBatchSize) {
+		this.bulkKeyBatchSize = bulkKeyBatchSize;
+	}
+
+	private SessionFactory getSessionFactory() {
+		return getJpaTemplate().execute(new JpaCallback<SessionFactory>() {
+			@Override
+			public SessionFactory doInJpa(EntityManager em)
+					throws PersistenceException {
+				return em.unwrap(Session.class).getSessionFactory();
+			}
+		});
+	}
+
+
+	/**
+	 * Method to execute a Native SQL query.
+	 * 
+	 * @param query
+	 *            The native query to be executed
+	 * @return a list of an Object if it exists against given search criteria.
+	 *         Returns null if not found
+	 */
+	public <T extends Object> List<T> findByNativeQuery(final String query) {
+		return (List<T>) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				/* System.out.println("=========== findEntities ==========="); */
+				final Query queryJPQL = entityMgr.createNativeQuery(query);
+				applyReadOnly(entityMgr, queryJPQL);
+				return queryJPQL.getResultList();
+			}
+		});
+	}
+
+
+	/**
+	 * Method to execute a Native SQL query.
+	 * 
+	 * @param query
+	 *            The native query to be executed
+	 * @return a list of an Object if it exists against given search criteria.
+	 *         Returns null if not found
+	 */
+	public BigInteger countByNativeQuery(final String query) {
+		return (BigInteger) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				/* System.out.println("=========== findEntities ==========="); */
+				final Query queryJPQL = entityMgr.createNativeQuery(query);
+				applyReadOnly(entityMgr, queryJPQL);
+				return queryJPQL.getSingleResult();
+			}
+		});
+	}
+
+	/**
+	 * Method to execute a Native SQL query with positional parameters.
+	 * 
+	 * @param query
+	 *            The native query to be executed, with ? for the parameters
+	 * @param queryParams
+	 *            positional parameters to be used in query
+	 * @return a list of an Object if it exists against given search criteria
+	 */
+	public <T extends Object> List<T> findByNativeQuery(final String query,
+			final List<Object> queryParams) {
+		return (List<T>) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Query queryJPQL = entityMgr.createNativeQuery(query);
+				applyReadOnly(entityMgr, queryJPQL);
+				setPositionalParameters(queryJPQL, queryParams);
+				return queryJPQL.getResultList();
+			}
+		});
+	}
+
+	/**
+	 * Method to execute a Native SQL count query with positional parameters.
+	 * 
+	 * @param query
+	 *            The native query to be executed, with ? for the parameters
+	 * @param queryParams
+	 *            positional parameters to be used in query
+	 * @return the count
+	 */
+	public BigInteger countByNativeQuery(final String query,
+			final List<Object> queryParams) {
+		return (BigInteger) getJpaTemplate().execute(new JpaCallback() {
 			public Object doInJpa(final EntityManager entityMgr)
 					throws PersistenceException {
-				/* System.out.println("=========== findEntities ==========="); */
 				final Query queryJPQL = entityMgr.createNativeQuery(query);
+				applyReadOnly(entityMgr, queryJPQL);
+				setPositionalParameters(queryJPQL, queryParams);
 				return queryJPQL.getSingleResult();
 			}
 		});
 	}
 
+	private static void setPositionalParameters(final Query query,
+			final List<Object> queryParams) {
+		if (queryParams != null) {
+			int paramCounter = 1;
+			for (Object param : queryParams) {
+				query.setParameter(paramCounter, param);
+				paramCounter++;
+			}
+		}
+	}
+
 	/**
 	 * Method to execute a Native SQL query with a multi condition positional
 	 * parameter.
@@ -652,6 +1605,7 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 				// System.out.println("=========== findEntities ===========");
 
 				final Query queryJPQL = entityMgr.createNativeQuery(query);
+				applyReadOnly(entityMgr, queryJPQL);
 
 				if (queryParams != null) {
 					Iterator itr = queryParams.iterator();
@@ -686,6 +1640,7 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 					throws PersistenceException {
 				final Query query = entityMgr.createQuery("from "
 						+ clazz.getName());
+				applyReadOnly(entityMgr, query);
 				// Session session = (Session)entityMgr.getDelegate();
 				// session.enableFilter ("createdBy").setParameter ("createdBy",
 				// 1);
@@ -694,6 +1649,152 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 		});
 	}
 
+	/**
+	 * Streams all given entity objects to the callback using a forward only
+	 * cursor. Unlike {@link #loadAll(Class)} the rows are never materialized
+	 * as a list and every entity is detached once it has been processed, so
+	 * memory use does not depend on the table size.
+	 * 
+	 * @param clazz
+	 *            the name of the entity class
+	 * @param callback
+	 *            invoked for every entity object
+	 * @return the number of processed rows
+	 */
+	public <T extends Object> long streamAll(final Class<T> clazz,
+			final RowCallback<T> callback) {
+		return (Long) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Session session = entityMgr.unwrap(Session.class);
+				return scroll(session,
+						session.createQuery("from " + clazz.getName()),
+						callback);
+			}
+		});
+	}
+
+	/**
+	 * Streams the result of a named query to the callback using a forward
+	 * only cursor.
+	 * 
+	 * @param queryName
+	 *            The named query name to be searched
+	 * @param queryParams
+	 *            conditional parameters to be used in query, may be null
+	 * @param callback
+	 *            invoked for every row
+	 * @return the number of processed rows
+	 */
+	public <T extends Object> long streamEntitiesByNamedQuery(
+			final String queryName, final List<Object> queryParams,
+			final RowCallback<T> callback) {
+		return (Long) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Session session = entityMgr.unwrap(Session.class);
+				final org.hibernate.Query query = session
+						.getNamedQuery(queryName);
+				bindPositionalParameters(query, queryParams);
+				return scroll(session, query, callback);
+			}
+		});
+	}
+
+	/**
+	 * Streams the result of a Native SQL query to the callback using a
+	 * forward only cursor. Rows with more than one column are passed as
+	 * Object[].
+	 * 
+	 * @param query
+	 *            The native query to be executed
+	 * @param queryParams
+	 *            positional parameters to be used in query, may be null
+	 * @param callback
+	 *            invoked for every row
+	 * @return the number of processed rows
+	 */
+	public <T extends Object> long streamByNativeQuery(final String query,
+			final List<Object> queryParams, final RowCallback<T> callback) {
+		return (Long) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Session session = entityMgr.unwrap(Session.class);
+				final org.hibernate.Query sqlQuery = session
+						.createSQLQuery(query);
+				bindPositionalParameters(sqlQuery, queryParams);
+				return scroll(session, sqlQuery, callback);
+			}
+		});
+	}
+
+	/**
+	 * Reads the query through a forward only, read only cursor and evicts
+	 * every loaded entity after the callback has seen it. A fetch size of
+	 * Integer.MIN_VALUE makes MySQL Connector/J stream rows instead of
+	 * buffering the whole result set.
+	 */
+	private <T> long scroll(final Session session,
+			final org.hibernate.Query query, final RowCallback<T> callback) {
+		query.setReadOnly(true);
+		query.setCacheable(false);
+		query.setCacheMode(CacheMode.IGNORE);
+		query.setFetchSize(streamingFetchSize);
+		final ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+		long count = 0;
+		try {
+			while (results.next()) {
+				final Object[] row = results.get();
+				callback.processRow((T) (row.length == 1 ? row[0] : row));
+				for (Object value : row) {
+					if (value != null && session.contains(value)) {
+						session.evict(value);
+					}
+				}
+				count++;
+			}
+		} finally {
+			results.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Binds positional parameters on a Hibernate query. JPA style ordinal
+	 * parameters (?1, ?2 ...) are exposed by Hibernate as named parameters,
+	 * plain JDBC style parameters (?) are zero based.
+	 */
+	private void bindPositionalParameters(final org.hibernate.Query query,
+			final List<Object> queryParams) {
+		if (queryParams == null) {
+			return;
+		}
+		final Set<String> namedParameters = new HashSet<String>(
+				Arrays.asList(query.getNamedParameters()));
+		int paramCounter = 1;
+		for (Object param : queryParams) {
+			final String ordinal = String.valueOf(paramCounter);
+			if (namedParameters.contains(ordinal)) {
+				query.setParameter(ordinal, param);
+			} else {
+				query.setParameter(paramCounter - 1, param);
+			}
+			paramCounter++;
+		}
+	}
+
+	/**
+	 * Fetch size used by the streaming methods. The default, Integer.MIN_VALUE,
+	 * enables row by row streaming in MySQL Connector/J; other drivers expect
+	 * a positive value.
+	 * 
+	 * @param streamingFetchSize
+	 *            the JDBC fetch size
+	 */
+	public void setStreamingFetchSize(final int streamingFetchSize) {
+		this.streamingFetchSize = streamingFetchSize;
+	}
+
 	/**
 	 * persist entities using batch process
 	 * 
@@ -702,27 +1803,241 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 	 * @return a list of persisted entities objects
 	 */
 	public <T extends Object> List<T> storeBatch(final List<T> entityList) {
-		return (List<T>) getJpaTemplate().execute(new JpaCallback() {
+		bulkInsert(entityList);
+		return entityList;
+	}
+
+	/**
+	 * persist entities using JDBC batching. The persistence context is
+	 * flushed and cleared after every jdbcBatchSize entities, so each flush
+	 * sends one JDBC batch per table and memory use stays flat. This requires
+	 * an identifier generator that does not need the insert to obtain the id
+	 * (e.g. a table hi/lo generator rather than IDENTITY).
+	 * 
+	 * @param entityList
+	 *            list of an entity
+	 * @return the throughput of every flushed batch
+	 */
+	public <T extends Object> BatchStatistics bulkInsert(
+			final List<T> entityList) {
+		return bulkInsert(entityList, BulkMode.MANAGED);
+	}
+
+	/**
+	 * persist entities using batch process in the given mode
+	 * 
+	 * @param entityList
+	 *            list of an entity
+	 * @param mode
+	 *            MANAGED or STATELESS
+	 * @return a list of persisted entities objects
+	 */
+	public <T extends Object> List<T> storeBatch(final List<T> entityList,
+			final BulkMode mode) {
+		bulkInsert(entityList, mode);
+		return entityList;
+	}
+
+	/**
+	 * persist entities in the given mode, see bulkInsert(List).
+	 * 
+	 * @param entityList
+	 *            list of an entity
+	 * @param mode
+	 *            MANAGED or STATELESS
+	 * @return the throughput and memory of every flushed batch
+	 */
+	public <T extends Object> BatchStatistics bulkInsert(
+			final List<T> entityList, final BulkMode mode) {
+		return mode == BulkMode.STATELESS ? statelessBatch(entityList, true, false)
+				: managedBatch(entityList, true);
+	}
+
+	private <T extends Object> BatchStatistics managedBatch(
+			final List<T> entityList, final boolean insert) {
+		return (BatchStatistics) getJpaTemplate().execute(new JpaCallback() {
 			public Object doInJpa(final EntityManager entityMgr)
 					throws PersistenceException {
-				System.out.println("=========== Store List ===========");
-
-				int batchSize = 100;
+				final Session session = entityMgr.unwrap(Session.class);
+				final BatchStatistics statistics = new BatchStatistics(
+						BulkMode.MANAGED);
+				long batchStart = System.nanoTime();
+				int batchRows = 0;
 				for (int i = 0; i < entityList.size(); i++) {
-					Object entity = entityList.get(i);
-					System.out.println("Store Entity : " + entity);
-					entityMgr.persist(entity);
-					if (i + 1 % batchSize == 0) {
+					if (insert) {
+						entityMgr.persist(entityList.get(i));
+					} else {
+						reattach(entityMgr, entityList.get(i));
+					}
+					batchRows++;
+					if ((i + 1) % jdbcBatchSize == 0) {
 						entityMgr.flush();
+						final int managed = session.getStatistics()
+								.getEntityCount();
 						entityMgr.clear();
+						statistics.addBatch(batchRows, System.nanoTime()
+								- batchStart, managed);
+						batchStart = System.nanoTime();
+						batchRows = 0;
 					}
 				}
 				entityMgr.flush();
+				final int managed = session.getStatistics().getEntityCount();
 				entityMgr.clear();
-				return entityList;
+				if (batchRows > 0) {
+					statistics.addBatch(batchRows, System.nanoTime()
+							- batchStart, managed);
+				}
+				return statistics;
 			}
 		});
+	}
+
+	/**
+	 * Writes the entities through a StatelessSession sharing the connection,
+	 * and so the transaction, of the current EntityManager. The stateless
+	 * session bypasses all caches, so afterwards the written tables are
+	 * invalidated in the query cache like after a bulk update, and the entity
+	 * and natural id regions of the written classes are evicted. With
+	 * keepIds inserts use the identifiers the entities carry instead of the
+	 * identifier generator.
+	 */
+	private <T extends Object> BatchStatistics statelessBatch(
+			final List<T> entityList, final boolean insert,
+			final boolean keepIds) {
+		final Set<Class<?>> written = new HashSet<Class<?>>();
+		final BatchStatistics result = (BatchStatistics) getJpaTemplate()
+				.execute(new JpaCallback() {
+					public Object doInJpa(final EntityManager entityMgr)
+							throws PersistenceException {
+						final SessionImplementor session = (SessionImplementor) entityMgr
+								.unwrap(Session.class);
+						// earlier changes of this transaction go first
+						entityMgr.flush();
+						// the physical connection of the transaction: on the
+						// proxy of session.connection() the statements of the
+						// stateless session would be registered with this
+						// session, whose close then fails and leaks the
+						// connection
+						final StatelessSession stateless = session
+								.getFactory().openStatelessSession(
+										session.getTransactionCoordinator()
+												.getJdbcCoordinator()
+												.getLogicalConnection()
+												.getConnection());
+						final BatchStatistics statistics = new BatchStatistics(
+								BulkMode.STATELESS);
+						try {
+							long batchStart = System.nanoTime();
+							int batchRows = 0;
+							for (int i = 0; i < entityList.size(); i++) {
+								final Object entity = entityList.get(i);
+								if (insert && keepIds) {
+									insertWithId(stateless, entity);
+								} else if (insert) {
+									stateless.insert(entity);
+								} else {
+									prepareStatelessUpdate(stateless, entity);
+									stateless.update(entity);
+								}
+								written.add(Hibernate.getClass(entity));
+								batchRows++;
+								if ((i + 1) % jdbcBatchSize == 0) {
+									executeBatch(stateless);
+									statistics.addBatch(batchRows,
+											System.nanoTime() - batchStart, 0);
+									batchStart = System.nanoTime();
+									batchRows = 0;
+								}
+							}
+							executeBatch(stateless);
+							if (batchRows > 0) {
+								statistics.addBatch(batchRows, System.nanoTime()
+										- batchStart, 0);
+							}
+						} finally {
+							stateless.close();
+						}
+
+						final Set<Serializable> querySpaces = new HashSet<Serializable>();
+						for (Class<?> clazz : written) {
+							querySpaces.addAll(Arrays.asList(session
+									.getFactory()
+									.getEntityPersister(clazz.getName())
+									.getQuerySpaces()));
+							session.getFactory().getCache()
+									.evictNaturalIdRegion(clazz);
+						}
+						final BulkOperationCleanupAction cleanup = new BulkOperationCleanupAction(
+								session, querySpaces);
+						((EventSource) session).getActionQueue().addAction(
+								cleanup);
+						return statistics;
+					}
+				});
+		for (Class<?> clazz : written) {
+			evictAll(clazz);
+		}
+		return result;
+	}
+
+	/**
+	 * StatelessSession.update checks and increments the version itself; a
+	 * copy without one gets the version of the current row first.
+	 */
+	private static void prepareStatelessUpdate(
+			final StatelessSession stateless, final Object entity) {
+		final SessionImplementor session = (SessionImplementor) stateless;
+		final EntityPersister persister = session.getEntityPersister(null,
+				entity);
+		if (persister.isVersioned() && persister.getVersion(entity) == null) {
+			final Serializable id = persister.getIdentifier(entity, session);
+			final Object current = stateless.get(persister.getEntityName(), id);
+			if (current == null) {
+				throw new StaleObjectStateException(persister.getEntityName(),
+						id);
+			}
+			copyCurrentVersion(persister, entity, current);
+		}
+	}
+
+	/**
+	 * StatelessSession.insert without the identifier generator: the row is
+	 * added to the JDBC batch under the identifier the entity carries.
+	 */
+	private static void insertWithId(final StatelessSession stateless,
+			final Object entity) {
+		final SessionImplementor session = (SessionImplementor) stateless;
+		final EntityPersister persister = session.getEntityPersister(null,
+				entity);
+		final Serializable id = persister.getIdentifier(entity, session);
+		if (id == null) {
+			throw new IllegalArgumentException("No identifier set on "
+					+ persister.getEntityName());
+		}
+		final Object[] state = persister.getPropertyValues(entity);
+		if (persister.isVersioned()
+				&& Versioning.seedVersion(state, persister.getVersionProperty(),
+						persister.getVersionType(), session)) {
+			persister.setPropertyValues(entity, state);
+		}
+		persister.insert(id, state, entity, session);
+	}
+
+	private static void executeBatch(final StatelessSession stateless) {
+		((SessionImplementor) stateless).getTransactionCoordinator()
+				.getJdbcCoordinator().executeBatch();
+	}
 
+	/**
+	 * Number of entities written per flush by the batch methods. Should match
+	 * hibernate.jdbc.batch_size.
+	 * 
+	 * @param jdbcBatchSize
+	 *            the batch size
+	 */
+	public void setJdbcBatchSize(final int jdbcBatchSize) {
+		this.jdbcBatchSize = jdbcBatchSize;
 	}
 
 	/**
@@ -770,6 +2085,7 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 				// "maxresult : " + maxresult);
 
 				final Query queryNamed = entityMgr.createQuery(query);
+				applyReadOnly(entityMgr, queryNamed);
 
 				if (index != -1) {
 					queryNamed.setFirstResult(index);
@@ -810,6 +2126,7 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 				// "maxresult : " + maxresult);
 
 				final Query queryNamed = entityMgr.createQuery(query);
+				applyReadOnly(entityMgr, queryNamed);
 
 				if (queryParams != null) {
 					final Iterator itr = queryParams.iterator();
@@ -831,6 +2148,396 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 
 	}
 
+	/**
+	 * Retrieve entities, or the selected paths, matching a dynamic search.
+	 * The criteria query is built once per shape of the search and cached,
+	 * values are bound as parameters, so Hibernate finds the translated
+	 * query in its plan cache.
+	 * 
+	 * @param criteria
+	 *            filters, sort order and projection
+	 * @param index
+	 *            specifies start of the result
+	 * @param maxresult
+	 *            specifies end of the result
+	 * @return the entities, or the values or Object[] of the projection
+	 */
+	public <T extends Object> List<T> findEntitiesByCriteria(
+			final SearchCriteria<?> criteria, final int index,
+			final int maxresult) {
+		return (List<T>) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Query query = createCriteriaQuery(entityMgr, criteria,
+						false);
+				applyReadOnly(entityMgr, query);
+				if (index != -1) {
+					query.setFirstResult(index);
+				}
+				if (maxresult != -1) {
+					query.setMaxResults(maxresult);
+				}
+				return query.getResultList();
+			}
+		});
+	}
+
+	/**
+	 * Count the entities matching a dynamic search.
+	 * 
+	 * @param criteria
+	 *            filters of the search
+	 * @return the number of matching entities
+	 */
+	public long countEntitiesByCriteria(final SearchCriteria<?> criteria) {
+		return (Long) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Query query = createCriteriaQuery(entityMgr, criteria,
+						true);
+				applyReadOnly(entityMgr, query);
+				return ((Number) query.getSingleResult()).longValue();
+			}
+		});
+	}
+
+	private Query createCriteriaQuery(final EntityManager entityMgr,
+			final SearchCriteria<?> criteria, final boolean count) {
+		final String shape = criteria.getShape(count);
+		CriteriaTemplate template = criteriaTemplates.get(shape);
+		final Query query;
+		if (template == null) {
+			template = buildCriteriaTemplate(entityMgr.getCriteriaBuilder(),
+					criteria, count);
+			// the first compilation assigns the aliases of the criteria
+			// query, so it has to happen before the template is shared
+			query = entityMgr.createQuery(template.query);
+			if (criteriaTemplates.size() < maxCriteriaTemplates) {
+				criteriaTemplates.putIfAbsent(shape, template);
+			}
+		} else {
+			query = entityMgr.createQuery(template.query);
+		}
+		final Iterator<ParameterExpression<Object>> parameters = template.parameters
+				.iterator();
+		for (SearchCriteria.Filter filter : criteria.getFilters()) {
+			if (filter.operator == SearchCriteria.Operator.IN) {
+				// pad with the last value up to the size of the template
+				final int padded = SearchCriteria.paddedSize(filter.values
+						.size());
+				for (int i = 0; i < padded; i++) {
+					query.setParameter(parameters.next(), filter.values.get(Math
+							.min(i, filter.values.size() - 1)));
+				}
+			} else if (!filter.values.isEmpty()) {
+				query.setParameter(parameters.next(), filter.values.get(0));
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Builds the criteria query of a search shape, with a parameter in place
+	 * of every value.
+	 */
+	private CriteriaTemplate buildCriteriaTemplate(final CriteriaBuilder builder,
+			final SearchCriteria<?> criteria, final boolean count) {
+		final CriteriaQuery<Object> query = builder.createQuery(Object.class);
+		final Root root = query.from(criteria.getEntityClass());
+		final Map<String, Path> paths = new HashMap<String, Path>();
+		final List<ParameterExpression<Object>> parameters = new ArrayList<ParameterExpression<Object>>();
+
+		final List<Predicate> predicates = new ArrayList<Predicate>();
+		for (SearchCriteria.Filter filter : criteria.getFilters()) {
+			final Path path = getSelectionColumn(root, filter.path, paths);
+			if (filter.operator == SearchCriteria.Operator.IS_NULL) {
+				predicates.add(builder.isNull(path));
+				continue;
+			} else if (filter.operator == SearchCriteria.Operator.IS_NOT_NULL) {
+				predicates.add(builder.isNotNull(path));
+				continue;
+			} else if (filter.operator == SearchCriteria.Operator.IN) {
+				final int padded = SearchCriteria.paddedSize(filter.values
+						.size());
+				if (padded == 0) {
+					predicates.add(builder.disjunction());
+					continue;
+				}
+				final Expression[] values = new Expression[padded];
+				for (int i = 0; i < padded; i++) {
+					values[i] = parameter(builder, path, parameters);
+				}
+				predicates.add(path.in(values));
+				continue;
+			}
+			final Expression value = parameter(builder, path, parameters);
+			switch (filter.operator) {
+			case EQ:
+				predicates.add(builder.equal(path, value));
+				break;
+			case NE:
+				predicates.add(builder.notEqual(path, value));
+				break;
+			case LT:
+				predicates.add(builder.lessThan(path, value));
+				break;
+			case LE:
+				predicates.add(builder.lessThanOrEqualTo(path, value));
+				break;
+			case GT:
+				predicates.add(builder.greaterThan(path, value));
+				break;
+			case GE:
+				predicates.add(builder.greaterThanOrEqualTo(path, value));
+				break;
+			default:
+				predicates.add(builder.like(path, value));
+				break;
+			}
+		}
+		query.where(predicates.toArray(VOID_PREDICATE_ARRAY));
+
+		if (count) {
+			query.select(builder.count(root));
+		} else {
+			final List<String> projection = criteria.getProjection();
+			if (projection.size() == 1) {
+				query.select(getSelectionColumn(root, projection.get(0), paths));
+			} else if (projection.size() > 1) {
+				final List<Selection<?>> selections = new ArrayList<Selection<?>>();
+				for (String selected : projection) {
+					selections.add(getSelectionColumn(root, selected, paths));
+				}
+				query.multiselect(selections);
+			} else {
+				query.select(root);
+			}
+			final List<javax.persistence.criteria.Order> orders = new ArrayList<javax.persistence.criteria.Order>();
+			for (SearchCriteria.Order order : criteria.getOrders()) {
+				final Path path = getSelectionColumn(root, order.path, paths);
+				orders.add(order.ascending ? builder.asc(path) : builder
+						.desc(path));
+			}
+			query.orderBy(orders);
+		}
+		return new CriteriaTemplate(query, parameters);
+	}
+
+	private static Expression parameter(final CriteriaBuilder builder,
+			final Path path, final List<ParameterExpression<Object>> parameters) {
+		final ParameterExpression parameter = builder.parameter(ClassUtils
+				.resolvePrimitiveIfNecessary(path.getJavaType()));
+		parameters.add(parameter);
+		return parameter;
+	}
+
+	/**
+	 * Maximum number of search shapes whose criteria query is cached.
+	 * 
+	 * @param maxCriteriaTemplates
+	 *            the number of cached criteria queries
+	 */
+	public void setMaxCriteriaTemplates(final int maxCriteriaTemplates) {
+		this.maxCriteriaTemplates = maxCriteriaTemplates;
+	}
+
+	/**
+	 * Retrieve a page of entities ordered by the given key attribute using
+	 * keyset (seek) pagination. The query seeks past lastKey through the
+	 * index on the key instead of using an offset, so every page costs the
+	 * same regardless of its position.
+	 * 
+	 * @param clazz
+	 *            the name of the entity class
+	 * @param keyAttribute
+	 *            unique, indexed attribute the pages are ordered by, e.g.
+	 *            usrId
+	 * @param lastKey
+	 *            the last key of the previous page, null for the first page
+	 * @param pageSize
+	 *            the maximum number of entities in the page, at least 1
+	 * @return the page and the key to continue from
+	 */
+	public <T extends Object> KeysetPage<T> findEntitiesByKeyset(
+			final Class<T> clazz, final String keyAttribute,
+			final Serializable lastKey, final int pageSize) {
+		checkAttributeName(keyAttribute);
+		checkPageSize(pageSize);
+		return (KeysetPage<T>) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final StringBuilder jpql = new StringBuilder("select e from ")
+						.append(clazz.getName()).append(" e");
+				if (lastKey != null) {
+					jpql.append(" where e.").append(keyAttribute)
+							.append(" > ?1");
+				}
+				jpql.append(" order by e.").append(keyAttribute).append(" asc");
+
+				final Query query = entityMgr.createQuery(jpql.toString());
+				if (lastKey != null) {
+					query.setParameter(1, lastKey);
+				}
+				return toKeysetPage(entityMgr, query, keyAttribute, pageSize);
+			}
+		});
+	}
+
+	/**
+	 * Retrieve a page of entities using keyset (seek) pagination on a named
+	 * query. The named query has to restrict and order on the key attribute,
+	 * with the key as its last positional parameter, e.g.
+	 * <code>select u from TUsr u where u.usrId &gt; ?1 order by u.usrId</code>
+	 * 
+	 * @param queryName
+	 *            The named query name to be searched
+	 * @param queryParams
+	 *            conditional parameters to be used in query, without the key
+	 * @param keyAttribute
+	 *            the attribute the named query is ordered by
+	 * @param lastKey
+	 *            the last key of the previous page; for the first page a value
+	 *            lower than any key, never null
+	 * @param pageSize
+	 *            the maximum number of entities in the page, at least 1
+	 * @return the page and the key to continue from
+	 */
+	public <T extends Object> KeysetPage<T> findEntitiesByNamedQueryKeyset(
+			final String queryName, final List<Object> queryParams,
+			final String keyAttribute, final Serializable lastKey,
+			final int pageSize) {
+		checkAttributeName(keyAttribute);
+		checkLastKey(lastKey);
+		checkPageSize(pageSize);
+		return (KeysetPage<T>) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Query queryNamed = entityMgr.createNamedQuery(queryName);
+				applyQueryCache(queryNamed, queryName);
+				int paramCounter = 1;
+				if (queryParams != null) {
+					for (Object param : queryParams) {
+						queryNamed.setParameter(paramCounter, param);
+						paramCounter++;
+					}
+				}
+				queryNamed.setParameter(paramCounter, lastKey);
+				return toKeysetPage(entityMgr, queryNamed, keyAttribute,
+						pageSize);
+			}
+		});
+	}
+
+	/**
+	 * Retrieve a page of rows using keyset (seek) pagination on a native
+	 * query, the counterpart of {@link #findByNativeQueryMultiCond} without
+	 * the offset. The query has to restrict and order on the key column, with
+	 * the key as its last positional parameter, e.g.
+	 * <code>select usr_id, usr_name from t_usr where usr_id &gt; ?1 order by usr_id</code>
+	 * 
+	 * @param query
+	 *            The native query to be executed
+	 * @param queryParams
+	 *            conditional parameters to be used in query, without the key
+	 * @param keyColumn
+	 *            zero based position of the key in the selected columns
+	 * @param lastKey
+	 *            the last key of the previous page; for the first page a value
+	 *            lower than any key, never null
+	 * @param pageSize
+	 *            the maximum number of rows in the page, at least 1
+	 * @return the page and the key to continue from
+	 */
+	public KeysetPage<Object> findByNativeQueryKeyset(final String query,
+			final List<Object> queryParams, final int keyColumn,
+			final Serializable lastKey, final int pageSize) {
+		if (keyColumn < 0) {
+			throw new IllegalArgumentException("Invalid key column: "
+					+ keyColumn);
+		}
+		checkLastKey(lastKey);
+		checkPageSize(pageSize);
+		return (KeysetPage<Object>) getJpaTemplate().execute(new JpaCallback() {
+			public Object doInJpa(final EntityManager entityMgr)
+					throws PersistenceException {
+				final Query queryNative = entityMgr.createNativeQuery(query);
+				applyReadOnly(entityMgr, queryNative);
+				setPositionalParameters(queryNative, queryParams);
+				queryNative.setParameter(queryParams == null ? 1
+						: queryParams.size() + 1, lastKey);
+				queryNative.setMaxResults(pageSize + 1);
+				final List<Object> rows = queryNative.getResultList();
+				final boolean hasNext = rows.size() > pageSize;
+				final List<Object> content = hasNext ? new ArrayList<Object>(
+						rows.subList(0, pageSize)) : rows;
+				Serializable nextKey = null;
+				if (!content.isEmpty()) {
+					// a single selected column comes back as the bare value
+					final Object last = content.get(content.size() - 1);
+					nextKey = (Serializable) (last instanceof Object[]
+							? ((Object[]) last)[keyColumn] : last);
+				}
+				return new KeysetPage<Object>(content, nextKey, hasNext);
+			}
+		});
+	}
+
+	/**
+	 * Runs the query for pageSize + 1 rows; the extra row only tells whether
+	 * another page follows.
+	 */
+	private <T> KeysetPage<T> toKeysetPage(final EntityManager entityMgr,
+			final Query query, final String keyAttribute, final int pageSize) {
+		applyReadOnly(entityMgr, query);
+		query.setMaxResults(pageSize + 1);
+		final List<T> rows = query.getResultList();
+		final boolean hasNext = rows.size() > pageSize;
+		final List<T> content = hasNext ? new ArrayList<T>(rows.subList(0,
+				pageSize)) : rows;
+		final Serializable lastKey = content.isEmpty() ? null : getKeyValue(
+				entityMgr.unwrap(Session.class),
+				content.get(content.size() - 1), keyAttribute);
+		return new KeysetPage<T>(content, lastKey, hasNext);
+	}
+
+	private Serializable getKeyValue(final Session session,
+			final Object entity, final String keyAttribute) {
+		final ClassMetadata metadata = session.getSessionFactory()
+				.getClassMetadata(Hibernate.getClass(entity));
+		if (keyAttribute.equals(metadata.getIdentifierPropertyName())) {
+			return metadata.getIdentifier(entity, (SessionImplementor) session);
+		}
+		return (Serializable) metadata.getPropertyValue(entity, keyAttribute);
+	}
+
+	private void checkAttributeName(final String attribute) {
+		if (attribute == null || !ATTRIBUTE_NAME.matcher(attribute).matches()) {
+			throw new IllegalArgumentException("Invalid attribute name: "
+					+ attribute);
+		}
+	}
+
+	/**
+	 * Binding null would compare the key with NULL, which matches no row and
+	 * ends the paging silently on its first page.
+	 */
+	private static void checkLastKey(final Serializable lastKey) {
+		if (lastKey == null) {
+			throw new IllegalArgumentException("lastKey must not be null;"
+					+ " pass a value lower than any key for the first page");
+		}
+	}
+
+	/**
+	 * An empty page would report a next page without a key to continue
+	 * from, so a paging loop would restart at the first page forever.
+	 */
+	private static void checkPageSize(final int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive");
+		}
+	}
+
 	/**
 	 * get entity manager
 	 * 
@@ -863,35 +2570,20 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 			final Long destSalesSPId, final Long destHierId,
 			final String zipList, final String optUORD,
 			final String lowestTableName, Integer userId) {
-		return (Object) getJpaTemplate().execute(new JpaCallback() {
-			public Object doInJpa(final EntityManager entityMgr)
-					throws PersistenceException {
-				System.out.println("=========== isShapePolygonContinousProc ========START=== ");
-				String zipFinal = "" + zipList.toString() + "";
-				System.out.println("=========== destSalesSPId = " + destSalesSPId);
-				System.out.println("=========== destHierId = " + destHierId);
-				System.out.println("=========== zipStr = " + zipFinal);
-				System.out.println("=========== operationFlag = " + optUORD);
-				System.out.println("=========== lowestTableName = " + lowestTableName);
-				System.out.println("=========== START TIME = "
-						+ System.currentTimeMillis());
-				final Query queryJPQL = entityMgr
-						.createNativeQuery("{ CALL P2_isShape_Continuous_M(?,?,?,?,?) }");
-				queryJPQL.setParameter(1, destSalesSPId);
-				queryJPQL.setParameter(2, destHierId);
-				queryJPQL.setParameter(3, zipFinal);
-				queryJPQL.setParameter(4, optUORD);
-				queryJPQL.setParameter(5, lowestTableName);
-
-				String result = (String) queryJPQL.getSingleResult();
-				System.out.println("=========== END TIME = "
-						+ System.currentTimeMillis());
-				System.out.println("=========== isShapePolygonContinousProc ========END=== "
-						+ result);
-
-				return new String(result);
-			}
-		});
+		final long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			final Object result = executeProcedure(
+					IS_SHAPE_CONTINUOUS,
+					Collections.singletonList(new Object[] { destSalesSPId,
+							destHierId, zipList, optUORD, lowestTableName }))
+					.get(0).getSingleResult();
+			failed = false;
+			return result;
+		} finally {
+			recordProcedureCall("isShapePolygonContinousProc",
+					IS_SHAPE_CONTINUOUS.getName(), start, failed);
+		}
 	}
 
 	/**
@@ -920,41 +2612,321 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 			final String zipList, final String zipAssignedList,
 			final String flagAssignOrUnassign, final String lowestTableName,
 			final Integer userId) {
-		return (Object) getJpaTemplate().execute(new JpaCallback() {
+		final long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			final Object result = executeProcedure(
+					UPDATE_SHAPE_ASSIGNMENT,
+					Collections.singletonList(new Object[] { destSalesSPId,
+							destHierId, zipList, zipAssignedList,
+							flagAssignOrUnassign, lowestTableName, userId }))
+					.get(0).getSingleResult();
+			failed = false;
+			return result;
+		} finally {
+			recordProcedureCall("updateChildParentShapePolygonProc",
+					UPDATE_SHAPE_ASSIGNMENT.getName(), start, failed);
+		}
+	}
+
+	@Override
+	public void registerProcedure(final ProcedureDefinition definition) {
+		procedures.put(definition.getName(), definition);
+	}
+
+	@Override
+	public ProcedureResult callProcedure(final String procedureName,
+			final Object... args) {
+		return executeProcedure(getProcedure(procedureName),
+				Collections.singletonList(args)).get(0);
+	}
+
+	@Override
+	public List<ProcedureResult> callProcedureBatch(
+			final String procedureName, final List<Object[]> argsList) {
+		return executeProcedure(getProcedure(procedureName), argsList);
+	}
+
+	private ProcedureDefinition getProcedure(final String procedureName) {
+		final ProcedureDefinition definition = procedures.get(procedureName);
+		if (definition == null) {
+			throw new IllegalArgumentException("Procedure " + procedureName
+					+ " is not registered");
+		}
+		return definition;
+	}
+
+	/**
+	 * Runs every call on one CallableStatement. Calls that return nothing but
+	 * an update count go out as JDBC batches of jdbcBatchSize; the others need
+	 * their OUT parameters and rows read back after each execute.
+	 */
+	private List<ProcedureResult> executeProcedure(
+			final ProcedureDefinition definition, final List<Object[]> argsList) {
+		for (Object[] args : argsList) {
+			final int count = args == null ? 0 : args.length;
+			if (count != definition.getArgumentCount()) {
+				throw new IllegalArgumentException("Procedure "
+						+ definition.getName() + " takes "
+						+ definition.getArgumentCount() + " arguments, got "
+						+ count);
+			}
+		}
+		final boolean batch = argsList.size() > 1
+				&& !definition.hasOutParameters()
+				&& !definition.isReturningResultSet();
+		return (List<ProcedureResult>) getJpaTemplate().execute(
+				new JpaCallback() {
+					public Object doInJpa(final EntityManager entityMgr)
+							throws PersistenceException {
+						final Session session = entityMgr
+								.unwrap(Session.class);
+						// the procedure may read rows changed in this
+						// transaction
+						session.flush();
+						final List<ProcedureResult> results = new ArrayList<ProcedureResult>(
+								argsList.size());
+						session.doWork(new Work() {
+							public void execute(final Connection connection)
+									throws SQLException {
+								final CallableStatement cs = connection
+										.prepareCall(definition
+												.getCallString());
+								try {
+									if (batch) {
+										executeProcedureBatch(cs, definition,
+												argsList, results);
+									} else {
+										for (Object[] args : argsList) {
+											bindProcedure(cs, definition, args);
+											results.add(readProcedureResult(
+													cs, definition,
+													cs.execute()));
+										}
+									}
+								} finally {
+									cs.close();
+								}
+							}
+						});
+						return results;
+					}
+				});
+	}
+
+	private void executeProcedureBatch(final CallableStatement cs,
+			final ProcedureDefinition definition,
+			final List<Object[]> argsList, final List<ProcedureResult> results)
+			throws SQLException {
+		int row = 0;
+		for (Object[] args : argsList) {
+			bindProcedure(cs, definition, args);
+			cs.addBatch();
+			row++;
+			if (row % jdbcBatchSize == 0 || row == argsList.size()) {
+				for (int updateCount : cs.executeBatch()) {
+					results.add(new ProcedureResult(new Object[definition
+							.getParameters().size()], Collections
+							.<Object[]> emptyList(), updateCount));
+				}
+			}
+		}
+	}
+
+	private static void bindProcedure(final CallableStatement cs,
+			final ProcedureDefinition definition, final Object[] args)
+			throws SQLException {
+		int position = 1;
+		int arg = 0;
+		for (ProcedureDefinition.Parameter parameter : definition
+				.getParameters()) {
+			if (parameter.getMode() != ProcedureDefinition.Mode.IN) {
+				cs.registerOutParameter(position, parameter.getSqlType());
+			}
+			if (parameter.getMode() != ProcedureDefinition.Mode.OUT) {
+				final Object value = args[arg++];
+				if (value == null) {
+					cs.setNull(position, parameter.getSqlType());
+				} else {
+					cs.setObject(position, value, parameter.getSqlType());
+				}
+			}
+			position++;
+		}
+	}
+
+	private static ProcedureResult readProcedureResult(
+			final CallableStatement cs, final ProcedureDefinition definition,
+			final boolean hasResultSet) throws SQLException {
+		List<Object[]> rows = Collections.emptyList();
+		int updateCount = -1;
+		if (hasResultSet) {
+			final ResultSet rs = cs.getResultSet();
+			try {
+				if (definition.isReturningResultSet()) {
+					final int columns = rs.getMetaData().getColumnCount();
+					rows = new ArrayList<Object[]>();
+					while (rs.next()) {
+						final Object[] row = new Object[columns];
+						for (int i = 0; i < columns; i++) {
+							row[i] = rs.getObject(i + 1);
+						}
+						rows.add(row);
+					}
+				}
+			} finally {
+				rs.close();
+			}
+		} else {
+			updateCount = cs.getUpdateCount();
+		}
+		final List<ProcedureDefinition.Parameter> parameters = definition
+				.getParameters();
+		final Object[] outParameters = new Object[parameters.size()];
+		for (int i = 0; i < parameters.size(); i++) {
+			if (parameters.get(i).getMode() != ProcedureDefinition.Mode.IN) {
+				outParameters[i] = cs.getObject(i + 1);
+			}
+		}
+		return new ProcedureResult(outParameters, rows, updateCount);
+	}
+
+	@Override
+	public void loadBulkKeys(final String tableName,
+			final String columnDefinition, final Collection<?> keys) {
+		if (!ATTRIBUTE_NAME.matcher(tableName).matches()) {
+			throw new IllegalArgumentException("Invalid table name "
+					+ tableName);
+		}
+		if (columnDefinition == null
+				|| !BULK_KEY_TYPE.matcher(columnDefinition).matches()) {
+			throw new IllegalArgumentException("Unsupported key column type "
+					+ columnDefinition);
+		}
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			throw new IllegalStateException("Temporary table " + tableName
+					+ " only lives on one connection; load it in a transaction");
+		}
+		getJpaTemplate().execute(new JpaCallback() {
 			public Object doInJpa(final EntityManager entityMgr)
 					throws PersistenceException {
-				System.out.println("=========== updateChildParentShapePolygonProc ========START=== ");
-				System.out.println("=========== destSalesSPId = " + destSalesSPId);
-				System.out.println("=========== destHierId = " + destHierId);
-				System.out.println("=========== zipStr = " + zipList);
-				System.out.println("=========== zipAssignedList = " + zipAssignedList);
-				System.out.println("=========== flagAssignOrUnassign = "
-						+ flagAssignOrUnassign);
-				System.out.println("=========== lowestTableName = " + lowestTableName);
-				System.out.println("=========== userId = " + userId);
-				System.out.println("=========== START TIME = "
-						+ System.currentTimeMillis());
-				final Query queryJPQL = entityMgr
-						.createNativeQuery("{ CALL P7_Update_Shape_AssignUnAssignGeo_M(?,?,?,?,?,?,?) }");
-				queryJPQL.setParameter(1, destSalesSPId);
-				queryJPQL.setParameter(2, destHierId);
-				queryJPQL.setParameter(3, zipList);
-				queryJPQL.setParameter(4, zipAssignedList);
-				queryJPQL.setParameter(5, flagAssignOrUnassign);
-				queryJPQL.setParameter(6, lowestTableName);
-				queryJPQL.setParameter(7, userId);
-
-				String result = (String) queryJPQL.getSingleResult();
-				System.out.println("=========== END TIME = "
-						+ System.currentTimeMillis());
-				System.out.println("=========== updateChildParentShapePolygonProc ========END=== "
-						+ result);
-
-				return new String(result);
+				final Session session = entityMgr.unwrap(Session.class);
+				session.doWork(new Work() {
+					public void execute(final Connection connection)
+							throws SQLException {
+						final Statement statement = connection
+								.createStatement();
+						try {
+							statement.execute("CREATE TEMPORARY TABLE IF NOT EXISTS "
+									+ tableName
+									+ " ("
+									+ BULK_KEY_COLUMN
+									+ " "
+									+ columnDefinition
+									+ " NOT NULL PRIMARY KEY)");
+							// keys of an earlier load in this transaction;
+							// TRUNCATE would commit it
+							statement.executeUpdate("DELETE FROM " + tableName);
+						} finally {
+							statement.close();
+						}
+						// rewriteBatchedStatements sends each batch as one
+						// multi-row INSERT
+						final PreparedStatement ps = connection
+								.prepareStatement("INSERT IGNORE INTO "
+										+ tableName + " (" + BULK_KEY_COLUMN
+										+ ") VALUES (?)");
+						try {
+							int row = 0;
+							for (Object key : keys) {
+								ps.setObject(1, key);
+								ps.addBatch();
+								row++;
+								if (row % bulkKeyBatchSize == 0
+										|| row == keys.size()) {
+									ps.executeBatch();
+								}
+							}
+						} finally {
+							ps.close();
+						}
+					}
+				});
+				dropBulkKeysAtCompletion(session, tableName);
+				return null;
 			}
 		});
 	}
 
+	/**
+	 * Drops the temporary table before the transaction completes, while the
+	 * connection still belongs to it; a pooled connection would otherwise
+	 * carry the table and its rows over to the next transaction. CREATE and
+	 * DROP TEMPORARY TABLE do not commit the transaction.
+	 */
+	private static void dropBulkKeysAtCompletion(final Session session,
+			final String tableName) {
+		final String resourceKey = BULK_KEY_COLUMN + '.' + tableName;
+		if (TransactionSynchronizationManager.hasResource(resourceKey)) {
+			return;
+		}
+		TransactionSynchronizationManager.bindResource(resourceKey,
+				Boolean.TRUE);
+		TransactionSynchronizationManager
+				.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void beforeCompletion() {
+						if (!session.isOpen()) {
+							return;
+						}
+						try {
+							session.doWork(new Work() {
+								public void execute(final Connection connection)
+										throws SQLException {
+									final Statement statement = connection
+											.createStatement();
+									try {
+										statement.execute("DROP TEMPORARY TABLE IF EXISTS "
+												+ tableName);
+									} finally {
+										statement.close();
+									}
+								}
+							});
+						} catch (HibernateException e) {
+							// a broken connection is discarded by the pool
+							// together with its temporary tables
+						}
+					}
+
+					@Override
+					public void afterCompletion(final int status) {
+						TransactionSynchronizationManager
+								.unbindResourceIfPossible(resourceKey);
+					}
+				});
+	}
+
+	/**
+	 * The named procedure methods are not part of GenericDAO, so the metrics
+	 * proxy does not see them; record them here.
+	 */
+	private void recordProcedureCall(final String method,
+			final String procedure, final long start, final boolean failed) {
+		if (metricsRegistry != null) {
+			metricsRegistry.record(method, procedure, System.nanoTime()
+					- start, failed ? 0 : 1, failed);
+		}
+	}
+
+	/**
+	 * @param metricsRegistry
+	 *            receives the latency of the stored procedure calls
+	 */
+	public void setMetricsRegistry(final DAOMetricsRegistry metricsRegistry) {
+		this.metricsRegistry = metricsRegistry;
+	}
+
 	/**
 	 * code to generate unique number from t_unique_key
 	 * 
@@ -975,6 +2947,24 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 		return generateID(group, table, valueCol, pKeyColumn, DEFAULT_MAX_LO);
 	}
 
+	/**
+	 * getSelectionColumn reusing the path, and so the join, resolved earlier
+	 * for the same attribute path.
+	 */
+	private Path getSelectionColumn(final Root from, final String selectedCol,
+			final Map<String, Path> paths) {
+		Path path = paths.get(selectedCol);
+		if (path == null) {
+			path = getSelectionColumn(from, selectedCol);
+			if (path == null) {
+				throw new IllegalArgumentException("Invalid attribute path: "
+						+ selectedCol);
+			}
+			paths.put(selectedCol, path);
+		}
+		return path;
+	}
+
 	private Path getSelectionColumn(Root from,String selectedCol){
 		if(!StringUtils.isEmpty(selectedCol)){
 			if(selectedCol.contains(":")){
@@ -1027,41 +3017,56 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 	 */
 	@Override
 	public Long generateID(final String group, final String table,final String valueCol, final String pKeyColumn,final String maxlo) {
-		return (Long) getJpaTemplate().execute(new JpaCallback() {
-			public Object doInJpa(final EntityManager entityMgr)throws PersistenceException {
-
-				ObjectNameNormalizer normalizer = new ObjectNameNormalizer() {
-					@Override
-					protected boolean isUseQuotedIdentifiersGlobally() {
-						return false;
-					}
-					@Override
-					protected NamingStrategy getNamingStrategy() {
-						return new Configuration().getNamingStrategy();
-					}
-				};
-
-				MultipleHiLoPerTableGenerator gen = new MultipleHiLoPerTableGenerator();
-				Properties properties = new Properties();
-				properties.put("table", table);
-				properties.put("value_column", valueCol);
-				properties.put("primary_key_column", pKeyColumn);
-				properties.put("primary_key_value", group);
-				properties.put("max_lo",maxlo);
-				properties.put("hibernate.dialect",entityMgr.getEntityManagerFactory().getProperties().get("hibernate.dialect"));
-				// "org.hibernate.dialect.MySQL5Dialect"
-				properties.put("identifier_normalizer", normalizer);
-				gen.configure(new BigIntegerType(), properties,Dialect.getDialect(properties));
-				Serializable ss = gen.generate((SessionImpl) entityMgr.getDelegate(), new Object());
-				return Long.parseLong(ss.toString());
+		final int maxLo = Integer.parseInt(maxlo.trim());
+		// one allocator per key row: blocks of different sizes on the same
+		// row would hand out overlapping ids
+		final String key = table + '.' + valueCol + '.' + pKeyColumn + ':'
+				+ group;
+		HiLoIdAllocator allocator = idAllocators.get(key);
+		if (allocator == null) {
+			final HiLoIdAllocator created = new HiLoIdAllocator(
+					getDataSource(), table, valueCol, pKeyColumn, group,
+					maxLo, idPrefetch ? ID_PREFETCH_EXECUTOR : null);
+			allocator = idAllocators.putIfAbsent(key, created);
+			if (allocator == null) {
+				allocator = created;
 			}
-		});
+		}
+		if (allocator.getMaxLo() != maxLo) {
+			throw new IllegalArgumentException("Ids of " + group + " in "
+					+ table + " are allocated with maxlo "
+					+ allocator.getMaxLo() + ", not " + maxLo);
+		}
+		return allocator.nextId();
+	}
+
+	/**
+	 * @return the DataSource the entity manager factory was built on
+	 */
+	private DataSource getDataSource() {
+		final EntityManagerFactory emf = getJpaTemplate()
+				.getEntityManagerFactory();
+		if (emf instanceof EntityManagerFactoryInfo
+				&& ((EntityManagerFactoryInfo) emf).getDataSource() != null) {
+			return ((EntityManagerFactoryInfo) emf).getDataSource();
+		}
+		throw new IllegalStateException(
+				"No DataSource available from the EntityManagerFactory");
+	}
+
+	/**
+	 * @param idPrefetch
+	 *            whether generateID fetches the next id block in the
+	 *            background before the current one runs out (default true)
+	 */
+	public void setIdPrefetch(final boolean idPrefetch) {
+		this.idPrefetch = idPrefetch;
 	}
 
 	@Override
 	public void switchDatabaseContext() {
-		//This method is to switch context using DBRouterAspect.
-
+		// read by the ReplicationRoutingDataSource, cleared at request end
+		DatabaseContextHolder.pinToPrimary();
 	}
 
 	/**
@@ -1099,5 +3104,21 @@ public class GenericDAOImpl extends JpaDaoSupport implements GenericDAO {
 //		});
 //	}
 
+	/**
+	 * A criteria query built for one search shape, with its parameters in
+	 * the order the filter values are bound.
+	 */
+	private static final class CriteriaTemplate {
+
+		private final CriteriaQuery<Object> query;
+
+		private final List<ParameterExpression<Object>> parameters;
+
+		private CriteriaTemplate(final CriteriaQuery<Object> query,
+				final List<ParameterExpression<Object>> parameters) {
+			this.query = query;
+			this.parameters = parameters;
+		}
+	}
 
 }
@@ -0,0 +1,291 @@
+package com.docstore.core.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hands out ids for one group of a hi/lo key table from an in-memory block.
+ *
+ * The hi value is read and incremented in the key table the same way
+ * Hibernate's MultipleHiLoPerTableGenerator does, so the ids are
+ * hi * (maxLo + 1) + lo and never clash with entities using a
+ * TableGenerator on the same row and allocation size maxLo + 1. Allocators
+ * with different block sizes on one row do clash, so all users of a row must
+ * agree on maxLo. Ids are drawn from the
+ * current block without locking; only the thread that finds the block
+ * exhausted takes the lock to install the next one. When a quarter of the
+ * block is left the next hi value is fetched in the background, so callers
+ * normally never wait for the database.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class HiLoIdAllocator {
+
+	private static final Log LOGGER = LogFactory.getLog(HiLoIdAllocator.class);
+
+	private static final Pattern IDENTIFIER = Pattern
+			.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	private final DataSource dataSource;
+
+	private final String group;
+
+	private final int maxLo;
+
+	private final Executor prefetchExecutor;
+
+	private final String selectSql;
+
+	private final String insertSql;
+
+	private final String updateSql;
+
+	private final ReentrantLock refillLock = new ReentrantLock();
+
+	private final AtomicReference<Future<Long>> nextHi = new AtomicReference<Future<Long>>();
+
+	private volatile Block current = new Block(0, -1, -1, -1);
+
+	/**
+	 * @param dataSource
+	 *            the database holding the key table
+	 * @param table
+	 *            the key table, e.g. t_unique_key
+	 * @param valueColumn
+	 *            the column holding the next hi value
+	 * @param keyColumn
+	 *            the column holding the group name
+	 * @param group
+	 *            the group ids are allocated for
+	 * @param maxLo
+	 *            ids per block minus one, at least 0
+	 * @param prefetchExecutor
+	 *            runs the background fetch of the next block, null to fetch
+	 *            only when a block runs out
+	 */
+	public HiLoIdAllocator(final DataSource dataSource, final String table,
+			final String valueColumn, final String keyColumn,
+			final String group, final int maxLo, final Executor prefetchExecutor) {
+		checkIdentifier(table);
+		checkIdentifier(valueColumn);
+		checkIdentifier(keyColumn);
+		if (maxLo < 0) {
+			throw new IllegalArgumentException("Invalid maxLo: " + maxLo);
+		}
+		this.dataSource = dataSource;
+		this.group = group;
+		this.maxLo = maxLo;
+		this.prefetchExecutor = prefetchExecutor;
+		this.selectSql = "select " + valueColumn + " from " + table
+				+ " where " + keyColumn + " = ? for update";
+		this.insertSql = "insert into " + table + " (" + keyColumn + ", "
+				+ valueColumn + ") values (?, 1)";
+		this.updateSql = "update " + table + " set " + valueColumn + " = ? where "
+				+ keyColumn + " = ? and " + valueColumn + " = ?";
+	}
+
+	/**
+	 * @return ids per block minus one
+	 */
+	public int getMaxLo() {
+		return maxLo;
+	}
+
+	/**
+	 * @return the next id of the group
+	 */
+	public long nextId() {
+		while (true) {
+			final Block block = current;
+			final long id = block.next.getAndIncrement();
+			if (id <= block.last) {
+				if (id == block.prefetchAt) {
+					prefetch();
+				}
+				return id;
+			}
+			refill(block);
+		}
+	}
+
+	private void refill(final Block exhausted) {
+		refillLock.lock();
+		try {
+			if (current != exhausted) {
+				// another thread installed a new block meanwhile
+				return;
+			}
+			long hi = -1;
+			final Future<Long> prefetched = nextHi.getAndSet(null);
+			if (prefetched != null) {
+				try {
+					hi = prefetched.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					LOGGER.warn("Prefetch of id block for " + group
+							+ " failed, fetching synchronously", e.getCause());
+				}
+			}
+			if (hi < 0) {
+				hi = fetchHi();
+			}
+			current = newBlock(hi);
+		} finally {
+			refillLock.unlock();
+		}
+	}
+
+	private void prefetch() {
+		if (prefetchExecutor == null) {
+			return;
+		}
+		final FutureTask<Long> task = new FutureTask<Long>(
+				new Callable<Long>() {
+					public Long call() {
+						return fetchHi();
+					}
+				});
+		if (nextHi.compareAndSet(null, task)) {
+			prefetchExecutor.execute(task);
+		}
+	}
+
+	private Block newBlock(final long hi) {
+		final long first = hi * (maxLo + 1);
+		final long last = first + maxLo;
+		// 0 is never handed out, as with MultipleHiLoPerTableGenerator
+		return new Block(hi == 0 ? 1 : first, last, last - (maxLo + 1) / 4,
+				hi);
+	}
+
+	/**
+	 * Read and increment the hi value of the group in its own transaction.
+	 */
+	private long fetchHi() {
+		try {
+			final Connection connection = dataSource.getConnection();
+			try {
+				final boolean autoCommit = connection.getAutoCommit();
+				connection.setAutoCommit(false);
+				try {
+					final long hi = incrementHi(connection);
+					connection.commit();
+					return hi;
+				} catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				} finally {
+					connection.setAutoCommit(autoCommit);
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("Could not allocate id block for "
+					+ group, e);
+		}
+	}
+
+	private long incrementHi(final Connection connection) throws SQLException {
+		for (int attempt = 0;; attempt++) {
+			Long hi = null;
+			final PreparedStatement select = connection
+					.prepareStatement(selectSql);
+			try {
+				select.setString(1, group);
+				final ResultSet rs = select.executeQuery();
+				if (rs.next()) {
+					hi = rs.getLong(1);
+				}
+				rs.close();
+			} finally {
+				select.close();
+			}
+
+			if (hi == null) {
+				final PreparedStatement insert = connection
+						.prepareStatement(insertSql);
+				try {
+					insert.setString(1, group);
+					insert.executeUpdate();
+					return 0;
+				} catch (SQLException e) {
+					if (attempt > 0) {
+						throw e;
+					}
+					// the row may have been created concurrently, read it again
+					LOGGER.debug("Key row for " + group + " created concurrently",
+							e);
+					continue;
+				} finally {
+					insert.close();
+				}
+			}
+
+			final PreparedStatement update = connection
+					.prepareStatement(updateSql);
+			try {
+				update.setLong(1, hi + 1);
+				update.setString(2, group);
+				update.setLong(3, hi);
+				if (update.executeUpdate() == 1) {
+					return hi;
+				}
+			} finally {
+				update.close();
+			}
+		}
+	}
+
+	private static void checkIdentifier(final String name) {
+		if (name == null || !IDENTIFIER.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid identifier: " + name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final Block block = current;
+		return "HiLoIdAllocator [group=" + group + ", hi=" + block.hi
+				+ ", next=" + block.next.get() + ", last=" + block.last + "]";
+	}
+
+	private static final class Block {
+
+		private final AtomicLong next;
+
+		private final long last;
+
+		private final long prefetchAt;
+
+		private final long hi;
+
+		private Block(final long first, final long last, final long prefetchAt,
+				final long hi) {
+			this.next = new AtomicLong(first);
+			this.last = last;
+			this.prefetchAt = prefetchAt;
+			this.hi = hi;
+		}
+	}
+
+}
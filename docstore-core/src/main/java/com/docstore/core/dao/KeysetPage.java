@@ -0,0 +1,57 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of a keyset (seek) paginated result. The next page is requested
+ * by passing {@link #getLastKey()} back as the continuation token, which lets
+ * the database seek directly to the first row of the page instead of
+ * skipping index rows as LIMIT offset,n does.
+ * 
+ * @param <T>
+ *            Object type
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public class KeysetPage<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<T> content;
+
+	private final Serializable lastKey;
+
+	private final boolean hasNext;
+
+	public KeysetPage(final List<T> content, final Serializable lastKey,
+			final boolean hasNext) {
+		this.content = content;
+		this.lastKey = lastKey;
+		this.hasNext = hasNext;
+	}
+
+	/**
+	 * @return the rows of this page, in ascending key order
+	 */
+	public List<T> getContent() {
+		return content;
+	}
+
+	/**
+	 * @return the sort key of the last row of this page, to be passed in to
+	 *         fetch the next page; null if the page is empty
+	 */
+	public Serializable getLastKey() {
+		return lastKey;
+	}
+
+	/**
+	 * @return true if there are more rows after this page
+	 */
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+}
@@ -0,0 +1,315 @@
+package com.docstore.core.dao;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.query.spi.ParameterMetadata;
+import org.hibernate.engine.query.spi.QueryPlanCache;
+import org.hibernate.engine.spi.NamedQueryDefinition;
+import org.hibernate.engine.spi.NamedSQLQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.util.collections.SoftLimitMRUCache;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Compiles every named query of the persistence unit when the application
+ * context starts, so a broken or misspelt query fails the deployment rather
+ * than the first request, and the first request does not pay for the
+ * translation.
+ *
+ * HQL queries are translated into a plan that is kept in the query plan
+ * cache of the SessionFactory; for native queries the parameter metadata is
+ * cached. The time taken per query is available from getStatistics(). With
+ * warmUp every select query that takes parameters is additionally run
+ * warmUpExecutions times, each on its own pooled connection, with null
+ * parameters, which prepares the statement on those connections. The query
+ * is run as an unpaged call runs it, so the statement prepared is the one
+ * such calls reuse, and the nulls match no rows in comparisons. Queries
+ * without parameters would read their whole result and are not warmed up.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class NamedQueryRegistry implements InitializingBean {
+
+	private static final Log LOGGER = LogFactory
+			.getLog(NamedQueryRegistry.class);
+
+	private EntityManagerFactory entityManagerFactory;
+
+	private Set<String> requiredQueries = Collections.emptySet();
+
+	private boolean failOnError = true;
+
+	private boolean warmUp = false;
+
+	private int warmUpExecutions = 1;
+
+	private Map<String, NamedQueryStatistics> statistics = Collections
+			.emptyMap();
+
+	@Override
+	public void afterPropertiesSet() {
+		final EntityManager entityMgr = entityManagerFactory
+				.createEntityManager();
+		final SessionFactoryImplementor sessionFactory;
+		try {
+			sessionFactory = (SessionFactoryImplementor) entityMgr.unwrap(
+					Session.class).getSessionFactory();
+		} finally {
+			entityMgr.close();
+		}
+
+		final Set<String> names = new TreeSet<String>(findQueryNames(
+				sessionFactory, "namedQueries"));
+		names.addAll(findQueryNames(sessionFactory, "namedSqlQueries"));
+
+		final Map<String, String> errors = new TreeMap<String, String>();
+		for (String required : requiredQueries) {
+			if (sessionFactory.getNamedQuery(required) == null
+					&& sessionFactory.getNamedSQLQuery(required) == null) {
+				errors.put(required, "no such named query");
+			}
+		}
+
+		final Map<String, Long> parseNanos = new LinkedHashMap<String, Long>();
+		final Map<String, ParameterMetadata> parameters = new LinkedHashMap<String, ParameterMetadata>();
+		final List<String> selects = new ArrayList<String>();
+		// the startup check of the SessionFactory cached a plan for every
+		// named query, which would leave nothing to time
+		evictQueryPlans(sessionFactory);
+		for (String name : names) {
+			try {
+				final long start = System.nanoTime();
+				final NamedQueryDefinition hql = sessionFactory
+						.getNamedQuery(name);
+				if (hql != null) {
+					final HQLQueryPlan plan = sessionFactory
+							.getQueryPlanCache().getHQLQueryPlan(
+									hql.getQueryString(), false,
+									Collections.emptyMap());
+					parseNanos.put(name, System.nanoTime() - start);
+					parameters.put(name, plan.getParameterMetadata());
+					if (!plan.getTranslators()[0].isManipulationStatement()
+							&& hasParameters(plan.getParameterMetadata())) {
+						selects.add(name);
+					}
+				} else {
+					final NamedSQLQueryDefinition sql = sessionFactory
+							.getNamedSQLQuery(name);
+					parameters.put(name, sessionFactory.getQueryPlanCache()
+							.getSQLParameterMetadata(sql.getQueryString()));
+					parseNanos.put(name, System.nanoTime() - start);
+					if (!sql.isCallable()
+							&& sql.getQueryString().trim().toLowerCase()
+									.startsWith("select")
+							&& hasParameters(parameters.get(name))) {
+						selects.add(name);
+					}
+				}
+			} catch (HibernateException e) {
+				errors.put(name, e.getMessage());
+			}
+		}
+
+		if (!errors.isEmpty()) {
+			if (failOnError) {
+				throw new IllegalStateException("Invalid named queries: "
+						+ errors);
+			}
+			LOGGER.error("Invalid named queries: " + errors);
+		}
+
+		final Map<String, long[]> warmUps = warmUp ? warmUp(selects,
+				parameters) : Collections.<String, long[]> emptyMap();
+
+		final Map<String, NamedQueryStatistics> result = new LinkedHashMap<String, NamedQueryStatistics>();
+		for (Map.Entry<String, Long> entry : parseNanos.entrySet()) {
+			final String name = entry.getKey();
+			final long[] warmUpResult = warmUps.get(name);
+			result.put(name, new NamedQueryStatistics(name, sessionFactory
+					.getNamedQuery(name) == null, entry.getValue(),
+					warmUpResult == null ? 0 : warmUpResult[0],
+					warmUpResult == null ? 0 : (int) warmUpResult[1]));
+		}
+		statistics = Collections.unmodifiableMap(result);
+		LOGGER.info("Compiled " + result.size() + " named queries"
+				+ (warmUp ? ", warmed up " + warmUps.size() : ""));
+	}
+
+	/**
+	 * Runs every select query once on each of warmUpExecutions entity
+	 * managers. The entity managers are kept open until all queries ran, so
+	 * each holds a different pooled connection.
+	 *
+	 * @return per query name the total nanos and the successful executions
+	 */
+	private Map<String, long[]> warmUp(final List<String> selects,
+			final Map<String, ParameterMetadata> parameters) {
+		final Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+		final List<EntityManager> entityMgrs = new ArrayList<EntityManager>();
+		try {
+			for (int i = 0; i < warmUpExecutions; i++) {
+				final Session session = open(entityMgrs);
+				for (String name : selects) {
+					long[] total = result.get(name);
+					if (total == null) {
+						total = new long[2];
+						result.put(name, total);
+					}
+					final long start = System.nanoTime();
+					try {
+						final Query query = session.getNamedQuery(name);
+						bindNulls(query, parameters.get(name));
+						query.setReadOnly(true);
+						query.list();
+						session.clear();
+						total[0] += System.nanoTime() - start;
+						total[1]++;
+					} catch (RuntimeException e) {
+						LOGGER.warn("Warm-up of named query " + name
+								+ " failed: " + e.getMessage());
+					}
+				}
+			}
+		} finally {
+			for (EntityManager entityMgr : entityMgrs) {
+				entityMgr.close();
+			}
+		}
+		return result;
+	}
+
+	private Session open(final List<EntityManager> entityMgrs) {
+		final EntityManager entityMgr = entityManagerFactory
+				.createEntityManager();
+		entityMgrs.add(entityMgr);
+		return entityMgr.unwrap(Session.class);
+	}
+
+	private static boolean hasParameters(final ParameterMetadata metadata) {
+		return metadata.getOrdinalParameterCount() > 0
+				|| !metadata.getNamedParameterNames().isEmpty();
+	}
+
+	private static void bindNulls(final Query query,
+			final ParameterMetadata metadata) {
+		for (int i = 0; i < metadata.getOrdinalParameterCount(); i++) {
+			query.setParameter(i, null);
+		}
+		for (Object name : metadata.getNamedParameterNames()) {
+			query.setParameter((String) name, null);
+		}
+	}
+
+	/**
+	 * Hibernate 4.1 cannot evict a single plan from the QueryPlanCache, so its
+	 * private plan cache is cleared; the plans of all named queries are built
+	 * again right after.
+	 */
+	private static void evictQueryPlans(
+			final SessionFactoryImplementor sessionFactory) {
+		try {
+			final Field field = QueryPlanCache.class
+					.getDeclaredField("planCache");
+			field.setAccessible(true);
+			((SoftLimitMRUCache) field.get(sessionFactory.getQueryPlanCache()))
+					.clear();
+		} catch (Exception e) {
+			LOGGER.warn("Cannot evict the query plans of "
+					+ sessionFactory.getClass().getName()
+					+ "; parse times of cached HQL plans are lookups only", e);
+		}
+	}
+
+	/**
+	 * Hibernate keeps the named query definitions in private maps of the
+	 * SessionFactory without a way to list them.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Set<String> findQueryNames(
+			final SessionFactoryImplementor sessionFactory,
+			final String fieldName) {
+		try {
+			final Field field = sessionFactory.getClass().getDeclaredField(
+					fieldName);
+			field.setAccessible(true);
+			return ((Map<String, ?>) field.get(sessionFactory)).keySet();
+		} catch (Exception e) {
+			LOGGER.warn("Cannot list the named queries of "
+					+ sessionFactory.getClass().getName()
+					+ "; only requiredQueries are checked", e);
+			return Collections.emptySet();
+		}
+	}
+
+	/**
+	 * @param queryName
+	 *            The named query name
+	 * @return whether the persistence unit defines the named query
+	 */
+	public boolean contains(final String queryName) {
+		return statistics.containsKey(queryName);
+	}
+
+	/**
+	 * @return the compiled named queries keyed by name
+	 */
+	public Map<String, NamedQueryStatistics> getStatistics() {
+		return statistics;
+	}
+
+	public void setEntityManagerFactory(
+			final EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = entityManagerFactory;
+	}
+
+	/**
+	 * @param requiredQueries
+	 *            named queries the code relies on, reported as errors when
+	 *            the persistence unit does not define them
+	 */
+	public void setRequiredQueries(final Set<String> requiredQueries) {
+		this.requiredQueries = requiredQueries == null ? Collections
+				.<String> emptySet() : requiredQueries;
+	}
+
+	/**
+	 * @param failOnError
+	 *            whether an invalid named query stops the application
+	 *            context, otherwise it is only logged
+	 */
+	public void setFailOnError(final boolean failOnError) {
+		this.failOnError = failOnError;
+	}
+
+	public void setWarmUp(final boolean warmUp) {
+		this.warmUp = warmUp;
+	}
+
+	/**
+	 * @param warmUpExecutions
+	 *            pooled connections every select query is run on
+	 */
+	public void setWarmUpExecutions(final int warmUpExecutions) {
+		this.warmUpExecutions = warmUpExecutions;
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup compilation and warm-up figures of a single named query.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class NamedQueryStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String queryName;
+
+	private final boolean nativeQuery;
+
+	private final long parseNanos;
+
+	private final long warmUpNanos;
+
+	private final int warmUpExecutions;
+
+	public NamedQueryStatistics(final String queryName,
+			final boolean nativeQuery, final long parseNanos,
+			final long warmUpNanos, final int warmUpExecutions) {
+		this.queryName = queryName;
+		this.nativeQuery = nativeQuery;
+		this.parseNanos = parseNanos;
+		this.warmUpNanos = warmUpNanos;
+		this.warmUpExecutions = warmUpExecutions;
+	}
+
+	public String getQueryName() {
+		return queryName;
+	}
+
+	/**
+	 * @return true for a named native SQL query, false for HQL/JPQL
+	 */
+	public boolean isNativeQuery() {
+		return nativeQuery;
+	}
+
+	/**
+	 * @return the time taken to translate the query into its plan
+	 */
+	public double getParseMillis() {
+		return parseNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return the total time of the warm-up executions
+	 */
+	public double getWarmUpMillis() {
+		return warmUpNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return the number of successful warm-up executions
+	 */
+	public int getWarmUpExecutions() {
+		return warmUpExecutions;
+	}
+
+	@Override
+	public String toString() {
+		return "NamedQueryStatistics [queryName=" + queryName
+				+ ", nativeQuery=" + nativeQuery + ", parseMillis="
+				+ getParseMillis() + ", warmUpMillis=" + getWarmUpMillis()
+				+ ", warmUpExecutions=" + warmUpExecutions + "]";
+	}
+
+}
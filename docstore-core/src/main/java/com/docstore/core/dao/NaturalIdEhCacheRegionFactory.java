@@ -0,0 +1,59 @@
+package com.docstore.core.dao;
+
+import java.util.Properties;
+
+import net.sf.ehcache.Ehcache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.ehcache.EhCacheRegionFactory;
+import org.hibernate.cache.ehcache.internal.regions.EhcacheNaturalIdRegion;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.NaturalIdRegion;
+
+/**
+ * EhCacheRegionFactory that also builds natural id regions. The one of
+ * hibernate-ehcache 4.1.0 returns null from buildNaturalIdRegion, which
+ * stops the session factory from starting as soon as an entity is annotated
+ * with @NaturalIdCache. Can be dropped once hibernate-ehcache builds the
+ * region itself.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class NaturalIdEhCacheRegionFactory extends EhCacheRegionFactory {
+
+	public NaturalIdEhCacheRegionFactory() {
+		super();
+	}
+
+	public NaturalIdEhCacheRegionFactory(final Properties properties) {
+		super(properties);
+	}
+
+	@Override
+	public NaturalIdRegion buildNaturalIdRegion(final String regionName,
+			final Properties properties, final CacheDataDescription metadata)
+			throws CacheException {
+		return new EhcacheNaturalIdRegion(accessStrategyFactory,
+				getNaturalIdCache(regionName), settings, metadata, properties);
+	}
+
+	/**
+	 * @return the region declared in ehcache.xml, else one created from the
+	 *         defaultCache settings, as for entity regions
+	 */
+	private Ehcache getNaturalIdCache(final String regionName) {
+		try {
+			Ehcache cache = manager.getEhcache(regionName);
+			if (cache == null) {
+				manager.addCache(regionName);
+				cache = manager.getEhcache(regionName);
+			}
+			return cache;
+		} catch (net.sf.ehcache.CacheException e) {
+			throw new CacheException(e);
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package com.docstore.core.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signature of a stored procedure: its name, the JDBC type and direction of
+ * every parameter and whether it returns a result set. A definition is
+ * registered once with GenericDAO and then called by name, so the call
+ * escape and the parameter types are not rebuilt on every call.
+ *
+ * <pre>
+ * ProcedureDefinition.named(&quot;P2_isShape_Continuous_M&quot;)
+ * 		.in(Types.BIGINT).in(Types.BIGINT).in(Types.LONGVARCHAR)
+ * 		.in(Types.VARCHAR).in(Types.VARCHAR).returningResultSet();
+ * </pre>
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class ProcedureDefinition {
+
+	/**
+	 * Direction of a procedure parameter.
+	 */
+	public enum Mode {
+		IN, OUT, INOUT
+	}
+
+	private final String name;
+
+	private final List<Parameter> parameters = new ArrayList<Parameter>();
+
+	private boolean resultSet;
+
+	private ProcedureDefinition(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @param name
+	 *            the procedure name as known to the database
+	 * @return an empty definition to add the parameters to
+	 */
+	public static ProcedureDefinition named(final String name) {
+		if (name == null || name.length() == 0) {
+			throw new IllegalArgumentException("procedure name is required");
+		}
+		return new ProcedureDefinition(name);
+	}
+
+	/**
+	 * Adds an IN parameter.
+	 *
+	 * @param sqlType
+	 *            a java.sql.Types constant
+	 */
+	public ProcedureDefinition in(final int sqlType) {
+		return parameter(Mode.IN, sqlType);
+	}
+
+	/**
+	 * Adds an OUT parameter. Its value is read back into the
+	 * {@link ProcedureResult}.
+	 *
+	 * @param sqlType
+	 *            a java.sql.Types constant
+	 */
+	public ProcedureDefinition out(final int sqlType) {
+		return parameter(Mode.OUT, sqlType);
+	}
+
+	/**
+	 * Adds an INOUT parameter, bound from the arguments and read back into the
+	 * {@link ProcedureResult}.
+	 *
+	 * @param sqlType
+	 *            a java.sql.Types constant
+	 */
+	public ProcedureDefinition inOut(final int sqlType) {
+		return parameter(Mode.INOUT, sqlType);
+	}
+
+	/**
+	 * Declares that the procedure ends with a SELECT whose rows are returned
+	 * in the {@link ProcedureResult}.
+	 */
+	public ProcedureDefinition returningResultSet() {
+		this.resultSet = true;
+		return this;
+	}
+
+	private ProcedureDefinition parameter(final Mode mode, final int sqlType) {
+		parameters.add(new Parameter(mode, sqlType));
+		return this;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the parameters in call order
+	 */
+	public List<Parameter> getParameters() {
+		return Collections.unmodifiableList(parameters);
+	}
+
+	public boolean isReturningResultSet() {
+		return resultSet;
+	}
+
+	/**
+	 * @return the number of IN and INOUT parameters, i.e. the number of
+	 *         arguments a call takes
+	 */
+	public int getArgumentCount() {
+		int count = 0;
+		for (Parameter parameter : parameters) {
+			if (parameter.getMode() != Mode.OUT) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return true if the procedure has OUT or INOUT parameters
+	 */
+	public boolean hasOutParameters() {
+		return getArgumentCount() < parameters.size();
+	}
+
+	/**
+	 * @return the JDBC call escape, e.g. { call NAME(?,?) }
+	 */
+	public String getCallString() {
+		final StringBuilder call = new StringBuilder("{ call ").append(name)
+				.append('(');
+		for (int i = 0; i < parameters.size(); i++) {
+			call.append(i == 0 ? "?" : ",?");
+		}
+		return call.append(") }").toString();
+	}
+
+	@Override
+	public String toString() {
+		return getCallString();
+	}
+
+	/**
+	 * One parameter of a procedure.
+	 */
+	public static final class Parameter {
+
+		private final Mode mode;
+
+		private final int sqlType;
+
+		Parameter(final Mode mode, final int sqlType) {
+			this.mode = mode;
+			this.sqlType = sqlType;
+		}
+
+		public Mode getMode() {
+			return mode;
+		}
+
+		/**
+		 * @return the java.sql.Types constant of the parameter
+		 */
+		public int getSqlType() {
+			return sqlType;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Outcome of one stored procedure call: the values of its OUT and INOUT
+ * parameters and the rows of its result set, if it declares one.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class ProcedureResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Object[] outParameters;
+
+	private final List<Object[]> rows;
+
+	private final int updateCount;
+
+	public ProcedureResult(final Object[] outParameters,
+			final List<Object[]> rows, final int updateCount) {
+		this.outParameters = outParameters;
+		this.rows = rows;
+		this.updateCount = updateCount;
+	}
+
+	/**
+	 * @param position
+	 *            the 1-based position of the parameter in the call
+	 * @return the value the procedure left in an OUT or INOUT parameter, null
+	 *         for IN parameters
+	 */
+	public Object getOutParameter(final int position) {
+		return outParameters[position - 1];
+	}
+
+	/**
+	 * @return the rows of the result set, each as an array of column values;
+	 *         empty if the procedure does not return one
+	 */
+	public List<Object[]> getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the rows affected as reported by the driver, -1 if unknown
+	 */
+	public int getUpdateCount() {
+		return updateCount;
+	}
+
+	/**
+	 * @return the first column of the first row, null if the result set is
+	 *         empty or the procedure does not return one
+	 */
+	public Object getSingleResult() {
+		return rows.isEmpty() ? null : rows.get(0)[0];
+	}
+
+}
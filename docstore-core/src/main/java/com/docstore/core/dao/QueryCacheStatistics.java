@@ -0,0 +1,73 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+
+/**
+ * Query result cache statistics of a single named query.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class QueryCacheStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String queryName;
+
+	private final long hitCount;
+
+	private final long missCount;
+
+	private final long putCount;
+
+	private final long executionCount;
+
+	public QueryCacheStatistics(final String queryName, final long hitCount,
+			final long missCount, final long putCount, final long executionCount) {
+		this.queryName = queryName;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.putCount = putCount;
+		this.executionCount = executionCount;
+	}
+
+	public String getQueryName() {
+		return queryName;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getPutCount() {
+		return putCount;
+	}
+
+	/**
+	 * @return the number of times the query was executed against the database
+	 */
+	public long getExecutionCount() {
+		return executionCount;
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 if the query was never looked up
+	 */
+	public double getHitRatio() {
+		final long lookups = hitCount + missCount;
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return queryName + " [hits=" + hitCount + ", misses=" + missCount
+				+ ", puts=" + putCount + ", executions=" + executionCount
+				+ ", hitRatio=" + getHitRatio() + "]";
+	}
+
+}
@@ -0,0 +1,26 @@
+package com.docstore.core.dao;
+
+/**
+ * Callback interface used by the streaming methods of GenericDAO. Each row is
+ * handed to the callback as soon as it has been read from the cursor and is
+ * detached from the persistence context afterwards, so an implementation must
+ * not rely on lazy loading once processRow returns.
+ * 
+ * @param <T>
+ *            row type; an entity, a scalar value or an Object[] for
+ *            projections
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public interface RowCallback<T> {
+
+	/**
+	 * Process a single row of the result.
+	 * 
+	 * @param row
+	 *            the current row
+	 */
+	void processRow(T row);
+
+}
@@ -0,0 +1,266 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filters, sort order and projection of a dynamic search, run with
+ * GenericDAO.findEntitiesByCriteria and countEntitiesByCriteria.
+ *
+ * Paths are attribute names of the entity; "a.b" left joins the association
+ * a, "a:b.c" navigates a.b.c without a join. Values are always bound as
+ * parameters, and IN lists are padded to the next power of two, so searches
+ * that differ only in their values share one query shape and one compiled
+ * query plan.
+ *
+ * <pre>
+ * SearchCriteria.forEntity(TUsr.class).like("email", "%@docstore.com")
+ * 		.in("usrId", ids).orderBy("lastName", true);
+ * </pre>
+ *
+ * @param <T>
+ *            the entity type
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class SearchCriteria<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Comparison applied by a filter.
+	 */
+	public enum Operator {
+		EQ, NE, LT, LE, GT, GE, LIKE, IN, IS_NULL, IS_NOT_NULL
+	}
+
+	private final Class<T> entityClass;
+
+	private final List<Filter> filters = new ArrayList<Filter>();
+
+	private final List<Order> orders = new ArrayList<Order>();
+
+	private final List<String> projection = new ArrayList<String>();
+
+	public SearchCriteria(final Class<T> entityClass) {
+		if (entityClass == null) {
+			throw new IllegalArgumentException("entityClass is required");
+		}
+		this.entityClass = entityClass;
+	}
+
+	public static <T> SearchCriteria<T> forEntity(final Class<T> entityClass) {
+		return new SearchCriteria<T>(entityClass);
+	}
+
+	/**
+	 * Add a filter; an EQ or NE filter with a null value becomes IS_NULL or
+	 * IS_NOT_NULL.
+	 *
+	 * @param path
+	 *            the attribute path
+	 * @param operator
+	 *            the comparison
+	 * @param value
+	 *            the value, a Collection for IN, ignored for IS_NULL and
+	 *            IS_NOT_NULL
+	 * @return this criteria
+	 */
+	public SearchCriteria<T> filter(final String path, final Operator operator,
+			final Object value) {
+		checkPath(path);
+		if (operator == null) {
+			throw new IllegalArgumentException("operator is required");
+		}
+		Operator effective = operator;
+		List<Object> values;
+		if (operator == Operator.IS_NULL || operator == Operator.IS_NOT_NULL) {
+			values = Collections.emptyList();
+		} else if (value == null) {
+			if (operator != Operator.EQ && operator != Operator.NE) {
+				throw new IllegalArgumentException(operator
+						+ " needs a value for " + path);
+			}
+			effective = operator == Operator.EQ ? Operator.IS_NULL
+					: Operator.IS_NOT_NULL;
+			values = Collections.emptyList();
+		} else if (operator == Operator.IN) {
+			if (!(value instanceof Collection)) {
+				throw new IllegalArgumentException("IN needs a Collection for "
+						+ path);
+			}
+			values = new ArrayList<Object>((Collection<?>) value);
+		} else {
+			values = Collections.singletonList(value);
+		}
+		filters.add(new Filter(path, effective, values));
+		return this;
+	}
+
+	public SearchCriteria<T> eq(final String path, final Object value) {
+		return filter(path, Operator.EQ, value);
+	}
+
+	public SearchCriteria<T> ne(final String path, final Object value) {
+		return filter(path, Operator.NE, value);
+	}
+
+	public SearchCriteria<T> lt(final String path, final Object value) {
+		return filter(path, Operator.LT, value);
+	}
+
+	public SearchCriteria<T> le(final String path, final Object value) {
+		return filter(path, Operator.LE, value);
+	}
+
+	public SearchCriteria<T> gt(final String path, final Object value) {
+		return filter(path, Operator.GT, value);
+	}
+
+	public SearchCriteria<T> ge(final String path, final Object value) {
+		return filter(path, Operator.GE, value);
+	}
+
+	public SearchCriteria<T> like(final String path, final String pattern) {
+		return filter(path, Operator.LIKE, pattern);
+	}
+
+	public SearchCriteria<T> in(final String path, final Collection<?> values) {
+		return filter(path, Operator.IN, values);
+	}
+
+	public SearchCriteria<T> isNull(final String path) {
+		return filter(path, Operator.IS_NULL, null);
+	}
+
+	public SearchCriteria<T> isNotNull(final String path) {
+		return filter(path, Operator.IS_NOT_NULL, null);
+	}
+
+	/**
+	 * @param path
+	 *            the attribute path to sort by, after the earlier ones
+	 * @param ascending
+	 *            the sort direction
+	 * @return this criteria
+	 */
+	public SearchCriteria<T> orderBy(final String path, final boolean ascending) {
+		checkPath(path);
+		orders.add(new Order(path, ascending));
+		return this;
+	}
+
+	/**
+	 * Return the given paths instead of the entity: one path gives a list of
+	 * its values, several give a list of Object[].
+	 *
+	 * @param paths
+	 *            the attribute paths
+	 * @return this criteria
+	 */
+	public SearchCriteria<T> select(final String... paths) {
+		for (String path : paths) {
+			checkPath(path);
+		}
+		projection.clear();
+		projection.addAll(Arrays.asList(paths));
+		return this;
+	}
+
+	public Class<T> getEntityClass() {
+		return entityClass;
+	}
+
+	List<Filter> getFilters() {
+		return filters;
+	}
+
+	List<Order> getOrders() {
+		return orders;
+	}
+
+	List<String> getProjection() {
+		return projection;
+	}
+
+	/**
+	 * @return the number of parameters bound for an IN list of the given
+	 *         size: the next power of two, 0 for an empty list
+	 */
+	static int paddedSize(final int size) {
+		return size <= 1 ? size : Integer.highestOneBit(size - 1) << 1;
+	}
+
+	/**
+	 * @param count
+	 *            whether the shape of the count query is wanted
+	 * @return a key that is equal for all criteria producing the same query
+	 */
+	String getShape(final boolean count) {
+		final StringBuilder shape = new StringBuilder(entityClass.getName());
+		shape.append(count ? "|count" : "|select").append(projection);
+		for (Filter filter : filters) {
+			shape.append('|').append(filter.path).append(' ')
+					.append(filter.operator);
+			if (filter.operator == Operator.IN) {
+				shape.append(paddedSize(filter.values.size()));
+			}
+		}
+		if (!count) {
+			for (Order order : orders) {
+				shape.append("|order ").append(order.path)
+						.append(order.ascending ? " asc" : " desc");
+			}
+		}
+		return shape.toString();
+	}
+
+	private static void checkPath(final String path) {
+		if (path == null || path.length() == 0) {
+			throw new IllegalArgumentException("path is required");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SearchCriteria [" + getShape(false) + "]";
+	}
+
+	static final class Filter implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final String path;
+
+		final Operator operator;
+
+		final List<Object> values;
+
+		Filter(final String path, final Operator operator,
+				final List<Object> values) {
+			this.path = path;
+			this.operator = operator;
+			this.values = values;
+		}
+	}
+
+	static final class Order implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final String path;
+
+		final boolean ascending;
+
+		Order(final String path, final boolean ascending) {
+			this.path = path;
+			this.ascending = ascending;
+		}
+	}
+
+}
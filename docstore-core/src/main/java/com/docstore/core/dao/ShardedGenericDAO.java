@@ -0,0 +1,134 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * GenericDAO operations over entities split across several databases by
+ * their identifier. Single-entity operations go to the shard owning the
+ * identifier; loadAll, counts and named queries run on all shards in
+ * parallel and their results are combined.
+ *
+ * Every call runs in a transaction of the shard's own transaction manager.
+ * A storeBatch spanning shards commits per shard, not atomically.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public interface ShardedGenericDAO {
+
+	/**
+	 * @return the number of shards
+	 */
+	int getShardCount();
+
+	/**
+	 * @param identification the entity identifier
+	 * @return the index of the shard owning the identifier
+	 */
+	int getShardIndex(Serializable identification);
+
+	/**
+	 * @param index the shard index
+	 * @return the GenericDAO of the shard, for shard-local queries
+	 */
+	GenericDAO getShard(int index);
+
+	/**
+	 * Retrieve an object from the shard owning its primary key.
+	 *
+	 * @param <T> the generic type
+	 * @param <I> the generic type
+	 * @param clazz name of the class
+	 * @param identification the primary key value
+	 * @return the entity, null if not found
+	 */
+	<T, I extends Serializable> T get(Class<T> clazz, I identification);
+
+	/**
+	 * Stores a new entity on the shard owning its identifier. An entity
+	 * without identifier first gets one from the global id generator.
+	 *
+	 * @param <T> the generic type
+	 * @param entity entity object to be persisted
+	 * @return persisted entity object
+	 */
+	<T extends Serializable> T store(final T entity);
+
+	/**
+	 * Save all changes made to an existing entity object.
+	 *
+	 * @param <T> the generic type
+	 * @param entity entity object to be updated
+	 * @return updated entity object
+	 */
+	<T extends Serializable> T update(final T entity);
+
+	/**
+	 * Remove an entity object from its shard.
+	 *
+	 * @param <T> the generic type
+	 * @param entity object to be removed
+	 */
+	<T extends Serializable> void remove(final T entity);
+
+	/**
+	 * Stores new entities, one JDBC batched insert per shard, the shards in
+	 * parallel.
+	 *
+	 * @param <T> the generic type
+	 * @param entityList list of an entity
+	 * @return the persisted entities
+	 */
+	<T extends Serializable> List<T> storeBatch(final List<T> entityList);
+
+	/**
+	 * Retrieve all entities of a class from all shards.
+	 *
+	 * @param <T> the generic type
+	 * @param clazz the name of the class
+	 * @return the entities of all shards, shard by shard
+	 */
+	<T extends Object> List<T> loadAll(final Class<T> clazz);
+
+	/**
+	 * Sum a count named query over all shards.
+	 *
+	 * @param queryName The named query name, returning one number
+	 * @param queryParam The named query parameter
+	 * @return the total count
+	 */
+	long countEntitiesNamedQuery(final String queryName,
+			final Object queryParam);
+
+	/**
+	 * Run a named query on all shards.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name to be searched
+	 * @param queryParams conditional parameters to be used in query
+	 * @return the results of all shards, shard by shard
+	 */
+	<T extends Object> List<T> findEntitiesByNamedQuery(final String queryName,
+			final List<Object> queryParams);
+
+	/**
+	 * Retrieve one page of a named query over all shards. Every shard returns
+	 * its first index + maxresult rows, which are merged in the given order.
+	 *
+	 * @param <T> the generic type
+	 * @param queryName The named query name, ordered the same way as order
+	 * @param queryParams conditional parameters to be used in query
+	 * @param index specifies start of the result
+	 * @param maxresult specifies end of the result
+	 * @param order the order of the named query
+	 * @return the page
+	 */
+	<T extends Object> List<T> findEntitiesByNamedQueryMultiCond(
+			final String queryName, final List<Object> queryParams,
+			final int index, final int maxresult,
+			final Comparator<? super T> order);
+
+}
@@ -0,0 +1,453 @@
+package com.docstore.core.dao;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.metadata.ClassMetadata;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docstore.core.datasource.DatabaseContextHolder;
+import com.docstore.core.shard.Shard;
+import com.docstore.core.shard.ShardingStrategy;
+
+/**
+ * Class provides API implementation for ShardedGenericDAO.
+ *
+ * Identifiers of new entities come from generateID of idGenerator, a
+ * GenericDAO on the database holding t_unique_key, so they are unique across
+ * shards and known before the shard is chosen. idGroups maps the entity class
+ * name to its t_unique_key group.
+ *
+ * Shard calls run on a pool with the DatabaseContextHolder state of the
+ * caller, so a caller that wrote also reads its writes from the primaries
+ * in the scatter reads, and a write through the pool pins the caller.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+@SuppressWarnings("unchecked")
+public class ShardedGenericDAOImpl implements ShardedGenericDAO,
+		InitializingBean, DisposableBean {
+
+	private List<Shard> shards = Collections.emptyList();
+
+	private ShardingStrategy shardingStrategy;
+
+	private GenericDAO idGenerator;
+
+	private Map<String, String> idGroups = Collections.emptyMap();
+
+	private String idTable = "t_unique_key";
+
+	private String idValueColumn = "key_value";
+
+	private String idKeyColumn = "key_name";
+
+	private String idMaxLo = "49";
+
+	private final ConcurrentMap<Class<?>, ClassMetadata> metadata = new ConcurrentHashMap<Class<?>, ClassMetadata>();
+
+	private TransactionTemplate[] readTemplates;
+
+	private TransactionTemplate[] writeTemplates;
+
+	private ExecutorService executor;
+
+	@Override
+	public void afterPropertiesSet() {
+		if (shards.isEmpty() || shardingStrategy == null) {
+			throw new IllegalArgumentException(
+					"shards and shardingStrategy are required");
+		}
+		readTemplates = new TransactionTemplate[shards.size()];
+		writeTemplates = new TransactionTemplate[shards.size()];
+		for (int i = 0; i < shards.size(); i++) {
+			readTemplates[i] = new TransactionTemplate(shards.get(i)
+					.getTransactionManager());
+			readTemplates[i].setReadOnly(true);
+			writeTemplates[i] = new TransactionTemplate(shards.get(i)
+					.getTransactionManager());
+		}
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(shards.size() * 2,
+				new ThreadFactory() {
+					public Thread newThread(final Runnable runnable) {
+						final Thread thread = new Thread(runnable,
+								"shard-query-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	@Override
+	public int getShardIndex(final Serializable identification) {
+		return shardingStrategy.shardFor(identification, shards.size());
+	}
+
+	@Override
+	public GenericDAO getShard(final int index) {
+		return shards.get(index).getGenericDAO();
+	}
+
+	@Override
+	public <T, I extends Serializable> T get(final Class<T> clazz,
+			final I identification) {
+		final int index = getShardIndex(identification);
+		return readTemplates[index].execute(new TransactionCallback<T>() {
+			public T doInTransaction(final TransactionStatus status) {
+				return getShard(index).get(clazz, identification);
+			}
+		});
+	}
+
+	@Override
+	public <T extends Serializable> T store(final T entity) {
+		final int index = getShardIndex(assignId(entity));
+		return writeTemplates[index].execute(new TransactionCallback<T>() {
+			public T doInTransaction(final TransactionStatus status) {
+				return getShard(index).storeWithId(entity);
+			}
+		});
+	}
+
+	@Override
+	public <T extends Serializable> T update(final T entity) {
+		final int index = getShardIndex(getId(entity));
+		return writeTemplates[index].execute(new TransactionCallback<T>() {
+			public T doInTransaction(final TransactionStatus status) {
+				return getShard(index).update(entity);
+			}
+		});
+	}
+
+	@Override
+	public <T extends Serializable> void remove(final T entity) {
+		final int index = getShardIndex(getId(entity));
+		writeTemplates[index].execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(final TransactionStatus status) {
+				getShard(index).remove(entity);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public <T extends Serializable> List<T> storeBatch(final List<T> entityList) {
+		final Map<Integer, List<T>> byShard = new HashMap<Integer, List<T>>();
+		for (T entity : entityList) {
+			final int index = getShardIndex(assignId(entity));
+			List<T> shardEntities = byShard.get(index);
+			if (shardEntities == null) {
+				shardEntities = new ArrayList<T>();
+				byShard.put(index, shardEntities);
+			}
+			shardEntities.add(entity);
+		}
+		final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (final Map.Entry<Integer, List<T>> entry : byShard.entrySet()) {
+			final int index = entry.getKey();
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					return writeTemplates[index]
+							.execute(new TransactionCallback<Object>() {
+								public Object doInTransaction(
+										final TransactionStatus status) {
+									return getShard(index).storeBatchWithId(
+											entry.getValue());
+								}
+							});
+				}
+			});
+		}
+		invokeAll(tasks);
+		if (!tasks.isEmpty()) {
+			DatabaseContextHolder.markWrite();
+		}
+		return entityList;
+	}
+
+	@Override
+	public <T> List<T> loadAll(final Class<T> clazz) {
+		return concat(scatter(new ShardQuery<List<T>>() {
+			public List<T> run(final GenericDAO dao) {
+				return dao.loadAll(clazz);
+			}
+		}));
+	}
+
+	@Override
+	public long countEntitiesNamedQuery(final String queryName,
+			final Object queryParam) {
+		long total = 0;
+		for (Object count : scatter(new ShardQuery<Object>() {
+			public Object run(final GenericDAO dao) {
+				return dao.countEntitiesNamedQuery(queryName, queryParam);
+			}
+		})) {
+			if (count != null) {
+				total += ((Number) count).longValue();
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public <T> List<T> findEntitiesByNamedQuery(final String queryName,
+			final List<Object> queryParams) {
+		return concat(scatter(new ShardQuery<List<T>>() {
+			public List<T> run(final GenericDAO dao) {
+				return dao.findEntitiesByNamedQuery(queryName, queryParams);
+			}
+		}));
+	}
+
+	@Override
+	public <T> List<T> findEntitiesByNamedQueryMultiCond(
+			final String queryName, final List<Object> queryParams,
+			final int index, final int maxresult,
+			final Comparator<? super T> order) {
+		final int first = Math.max(index, 0);
+		final List<List<T>> results = scatter(new ShardQuery<List<T>>() {
+			public List<T> run(final GenericDAO dao) {
+				// the page may come from any shard, so each returns up to
+				// its end
+				return dao.findEntitiesByNamedQueryMultiCond(queryName,
+						queryParams, 0, maxresult == -1 ? -1 : first
+								+ maxresult);
+			}
+		});
+		return merge(results, order, first, maxresult);
+	}
+
+	/**
+	 * K-way merge of the sorted shard results, keeping rows first to first +
+	 * maxresult; maxresult -1 keeps all rows from first on.
+	 */
+	static <T> List<T> merge(final List<List<T>> sorted,
+			final Comparator<? super T> order, final int first,
+			final int maxresult) {
+		final PriorityQueue<Cursor<T>> heads = new PriorityQueue<Cursor<T>>(
+				Math.max(1, sorted.size()), new Comparator<Cursor<T>>() {
+					public int compare(final Cursor<T> a, final Cursor<T> b) {
+						return order.compare(a.head(), b.head());
+					}
+				});
+		for (List<T> rows : sorted) {
+			if (rows != null && !rows.isEmpty()) {
+				heads.add(new Cursor<T>(rows));
+			}
+		}
+		final List<T> page = new ArrayList<T>(maxresult == -1 ? 16 : maxresult);
+		int position = 0;
+		while (!heads.isEmpty() && (maxresult == -1 || page.size() < maxresult)) {
+			final Cursor<T> cursor = heads.poll();
+			if (position++ >= first) {
+				page.add(cursor.head());
+			}
+			if (cursor.advance()) {
+				heads.add(cursor);
+			}
+		}
+		return page;
+	}
+
+	private <R> List<R> scatter(final ShardQuery<R> query) {
+		final List<Callable<R>> tasks = new ArrayList<Callable<R>>();
+		for (int i = 0; i < shards.size(); i++) {
+			final int index = i;
+			tasks.add(new Callable<R>() {
+				public R call() {
+					return readTemplates[index]
+							.execute(new TransactionCallback<R>() {
+								public R doInTransaction(
+										final TransactionStatus status) {
+									return query.run(getShard(index));
+								}
+							});
+				}
+			});
+		}
+		return invokeAll(tasks);
+	}
+
+	private <R> List<R> invokeAll(final List<Callable<R>> tasks) {
+		// a caller that wrote keeps reading its writes from the primaries
+		final Object databaseContext = DatabaseContextHolder.snapshot();
+		final List<Callable<R>> inContext = new ArrayList<Callable<R>>(
+				tasks.size());
+		for (final Callable<R> task : tasks) {
+			inContext.add(new Callable<R>() {
+				public R call() throws Exception {
+					final Object workerContext = DatabaseContextHolder
+							.snapshot();
+					DatabaseContextHolder.restore(databaseContext);
+					try {
+						return task.call();
+					} finally {
+						DatabaseContextHolder.restore(workerContext);
+					}
+				}
+			});
+		}
+		try {
+			final List<R> results = new ArrayList<R>(tasks.size());
+			for (Future<R> future : executor.invokeAll(inContext)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during shard query", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Shard query failed", e.getCause());
+		}
+	}
+
+	private static <T> List<T> concat(final List<List<T>> results) {
+		final List<T> all = new ArrayList<T>();
+		for (List<T> rows : results) {
+			if (rows != null) {
+				all.addAll(rows);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * @return the identifier of the entity, allocated from the global
+	 *         generator if it has none yet
+	 */
+	private Serializable assignId(final Object entity) {
+		Serializable id = getId(entity);
+		if (id == null) {
+			final String group = idGroups.get(entity.getClass().getName());
+			if (group == null) {
+				throw new IllegalArgumentException("No id group configured for "
+						+ entity.getClass().getName());
+			}
+			final Long generated = idGenerator.generateID(group, idTable,
+					idValueColumn, idKeyColumn, idMaxLo);
+			id = Integer.class.equals(getMetadata(entity.getClass())
+					.getIdentifierType().getReturnedClass()) ? Integer
+					.valueOf(generated.intValue()) : generated;
+			getMetadata(entity.getClass()).setIdentifier(entity, id, null);
+		}
+		return id;
+	}
+
+	private Serializable getId(final Object entity) {
+		return getMetadata(entity.getClass()).getIdentifier(entity, null);
+	}
+
+	private ClassMetadata getMetadata(final Class<?> clazz) {
+		ClassMetadata classMetadata = metadata.get(clazz);
+		if (classMetadata == null) {
+			classMetadata = getShard(0).jpaSession().getSessionFactory()
+					.getClassMetadata(clazz);
+			if (classMetadata == null) {
+				throw new IllegalArgumentException(clazz.getName()
+						+ " is not an entity");
+			}
+			metadata.put(clazz, classMetadata);
+		}
+		return classMetadata;
+	}
+
+	public void setShards(final List<Shard> shards) {
+		this.shards = shards;
+	}
+
+	public void setShardingStrategy(final ShardingStrategy shardingStrategy) {
+		this.shardingStrategy = shardingStrategy;
+	}
+
+	/**
+	 * @param idGenerator
+	 *            GenericDAO on the database holding the global t_unique_key
+	 */
+	public void setIdGenerator(final GenericDAO idGenerator) {
+		this.idGenerator = idGenerator;
+	}
+
+	/**
+	 * @param idGroups
+	 *            t_unique_key group per entity class name
+	 */
+	public void setIdGroups(final Map<String, String> idGroups) {
+		this.idGroups = idGroups;
+	}
+
+	public void setIdTable(final String idTable) {
+		this.idTable = idTable;
+	}
+
+	public void setIdValueColumn(final String idValueColumn) {
+		this.idValueColumn = idValueColumn;
+	}
+
+	public void setIdKeyColumn(final String idKeyColumn) {
+		this.idKeyColumn = idKeyColumn;
+	}
+
+	public void setIdMaxLo(final String idMaxLo) {
+		this.idMaxLo = idMaxLo;
+	}
+
+	private interface ShardQuery<R> {
+		R run(GenericDAO dao);
+	}
+
+	private static final class Cursor<T> {
+
+		private final List<T> rows;
+
+		private int position;
+
+		private Cursor(final List<T> rows) {
+			this.rows = rows;
+		}
+
+		private T head() {
+			return rows.get(position);
+		}
+
+		private boolean advance() {
+			return ++position < rows.size();
+		}
+	}
+
+}
@@ -1,5 +1,8 @@
 package com.docstore.core.dao;
 
+import java.util.Collection;
+import java.util.List;
+
 import com.docstore.core.entity.TUsr;
 
 public interface TUsrDAO {
@@ -35,4 +38,40 @@ public interface TUsrDAO {
 	 */
 	TUsr findTUsrById(Integer tUsrId);
 
+	/**
+	 * Retrieve TUsr objects based on given usrIds with as few queries as
+	 * possible.
+	 * 
+	 * @param tUsrIds the primary key values of the TUsr Entities.
+	 * @return the TUsr objects found, in the order of the given usrIds
+	 */
+	List<TUsr> findTUsrByIds(Collection<Integer> tUsrIds);
+
+	/**
+	 * Retrieve a TUsr object based on its unique usrName, through the
+	 * natural id cache.
+	 * 
+	 * @param usrName the user name
+	 * @return the TUsr object, null if not found
+	 */
+	TUsr findTUsrByUsrName(String usrName);
+
+	/**
+	 * Retrieve a TUsr object based on its unique email, through the query
+	 * cache.
+	 * 
+	 * @param email the email address
+	 * @return the TUsr object, null if not found
+	 */
+	TUsr findTUsrByEmail(String email);
+
+	/**
+	 * Retrieve a page of TUsr objects ordered by usrId.
+	 * 
+	 * @param lastUsrId the last usrId of the previous page, null for the first page
+	 * @param pageSize the maximum number of TUsr objects in the page
+	 * @return the page and the usrId to continue from
+	 */
+	KeysetPage<TUsr> findTUsrPage(Integer lastUsrId, int pageSize);
+
 }
@@ -1,5 +1,9 @@
 package com.docstore.core.dao;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
@@ -42,4 +46,27 @@ public class TUsrDAOImpl implements TUsrDAO{
 		return genericDAO.get(clazz, tUsrId);
 	}
 
+	@Override
+	public List<TUsr> findTUsrByIds(Collection<Integer> tUsrIds) {
+		return genericDAO.getAll(clazz, tUsrIds);
+	}
+
+	@Override
+	public TUsr findTUsrByUsrName(String usrName) {
+		return genericDAO.getByNaturalId(clazz, usrName);
+	}
+
+	@Override
+	public TUsr findTUsrByEmail(String email) {
+		final List<TUsr> users = genericDAO.findEntitiesByNamedQuery(
+				"TUsr.findByEmail", Collections.<Object> singletonList(email));
+		return users == null || users.isEmpty() ? null : users.get(0);
+	}
+
+	@Override
+	public KeysetPage<TUsr> findTUsrPage(Integer lastUsrId, int pageSize) {
+		return genericDAO.findEntitiesByKeyset(clazz, "usrId", lastUsrId,
+				pageSize);
+	}
+
 }
@@ -0,0 +1,18 @@
+package com.docstore.core.datasource;
+
+/**
+ * Database a connection is routed to by the ReplicationRoutingDataSource.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public enum DatabaseContext {
+
+	/** the MySQL primary, receives all writes */
+	PRIMARY,
+
+	/** one of the read replicas */
+	REPLICA
+
+}
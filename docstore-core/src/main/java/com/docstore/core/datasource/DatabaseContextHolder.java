@@ -0,0 +1,133 @@
+package com.docstore.core.datasource;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Per-thread routing state read by the ReplicationRoutingDataSource.
+ *
+ * After a write the thread is pinned to the primary so that it reads its own
+ * writes, which a lagging replica may not have yet. The pin lasts until
+ * {@link #clear()} is called at the end of the request, or until the
+ * pinAfterWriteMillis of the routing DataSource have passed for threads that
+ * have no request boundary.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public final class DatabaseContextHolder {
+
+	private static final ThreadLocal<State> STATE = new ThreadLocal<State>() {
+		@Override
+		protected State initialValue() {
+			return new State();
+		}
+	};
+
+	private DatabaseContextHolder() {
+	}
+
+	/**
+	 * @return the database requested for the current call, null to let the
+	 *         transaction decide
+	 */
+	public static DatabaseContext getContext() {
+		return STATE.get().context;
+	}
+
+	/**
+	 * @param context
+	 *            the database requested for the current call, null to let the
+	 *            transaction decide
+	 */
+	public static void setContext(final DatabaseContext context) {
+		STATE.get().context = context;
+	}
+
+	/**
+	 * @return whether the connections of the current call are routed to a
+	 *         replica unless the thread is pinned to the primary: the context
+	 *         asks for a replica or, without a context, the transaction is
+	 *         read-only
+	 */
+	public static boolean isReplicaRead() {
+		final DatabaseContext context = getContext();
+		if (context != null) {
+			return context == DatabaseContext.REPLICA;
+		}
+		return TransactionSynchronizationManager.isActualTransactionActive()
+				&& TransactionSynchronizationManager
+						.isCurrentTransactionReadOnly();
+	}
+
+	/**
+	 * Record that the thread has written to the primary.
+	 */
+	public static void markWrite() {
+		STATE.get().lastWriteMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return when the thread last wrote, 0 if it has not written since the
+	 *         last clear()
+	 */
+	public static long getLastWriteMillis() {
+		return STATE.get().lastWriteMillis;
+	}
+
+	/**
+	 * Route every connection of the thread to the primary until clear().
+	 */
+	public static void pinToPrimary() {
+		STATE.get().pinned = true;
+	}
+
+	public static boolean isPinnedToPrimary() {
+		return STATE.get().pinned;
+	}
+
+	/**
+	 * Forget the state of the thread; called at the end of every request.
+	 */
+	public static void clear() {
+		STATE.remove();
+	}
+
+	/**
+	 * @return a copy of the state of the thread, to hand to a worker thread
+	 *         running on its behalf
+	 */
+	public static Object snapshot() {
+		return STATE.get().copy();
+	}
+
+	/**
+	 * @param snapshot
+	 *            a state taken with snapshot(), null to clear
+	 */
+	public static void restore(final Object snapshot) {
+		if (snapshot == null) {
+			STATE.remove();
+		} else {
+			STATE.set(((State) snapshot).copy());
+		}
+	}
+
+	private static final class State {
+
+		private DatabaseContext context;
+
+		private long lastWriteMillis;
+
+		private boolean pinned;
+
+		private State copy() {
+			final State copy = new State();
+			copy.context = context;
+			copy.lastWriteMillis = lastWriteMillis;
+			copy.pinned = pinned;
+			return copy;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.docstore.core.datasource;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Takes the read/write decision for DAO calls made outside a transaction,
+ * where there is no read-only flag to go by: find, get, load, count and
+ * stream methods are routed to a replica, and every other method pins the
+ * thread to the primary for its following reads. Inside a transaction the
+ * read-only flag of the transaction decides, but writes still pin the
+ * thread. Methods without database access of their own, such as evict and
+ * invalidate, neither read nor write.
+ *
+ * Methods whose prefix does not tell what they do are listed by name:
+ * loadBulkKeys creates a temporary table and is a write, and
+ * switchDatabaseContext pins the thread itself without counting as a write.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class DatabaseRoutingInterceptor implements MethodInterceptor {
+
+	private static final String[] READ_PREFIXES = { "find", "get", "load",
+			"count", "stream" };
+
+	private static final String[] NEUTRAL_PREFIXES = { "evict", "invalidate",
+			"jpaSession", "register" };
+
+	private static final Set<String> WRITE_METHODS = new HashSet<String>(
+			Arrays.asList("loadBulkKeys"));
+
+	private static final Set<String> NEUTRAL_METHODS = new HashSet<String>(
+			Arrays.asList("switchDatabaseContext"));
+
+	@Override
+	public Object invoke(final MethodInvocation invocation) throws Throwable {
+		final String method = invocation.getMethod().getName();
+		if (NEUTRAL_METHODS.contains(method)
+				|| startsWith(method, NEUTRAL_PREFIXES)) {
+			// no database access of its own
+			return invocation.proceed();
+		}
+		if (WRITE_METHODS.contains(method)
+				|| !startsWith(method, READ_PREFIXES)) {
+			DatabaseContextHolder.markWrite();
+			return invocation.proceed();
+		}
+		if (TransactionSynchronizationManager.isActualTransactionActive()
+				|| DatabaseContextHolder.getContext() != null) {
+			return invocation.proceed();
+		}
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		try {
+			return invocation.proceed();
+		} finally {
+			DatabaseContextHolder.setContext(null);
+		}
+	}
+
+	private static boolean startsWith(final String method,
+			final String[] prefixes) {
+		for (String prefix : prefixes) {
+			if (method.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
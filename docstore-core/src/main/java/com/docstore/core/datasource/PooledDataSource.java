@@ -0,0 +1,1051 @@
+package com.docstore.core.datasource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+/**
+ * Connection pool placed in front of a physical (non pooling) DataSource such
+ * as Spring's DriverManagerDataSource.
+ *
+ * Physical connections are created lazily up to maxPoolSize, validated with
+ * {@link Connection#isValid(int)} when they have been idle for longer than
+ * validationIntervalMillis, and handed out as proxies whose close() returns
+ * the connection to the pool. A returned connection gets back the autocommit,
+ * read-only, isolation, catalog and holdability it was created with, and the
+ * statements the borrower left open are closed.
+ *
+ * With hibernate.connection.release_mode=on_close an EntityManager keeps its
+ * connection until it is closed, so a connection that stays borrowed longer
+ * than leakDetectionThresholdMillis points at an EntityManager that was never
+ * closed. Such connections are logged once together with the stack trace of
+ * the borrowing call.
+ *
+ * Prepared statement reuse is reported two ways:
+ * <ul>
+ * <li>measured: with serverStatusIntervalMillis the pool reads
+ * Com_stmt_prepare and Com_stmt_execute of SHOW SESSION STATUS when a
+ * connection is created and, at most once per interval, when it is given
+ * back, and adds up the differences. These are the statements the MySQL
+ * server actually prepared and executed, up to the last reading of each
+ * connection.</li>
+ * <li>estimated: with cachePrepStmts and useServerPrepStmts the MySQL driver
+ * keeps an LRU cache of server statements per connection, keyed by SQL
+ * text. A statement leaves the cache while it is open and goes back when it
+ * is closed, and SQL of prepStmtCacheSqlLimit characters or more is never
+ * cached. The pool mirrors that cache with statementCacheSize entries per
+ * connection. The estimated hit ratio is only as good as that mirror; set
+ * statementCacheSize, cachePrepStmts and statementCacheSqlLimit like the
+ * driver, or statementCacheSize to 0 to turn the estimate off.</li>
+ * </ul>
+ *
+ * All statistics are published over JMX as
+ * com.docstore.core:type=PooledDataSource,name=&lt;bean name&gt;.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class PooledDataSource extends AbstractDataSource implements
+		PooledDataSourceMBean, InitializingBean, DisposableBean, BeanNameAware {
+
+	private static final String SQL_STATE_CONNECTION_EXCEPTION = "08";
+
+	private static final String SERVER_STATUS_QUERY = "SHOW SESSION STATUS LIKE 'Com_stmt_%'";
+
+	private DataSource targetDataSource;
+
+	private int minPoolSize = 5;
+
+	private int maxPoolSize = 20;
+
+	private long maxWaitMillis = 30000;
+
+	private long validationIntervalMillis = 5000;
+
+	private int validationTimeoutSeconds = 5;
+
+	private long idleTimeoutMillis = 600000;
+
+	private long leakDetectionThresholdMillis = 60000;
+
+	private long housekeepingIntervalMillis = 30000;
+
+	private int statementCacheSize = 250;
+
+	private boolean cachePrepStmts = true;
+
+	private int statementCacheSqlLimit = 2048;
+
+	private long serverStatusIntervalMillis = 0;
+
+	private boolean jmxEnabled = true;
+
+	private MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+	private String beanName = "dataSource";
+
+	private ObjectName objectName;
+
+	private Semaphore permits;
+
+	private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<PooledConnection>();
+
+	private final Set<PooledConnection> borrowedConnections = Collections
+			.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+
+	private ScheduledExecutorService housekeeper;
+
+	private volatile boolean closed = false;
+
+	private final AtomicLong createdCount = new AtomicLong();
+
+	private final AtomicLong destroyedCount = new AtomicLong();
+
+	private final AtomicLong borrowCount = new AtomicLong();
+
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private final AtomicLong leakCount = new AtomicLong();
+
+	private final AtomicLong validationFailureCount = new AtomicLong();
+
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	private final AtomicLong statementCacheHits = new AtomicLong();
+
+	private final AtomicLong statementCacheMisses = new AtomicLong();
+
+	private final AtomicLong serverPrepares = new AtomicLong();
+
+	private final AtomicLong serverExecutions = new AtomicLong();
+
+	/**
+	 * Create the initial connections and start the housekeeping task.
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if (targetDataSource == null) {
+			throw new IllegalArgumentException("targetDataSource is required");
+		}
+		if (minPoolSize < 0 || maxPoolSize < 1 || minPoolSize > maxPoolSize) {
+			throw new IllegalArgumentException("Invalid pool size: min="
+					+ minPoolSize + ", max=" + maxPoolSize);
+		}
+		permits = new Semaphore(maxPoolSize, true);
+		fillToMinimum();
+
+		housekeeper = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"docstore-pool-housekeeper");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		housekeeper.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				housekeep();
+			}
+		}, housekeepingIntervalMillis, housekeepingIntervalMillis,
+				TimeUnit.MILLISECONDS);
+
+		if (jmxEnabled) {
+			registerMBean();
+		}
+	}
+
+	private void registerMBean() {
+		try {
+			objectName = new ObjectName(
+					"com.docstore.core:type=PooledDataSource,name="
+							+ ObjectName.quote(beanName));
+			if (mbeanServer.isRegistered(objectName)) {
+				mbeanServer.unregisterMBean(objectName);
+			}
+			mbeanServer.registerMBean(this, objectName);
+		} catch (JMException e) {
+			objectName = null;
+			logger.warn("Could not register the MBean of pool " + beanName, e);
+		}
+	}
+
+	/**
+	 * Close all idle connections and stop the housekeeping task. Borrowed
+	 * connections are closed when they are given back.
+	 */
+	@Override
+	public void destroy() {
+		close();
+	}
+
+	/**
+	 * Close the pool.
+	 */
+	public void close() {
+		closed = true;
+		if (housekeeper != null) {
+			housekeeper.shutdownNow();
+		}
+		if (objectName != null) {
+			try {
+				mbeanServer.unregisterMBean(objectName);
+			} catch (JMException e) {
+				logger.debug("Could not unregister " + objectName, e);
+			}
+			objectName = null;
+		}
+		PooledConnection pooled;
+		while ((pooled = idleConnections.pollFirst()) != null) {
+			destroy(pooled);
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		final long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.incrementAndGet();
+				throw new SQLException("Timeout after " + maxWaitMillis
+						+ " ms waiting for a connection (active="
+						+ getActiveConnections() + ", max=" + maxPoolSize
+						+ ")", SQL_STATE_CONNECTION_EXCEPTION + "001");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(
+					"Interrupted while waiting for a connection", e);
+		}
+		recordWait(System.nanoTime() - start);
+
+		try {
+			final PooledConnection pooled = obtain();
+			pooled.borrowed(leakDetectionThresholdMillis > 0);
+			borrowedConnections.add(pooled);
+			borrowCount.incrementAndGet();
+			return pooled.getProxy();
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * The pool only holds connections made with the credentials of the target
+	 * DataSource. A connection for other credentials is opened on the target
+	 * directly: it is not pooled, not counted against maxPoolSize and closed
+	 * for real when the caller closes it.
+	 */
+	@Override
+	public Connection getConnection(final String username,
+			final String password) throws SQLException {
+		return targetDataSource.getConnection(username, password);
+	}
+
+	private PooledConnection obtain() throws SQLException {
+		PooledConnection pooled;
+		while ((pooled = idleConnections.pollFirst()) != null) {
+			if (pooled.getIdleMillis() < validationIntervalMillis
+					|| isValid(pooled)) {
+				return pooled;
+			}
+			validationFailureCount.incrementAndGet();
+			destroy(pooled);
+		}
+		return create();
+	}
+
+	private PooledConnection create() throws SQLException {
+		final Connection physicalConnection = targetDataSource.getConnection();
+		final PooledConnection pooled;
+		try {
+			pooled = new PooledConnection(physicalConnection);
+		} catch (SQLException e) {
+			try {
+				physicalConnection.close();
+			} catch (SQLException closeFailure) {
+				logger.debug("Could not close physical connection",
+						closeFailure);
+			}
+			throw e;
+		}
+		createdCount.incrementAndGet();
+		if (serverStatusIntervalMillis > 0) {
+			pooled.readServerStatus();
+		}
+		return pooled;
+	}
+
+	private boolean isValid(final PooledConnection pooled) {
+		try {
+			return pooled.getPhysicalConnection().isValid(
+					validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void destroy(final PooledConnection pooled) {
+		destroyedCount.incrementAndGet();
+		try {
+			pooled.getPhysicalConnection().close();
+		} catch (SQLException e) {
+			logger.debug("Could not close physical connection", e);
+		}
+	}
+
+	/**
+	 * Called when the proxy handed out by the pool is closed.
+	 */
+	private void giveBack(final PooledConnection pooled) {
+		borrowedConnections.remove(pooled);
+		try {
+			if (closed || pooled.isBroken() || !pooled.reset()) {
+				destroy(pooled);
+			} else {
+				if (serverStatusIntervalMillis > 0
+						&& pooled.getMillisSinceServerStatus() >= serverStatusIntervalMillis) {
+					pooled.readServerStatus();
+				}
+				idleConnections.offerFirst(pooled);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void recordWait(final long waitNanos) {
+		totalWaitNanos.addAndGet(waitNanos);
+		long currentMax = maxWaitNanos.get();
+		while (waitNanos > currentMax
+				&& !maxWaitNanos.compareAndSet(currentMax, waitNanos)) {
+			currentMax = maxWaitNanos.get();
+		}
+	}
+
+	/**
+	 * Evict connections idle for longer than idleTimeoutMillis (keeping
+	 * minPoolSize), report leaked connections and refill to minPoolSize.
+	 */
+	private void housekeep() {
+		try {
+			final Iterator<PooledConnection> itr = idleConnections
+					.descendingIterator();
+			while (itr.hasNext()
+					&& getTotalConnections() > minPoolSize) {
+				final PooledConnection pooled = itr.next();
+				if (pooled.getIdleMillis() > idleTimeoutMillis
+						&& idleConnections.remove(pooled)) {
+					destroy(pooled);
+				}
+			}
+
+			if (leakDetectionThresholdMillis > 0) {
+				for (PooledConnection pooled : borrowedConnections) {
+					if (pooled.getBorrowedMillis() > leakDetectionThresholdMillis
+							&& pooled.markLeakReported()) {
+						leakCount.incrementAndGet();
+						logger.warn("Connection borrowed "
+								+ pooled.getBorrowedMillis()
+								+ " ms ago has not been returned; possible leak"
+								+ " (EntityManager not closed?)",
+								pooled.getBorrowTrace());
+					}
+				}
+			}
+
+			fillToMinimum();
+		} catch (Exception e) {
+			logger.warn("Connection pool housekeeping failed", e);
+		}
+	}
+
+	private void fillToMinimum() throws SQLException {
+		while (!closed && getTotalConnections() < minPoolSize
+				&& permits.tryAcquire()) {
+			try {
+				idleConnections.offerLast(create());
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of connections currently handed out
+	 */
+	public int getActiveConnections() {
+		return borrowedConnections.size();
+	}
+
+	/**
+	 * @return the number of connections waiting in the pool
+	 */
+	public int getIdleConnections() {
+		return idleConnections.size();
+	}
+
+	/**
+	 * @return the number of open physical connections
+	 */
+	public int getTotalConnections() {
+		return getActiveConnections() + getIdleConnections();
+	}
+
+	/**
+	 * @return the number of threads currently waiting for a connection
+	 */
+	public int getThreadsAwaitingConnection() {
+		return permits == null ? 0 : permits.getQueueLength();
+	}
+
+	/**
+	 * @return the total number of successful getConnection() calls
+	 */
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * @return the accumulated time callers spent waiting for a connection
+	 */
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	/**
+	 * @return the longest time a caller waited for a connection
+	 */
+	public long getMaxWaitMillisObserved() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	/**
+	 * @return the average wait per borrowed connection in milliseconds
+	 */
+	public double getAverageWaitMillis() {
+		final long borrows = borrowCount.get();
+		return borrows == 0 ? 0 : totalWaitNanos.get() / 1000000.0 / borrows;
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getLeakCount() {
+		return leakCount.get();
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount.get();
+	}
+
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount.get();
+	}
+
+	/**
+	 * @return prepareStatement calls whose SQL the mirrored driver cache held,
+	 *         an estimate
+	 */
+	public long getEstimatedStatementCacheHits() {
+		return statementCacheHits.get();
+	}
+
+	/**
+	 * @return prepareStatement calls the mirrored driver cache did not hold,
+	 *         an estimate
+	 */
+	public long getEstimatedStatementCacheMisses() {
+		return statementCacheMisses.get();
+	}
+
+	/**
+	 * @return the estimated share of prepareStatement calls served from the
+	 *         driver statement cache, between 0 and 1
+	 */
+	public double getEstimatedStatementCacheHitRatio() {
+		final long hits = statementCacheHits.get();
+		final long total = hits + statementCacheMisses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the number of statements in the mirrored driver caches over all
+	 *         pooled connections
+	 */
+	public int getCachedStatementCount() {
+		int count = 0;
+		for (PooledConnection pooled : idleConnections) {
+			count += pooled.getCachedStatementCount();
+		}
+		for (PooledConnection pooled : borrowedConnections) {
+			count += pooled.getCachedStatementCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return statements the server prepared (Com_stmt_prepare), measured
+	 *         with serverStatusIntervalMillis
+	 */
+	public long getServerStatementPrepares() {
+		return serverPrepares.get();
+	}
+
+	/**
+	 * @return prepared statement executions on the server (Com_stmt_execute),
+	 *         measured with serverStatusIntervalMillis
+	 */
+	public long getServerStatementExecutions() {
+		return serverExecutions.get();
+	}
+
+	/**
+	 * @return the share of server executions that did not need a prepare of
+	 *         their own, between 0 and 1
+	 */
+	public double getServerStatementReuseRatio() {
+		final long executions = serverExecutions.get();
+		return executions == 0 ? 0 : Math.max(0, 1 - (double) serverPrepares
+				.get() / executions);
+	}
+
+	public void setTargetDataSource(final DataSource targetDataSource) {
+		this.targetDataSource = targetDataSource;
+	}
+
+	public DataSource getTargetDataSource() {
+		return targetDataSource;
+	}
+
+	public int getMinPoolSize() {
+		return minPoolSize;
+	}
+
+	public void setMinPoolSize(final int minPoolSize) {
+		this.minPoolSize = minPoolSize;
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	public void setMaxPoolSize(final int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public void setMaxWaitMillis(final long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	public void setValidationIntervalMillis(final long validationIntervalMillis) {
+		this.validationIntervalMillis = validationIntervalMillis;
+	}
+
+	public void setValidationTimeoutSeconds(final int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	public void setIdleTimeoutMillis(final long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public void setLeakDetectionThresholdMillis(
+			final long leakDetectionThresholdMillis) {
+		this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+	}
+
+	public void setHousekeepingIntervalMillis(
+			final long housekeepingIntervalMillis) {
+		this.housekeepingIntervalMillis = housekeepingIntervalMillis;
+	}
+
+	/**
+	 * @param statementCacheSize
+	 *            statements cached per connection by the driver
+	 *            (prepStmtCacheSize), 0 to disable the statistics
+	 */
+	public void setStatementCacheSize(final int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * @param cachePrepStmts
+	 *            cachePrepStmts of the driver; without it every prepare is a
+	 *            miss
+	 */
+	public void setCachePrepStmts(final boolean cachePrepStmts) {
+		this.cachePrepStmts = cachePrepStmts;
+	}
+
+	/**
+	 * @param statementCacheSqlLimit
+	 *            prepStmtCacheSqlLimit of the driver; SQL this long or longer
+	 *            is never cached
+	 */
+	public void setStatementCacheSqlLimit(final int statementCacheSqlLimit) {
+		this.statementCacheSqlLimit = statementCacheSqlLimit;
+	}
+
+	/**
+	 * @param serverStatusIntervalMillis
+	 *            how often a returned connection reads its statement counters
+	 *            from SHOW SESSION STATUS (MySQL only), 0 to not measure
+	 */
+	public void setServerStatusIntervalMillis(
+			final long serverStatusIntervalMillis) {
+		this.serverStatusIntervalMillis = serverStatusIntervalMillis;
+	}
+
+	/**
+	 * @param jmxEnabled
+	 *            whether the pool is published as an MBean (default true)
+	 */
+	public void setJmxEnabled(final boolean jmxEnabled) {
+		this.jmxEnabled = jmxEnabled;
+	}
+
+	public void setMbeanServer(final MBeanServer mbeanServer) {
+		this.mbeanServer = mbeanServer;
+	}
+
+	@Override
+	public void setBeanName(final String beanName) {
+		this.beanName = beanName;
+	}
+
+	/**
+	 * A physical connection together with its pool bookkeeping and the proxy
+	 * handed out to callers.
+	 */
+	private final class PooledConnection implements InvocationHandler {
+
+		private final Connection physicalConnection;
+
+		private final Connection proxy;
+
+		private volatile long borrowedAt;
+
+		private volatile long returnedAt;
+
+		private volatile Throwable borrowTrace;
+
+		private volatile boolean leakReported;
+
+		private volatile boolean broken;
+
+		private volatile boolean proxyClosed;
+
+		private final StatementCache statementCache;
+
+		private final Set<TrackedStatement> openStatements = Collections
+				.newSetFromMap(new ConcurrentHashMap<TrackedStatement, Boolean>());
+
+		private final int initialIsolation;
+
+		private final String initialCatalog;
+
+		private final int initialHoldability;
+
+		private volatile boolean isolationChanged;
+
+		private volatile boolean catalogChanged;
+
+		private volatile boolean holdabilityChanged;
+
+		private long serverStatusReadAt;
+
+		private boolean hasServerStatus;
+
+		private long lastServerPrepares;
+
+		private long lastServerExecutions;
+
+		PooledConnection(final Connection physicalConnection)
+				throws SQLException {
+			this.physicalConnection = physicalConnection;
+			this.initialIsolation = physicalConnection.getTransactionIsolation();
+			this.initialCatalog = physicalConnection.getCatalog();
+			this.initialHoldability = physicalConnection.getHoldability();
+			this.statementCache = statementCacheSize > 0 ? new StatementCache(
+					statementCacheSize) : null;
+			this.returnedAt = System.currentTimeMillis();
+			this.proxy = (Connection) Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+		}
+
+		Connection getPhysicalConnection() {
+			return physicalConnection;
+		}
+
+		Connection getProxy() {
+			return proxy;
+		}
+
+		void borrowed(final boolean captureTrace) {
+			borrowedAt = System.currentTimeMillis();
+			borrowTrace = captureTrace ? new Throwable("Connection borrowed here")
+					: null;
+			leakReported = false;
+			proxyClosed = false;
+		}
+
+		long getIdleMillis() {
+			return System.currentTimeMillis() - returnedAt;
+		}
+
+		long getBorrowedMillis() {
+			return System.currentTimeMillis() - borrowedAt;
+		}
+
+		Throwable getBorrowTrace() {
+			return borrowTrace;
+		}
+
+		boolean markLeakReported() {
+			if (leakReported) {
+				return false;
+			}
+			leakReported = true;
+			return true;
+		}
+
+		boolean isBroken() {
+			return broken;
+		}
+
+		int getCachedStatementCount() {
+			if (statementCache == null) {
+				return 0;
+			}
+			synchronized (statementCache) {
+				return statementCache.size();
+			}
+		}
+
+		/**
+		 * Take the SQL out of the mirrored statement cache, as the driver does
+		 * on prepareStatement.
+		 *
+		 * @return whether the statement returns to the cache when closed
+		 */
+		private boolean recordPrepare(final String sql) {
+			if (!cachePrepStmts || sql.length() >= statementCacheSqlLimit) {
+				statementCacheMisses.incrementAndGet();
+				return false;
+			}
+			final boolean hit;
+			synchronized (statementCache) {
+				hit = statementCache.remove(sql) != null;
+			}
+			(hit ? statementCacheHits : statementCacheMisses).incrementAndGet();
+			return true;
+		}
+
+		/**
+		 * Put a closed statement back into the mirrored statement cache.
+		 */
+		private void recordClose(final String sql) {
+			synchronized (statementCache) {
+				statementCache.put(sql, Boolean.TRUE);
+			}
+		}
+
+		long getMillisSinceServerStatus() {
+			return System.currentTimeMillis() - serverStatusReadAt;
+		}
+
+		/**
+		 * Add the statement counters of the session since the last reading
+		 * to the totals of the pool. Only called while the connection is not
+		 * borrowed.
+		 */
+		void readServerStatus() {
+			long prepares = -1;
+			long executions = -1;
+			try {
+				final Statement statement = physicalConnection
+						.createStatement();
+				try {
+					final ResultSet rs = statement
+							.executeQuery(SERVER_STATUS_QUERY);
+					while (rs.next()) {
+						final String variable = rs.getString(1);
+						if ("Com_stmt_prepare".equalsIgnoreCase(variable)) {
+							prepares = rs.getLong(2);
+						} else if ("Com_stmt_execute"
+								.equalsIgnoreCase(variable)) {
+							executions = rs.getLong(2);
+						}
+					}
+				} finally {
+					statement.close();
+				}
+			} catch (SQLException e) {
+				logger.debug("Could not read the statement status", e);
+			}
+			serverStatusReadAt = System.currentTimeMillis();
+			if (prepares < 0 || executions < 0) {
+				return;
+			}
+			if (hasServerStatus) {
+				serverPrepares.addAndGet(prepares - lastServerPrepares);
+				serverExecutions.addAndGet(executions - lastServerExecutions);
+			}
+			lastServerPrepares = prepares;
+			lastServerExecutions = executions;
+			hasServerStatus = true;
+		}
+
+		/**
+		 * Close the statements the borrower left open, roll back any pending
+		 * work and restore the connection state it had when it was created.
+		 * Isolation, catalog and holdability are only restored when the
+		 * borrower changed them, so reading them costs no round trip here.
+		 *
+		 * @return false if the connection could not be reset
+		 */
+		boolean reset() {
+			closeOpenStatements();
+			try {
+				if (!physicalConnection.getAutoCommit()) {
+					physicalConnection.rollback();
+					physicalConnection.setAutoCommit(true);
+				}
+				if (physicalConnection.isReadOnly()) {
+					physicalConnection.setReadOnly(false);
+				}
+				if (isolationChanged) {
+					physicalConnection.setTransactionIsolation(initialIsolation);
+					isolationChanged = false;
+				}
+				if (catalogChanged) {
+					physicalConnection.setCatalog(initialCatalog);
+					catalogChanged = false;
+				}
+				if (holdabilityChanged) {
+					physicalConnection.setHoldability(initialHoldability);
+					holdabilityChanged = false;
+				}
+				physicalConnection.clearWarnings();
+				returnedAt = System.currentTimeMillis();
+				borrowTrace = null;
+				return true;
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		private void closeOpenStatements() {
+			if (openStatements.isEmpty()) {
+				return;
+			}
+			logger.debug(openStatements.size()
+					+ " statements were left open on a returned connection");
+			for (TrackedStatement statement : openStatements) {
+				statement.closeStatement();
+			}
+			openStatements.clear();
+		}
+
+		public Object invoke(final Object proxy, final Method method,
+				final Object[] args) throws Throwable {
+			final String name = method.getName();
+			if ("close".equals(name)) {
+				if (!proxyClosed) {
+					proxyClosed = true;
+					giveBack(this);
+				}
+				return null;
+			} else if ("isClosed".equals(name)) {
+				return proxyClosed || physicalConnection.isClosed();
+			} else if ("equals".equals(name)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(name)) {
+				return "Pooled connection [" + physicalConnection + "]";
+			} else if ("unwrap".equals(name)
+					&& ((Class<?>) args[0]).isInstance(proxy)) {
+				return proxy;
+			} else if ("isWrapperFor".equals(name)
+					&& ((Class<?>) args[0]).isInstance(proxy)) {
+				return true;
+			}
+
+			if (proxyClosed) {
+				throw new SQLException("Connection has been returned to the pool");
+			}
+			// whether the state differs from the initial one after the call
+			if ("setTransactionIsolation".equals(name)) {
+				isolationChanged = ((Integer) args[0]).intValue() != initialIsolation;
+			} else if ("setCatalog".equals(name)) {
+				catalogChanged = args[0] == null ? initialCatalog != null
+						: !args[0].equals(initialCatalog);
+			} else if ("setHoldability".equals(name)) {
+				holdabilityChanged = ((Integer) args[0]).intValue() != initialHoldability;
+			} else if ("createStatement".equals(name)
+					|| "prepareStatement".equals(name)
+					|| "prepareCall".equals(name)) {
+				final String cachedSql = statementCache != null
+						&& "prepareStatement".equals(name)
+						&& recordPrepare((String) args[0]) ? (String) args[0]
+						: null;
+				final TrackedStatement tracked = new TrackedStatement(
+						(Statement) invokePhysical(method, args), cachedSql);
+				openStatements.add(tracked);
+				return Proxy.newProxyInstance(
+						Statement.class.getClassLoader(),
+						new Class<?>[] { method.getReturnType() }, tracked);
+			}
+			return invokePhysical(method, args);
+		}
+
+		private Object invokePhysical(final Method method, final Object[] args)
+				throws Throwable {
+			try {
+				return method.invoke(physicalConnection, args);
+			} catch (InvocationTargetException e) {
+				final Throwable cause = e.getTargetException();
+				if (cause instanceof SQLException) {
+					final String sqlState = ((SQLException) cause).getSQLState();
+					if (sqlState != null
+							&& sqlState
+									.startsWith(SQL_STATE_CONNECTION_EXCEPTION)) {
+						broken = true;
+					}
+				}
+				throw cause;
+			}
+		}
+
+		/**
+		 * A statement handed out on the connection. It is closed when the
+		 * connection is given back, and a prepared statement goes back into
+		 * the mirrored statement cache when it is closed.
+		 */
+		private final class TrackedStatement implements InvocationHandler {
+
+			private final Statement statement;
+
+			private final String cachedSql;
+
+			private boolean statementClosed;
+
+			TrackedStatement(final Statement statement, final String cachedSql) {
+				this.statement = statement;
+				this.cachedSql = cachedSql;
+			}
+
+			void closeStatement() {
+				try {
+					closed();
+					statement.close();
+				} catch (SQLException e) {
+					logger.debug("Could not close statement", e);
+				}
+			}
+
+			private void closed() {
+				if (!statementClosed) {
+					statementClosed = true;
+					openStatements.remove(this);
+					if (cachedSql != null) {
+						recordClose(cachedSql);
+					}
+				}
+			}
+
+			public Object invoke(final Object proxy, final Method method,
+					final Object[] args) throws Throwable {
+				final String name = method.getName();
+				if ("close".equals(name)) {
+					closed();
+				} else if ("getConnection".equals(name)) {
+					return PooledConnection.this.proxy;
+				} else if ("equals".equals(name)) {
+					return proxy == args[0];
+				} else if ("hashCode".equals(name)) {
+					return System.identityHashCode(proxy);
+				}
+				try {
+					return method.invoke(statement, args);
+				} catch (InvocationTargetException e) {
+					throw e.getTargetException();
+				}
+			}
+		}
+	}
+
+	/**
+	 * SQL texts prepared on a connection, least recently used first.
+	 */
+	private static final class StatementCache extends
+			LinkedHashMap<String, Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		StatementCache(final int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, Boolean> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+}
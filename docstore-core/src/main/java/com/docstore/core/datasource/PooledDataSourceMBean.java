@@ -0,0 +1,70 @@
+package com.docstore.core.datasource;
+
+/**
+ * JMX view of a PooledDataSource.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public interface PooledDataSourceMBean {
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	int getTotalConnections();
+
+	int getThreadsAwaitingConnection();
+
+	long getBorrowCount();
+
+	double getAverageWaitMillis();
+
+	long getMaxWaitMillisObserved();
+
+	long getTimeoutCount();
+
+	long getLeakCount();
+
+	long getValidationFailureCount();
+
+	long getCreatedCount();
+
+	long getDestroyedCount();
+
+	/**
+	 * @return prepareStatement calls the mirrored driver cache served
+	 */
+	long getEstimatedStatementCacheHits();
+
+	/**
+	 * @return prepareStatement calls the mirrored driver cache missed
+	 */
+	long getEstimatedStatementCacheMisses();
+
+	/**
+	 * @return the estimated share of prepareStatement calls served from the
+	 *         driver statement cache, between 0 and 1
+	 */
+	double getEstimatedStatementCacheHitRatio();
+
+	int getCachedStatementCount();
+
+	/**
+	 * @return statements prepared on the server (Com_stmt_prepare)
+	 */
+	long getServerStatementPrepares();
+
+	/**
+	 * @return prepared statement executions on the server (Com_stmt_execute)
+	 */
+	long getServerStatementExecutions();
+
+	/**
+	 * @return the share of server executions that reused an already prepared
+	 *         statement, between 0 and 1
+	 */
+	double getServerStatementReuseRatio();
+
+}
@@ -0,0 +1,313 @@
+package com.docstore.core.datasource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Routes connections of read-only transactions, and of calls the
+ * DatabaseRoutingInterceptor marked as reads, to a replica and everything
+ * else to the primary.
+ *
+ * Replicas are used round robin. A background task checks the replication
+ * lag of every replica with lagQuery (SHOW SLAVE STATUS) every
+ * lagCheckIntervalMillis and takes a replica out of rotation while it is more
+ * than maxLagSeconds behind, while replication is stopped or while it cannot
+ * be reached; an instance that returns no replication status is taken as up
+ * to date. Reads fall back to the primary when no replica is usable or when
+ * getting a replica connection fails. A thread that wrote is pinned to the
+ * primary, see DatabaseContextHolder.
+ *
+ * The routing decision is taken when the connection is fetched, so this
+ * DataSource has to be wrapped in a LazyConnectionDataSourceProxy: the
+ * transaction manager opens the connection before the transaction is marked
+ * read-only.
+ *
+ * Replicas do not fill the query cache, see GenericDAOImpl: a result read
+ * from a lagging replica would otherwise be served from the cache after the
+ * replica has caught up.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class ReplicationRoutingDataSource extends AbstractRoutingDataSource
+		implements DisposableBean {
+
+	private static final String PRIMARY_KEY = "primary";
+
+	private DataSource primaryDataSource;
+
+	private List<DataSource> replicaDataSources = Collections.emptyList();
+
+	private long maxLagSeconds = 5;
+
+	private long lagCheckIntervalMillis = 5000;
+
+	private String lagQuery = "SHOW SLAVE STATUS";
+
+	private String lagColumn = "Seconds_Behind_Master";
+
+	private long pinAfterWriteMillis = 10000;
+
+	private final List<Replica> replicas = new ArrayList<Replica>();
+
+	private final AtomicInteger nextReplica = new AtomicInteger();
+
+	private ScheduledExecutorService lagMonitor;
+
+	@Override
+	public void afterPropertiesSet() {
+		if (primaryDataSource == null) {
+			throw new IllegalArgumentException("primaryDataSource is required");
+		}
+		final Map<Object, Object> targets = new HashMap<Object, Object>();
+		targets.put(PRIMARY_KEY, primaryDataSource);
+		for (int i = 0; i < replicaDataSources.size(); i++) {
+			final Replica replica = new Replica("replica-" + i,
+					replicaDataSources.get(i));
+			replicas.add(replica);
+			targets.put(replica.key, replica.dataSource);
+		}
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primaryDataSource);
+		setLenientFallback(false);
+		super.afterPropertiesSet();
+
+		if (!replicas.isEmpty() && lagCheckIntervalMillis > 0) {
+			lagMonitor = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(final Runnable runnable) {
+							final Thread thread = new Thread(runnable,
+									"docstore-replica-lag-monitor");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			lagMonitor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					checkReplicas();
+				}
+			}, 0, lagCheckIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (lagMonitor != null) {
+			lagMonitor.shutdownNow();
+		}
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (!DatabaseContextHolder.isReplicaRead() || isPinned()) {
+			return PRIMARY_KEY;
+		}
+		final int size = replicas.size();
+		final int start = nextReplica.getAndIncrement() & Integer.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			final Replica replica = replicas.get((start + i) % size);
+			if (replica.healthy) {
+				return replica.key;
+			}
+		}
+		return PRIMARY_KEY;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		final DataSource target = determineTargetDataSource();
+		try {
+			return target.getConnection();
+		} catch (SQLException e) {
+			return fallBackToPrimary(target, e).getConnection();
+		}
+	}
+
+	@Override
+	public Connection getConnection(final String username,
+			final String password) throws SQLException {
+		final DataSource target = determineTargetDataSource();
+		try {
+			return target.getConnection(username, password);
+		} catch (SQLException e) {
+			return fallBackToPrimary(target, e).getConnection(username,
+					password);
+		}
+	}
+
+	private DataSource fallBackToPrimary(final DataSource target,
+			final SQLException e) throws SQLException {
+		if (target == primaryDataSource) {
+			throw e;
+		}
+		for (Replica replica : replicas) {
+			if (replica.dataSource == target) {
+				replica.healthy = false;
+				logger.warn("Replica " + replica.key
+						+ " unavailable, reading from the primary", e);
+			}
+		}
+		return primaryDataSource;
+	}
+
+	private boolean isPinned() {
+		if (DatabaseContextHolder.isPinnedToPrimary()) {
+			return true;
+		}
+		final long lastWrite = DatabaseContextHolder.getLastWriteMillis();
+		return lastWrite > 0
+				&& System.currentTimeMillis() - lastWrite < pinAfterWriteMillis;
+	}
+
+	/**
+	 * Update the lag and health of every replica.
+	 */
+	void checkReplicas() {
+		for (Replica replica : replicas) {
+			try {
+				replica.lagSeconds = readLagSeconds(replica.dataSource);
+			} catch (SQLException e) {
+				logger.debug("Lag check of " + replica.key + " failed", e);
+				replica.lagSeconds = -1;
+			}
+			final boolean healthy = replica.lagSeconds >= 0
+					&& replica.lagSeconds <= maxLagSeconds;
+			if (healthy != replica.healthy) {
+				logger.info("Replica " + replica.key
+						+ (healthy ? " back in rotation" : " out of rotation")
+						+ ", lag " + replica.lagSeconds + "s");
+			}
+			replica.healthy = healthy;
+		}
+	}
+
+	/**
+	 * @return the lag in seconds, 0 if the instance is not replicating, -1 if
+	 *         replication is stopped
+	 */
+	private long readLagSeconds(final DataSource dataSource)
+			throws SQLException {
+		final Connection connection = dataSource.getConnection();
+		try {
+			final Statement statement = connection.createStatement();
+			try {
+				final ResultSet rs = statement.executeQuery(lagQuery);
+				if (!rs.next()) {
+					return 0;
+				}
+				final long lag = rs.getLong(lagColumn);
+				return rs.wasNull() ? -1 : lag;
+			} finally {
+				statement.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	public int getReplicaCount() {
+		return replicas.size();
+	}
+
+	public int getHealthyReplicaCount() {
+		int count = 0;
+		for (Replica replica : replicas) {
+			if (replica.healthy) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the last measured lag of every replica in seconds, -1 where
+	 *         replication is stopped or the replica could not be reached
+	 */
+	public long[] getReplicaLagSeconds() {
+		final long[] lags = new long[replicas.size()];
+		for (int i = 0; i < lags.length; i++) {
+			lags[i] = replicas.get(i).lagSeconds;
+		}
+		return lags;
+	}
+
+	public void setPrimaryDataSource(final DataSource primaryDataSource) {
+		this.primaryDataSource = primaryDataSource;
+	}
+
+	public void setReplicaDataSources(final List<DataSource> replicaDataSources) {
+		this.replicaDataSources = replicaDataSources;
+	}
+
+	/**
+	 * @param maxLagSeconds
+	 *            replicas further behind are not read from
+	 */
+	public void setMaxLagSeconds(final long maxLagSeconds) {
+		this.maxLagSeconds = maxLagSeconds;
+	}
+
+	public void setLagCheckIntervalMillis(final long lagCheckIntervalMillis) {
+		this.lagCheckIntervalMillis = lagCheckIntervalMillis;
+	}
+
+	/**
+	 * @param lagQuery
+	 *            query returning the replication status, at most one row
+	 */
+	public void setLagQuery(final String lagQuery) {
+		this.lagQuery = lagQuery;
+	}
+
+	/**
+	 * @param lagColumn
+	 *            column of lagQuery holding the lag in seconds
+	 */
+	public void setLagColumn(final String lagColumn) {
+		this.lagColumn = lagColumn;
+	}
+
+	/**
+	 * @param pinAfterWriteMillis
+	 *            how long a thread that wrote keeps reading from the primary
+	 *            when its request does not clear the DatabaseContextHolder
+	 */
+	public void setPinAfterWriteMillis(final long pinAfterWriteMillis) {
+		this.pinAfterWriteMillis = pinAfterWriteMillis;
+	}
+
+	private static final class Replica {
+
+		private final String key;
+
+		private final DataSource dataSource;
+
+		private volatile boolean healthy = true;
+
+		private volatile long lagSeconds;
+
+		private Replica(final String key, final DataSource dataSource) {
+			this.key = key;
+			this.dataSource = dataSource;
+		}
+	}
+
+}
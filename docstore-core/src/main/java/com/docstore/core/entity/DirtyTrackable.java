@@ -0,0 +1,33 @@
+package com.docstore.core.entity;
+
+import java.util.Set;
+
+/**
+ * An entity whose setters record which properties they changed. With
+ * DirtyTrackingStrategy configured, the flush skips trackable entities with
+ * no recorded change and compares only the recorded properties of the
+ * others; with @DynamicUpdate the UPDATE then sets only those columns.
+ *
+ * Hibernate must write the tracked properties through their setters
+ * (@Access(AccessType.PROPERTY)), otherwise values that merge copies in go
+ * unrecorded. The record is cleared when the entity is loaded or persisted
+ * and after every update.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public interface DirtyTrackable {
+
+	/**
+	 * @return the names of the properties changed since the entity was
+	 *         loaded, persisted or last updated
+	 */
+	Set<String> getDirtyProperties();
+
+	/**
+	 * Forgets the recorded changes.
+	 */
+	void clearDirtyProperties();
+
+}
@@ -1,47 +1,99 @@
 package com.docstore.core.entity;
 
 import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.NamedQuery;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.Transient;
 import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.hibernate.validator.constraints.Length;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "com.docstore.core.entity.TUsr")
 @Table(name = "t_usr", uniqueConstraints = @UniqueConstraint(columnNames = { "usr_id" }))
-public class TUsr implements Serializable{
+// only the changed columns are updated; Hibernate 4.1 ignores @DynamicUpdate
+@org.hibernate.annotations.Entity(dynamicUpdate = true)
+// usr_name lookups resolve to usr_id in memory, then hit the entity cache
+@NaturalIdCache(region = "com.docstore.core.entity.TUsr##NaturalId")
+// unique, but a second natural id is not possible; cacheable on genericDAO
+@NamedQuery(name = "TUsr.findByEmail", query = "select u from TUsr u where u.email = ?1")
+public class TUsr implements Serializable, DirtyTrackable {
 	private static final long serialVersionUID = 1L;
 	
+	/*
+	 * Ids are allocated in blocks of 50 from t_unique_key so that inserts can
+	 * be sent as JDBC batches; IDENTITY would force one round trip per row.
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@TableGenerator(name = "usrIdGenerator", table = "t_unique_key", pkColumnName = "key_name", valueColumnName = "key_value", pkColumnValue = "t_usr", allocationSize = 50)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "usrIdGenerator")
 	@Column(name = "usr_id", nullable = false, length = 255)
 	private Integer usrId;
 	
+	/*
+	 * The tracked properties are written through their setters, so that
+	 * values merge copies in are recorded as well.
+	 */
+	@Access(AccessType.PROPERTY)
+	@NaturalId(mutable = true)
 	@Length(max = 200)
 	@Column(name = "usr_name", nullable = false, length = 200)
 	private String usrName;
 	
+	@Access(AccessType.PROPERTY)
 	@Length(max = 500)
 	@Column(name = "email", nullable = false, length = 500)
 	private String email;
 	
+	@Access(AccessType.PROPERTY)
 	@Length(max = 20)
 	@Column(name = "password", nullable = false, length = 20)
 	private String password;
 	
+	@Access(AccessType.PROPERTY)
 	@Length(max = 75)
 	@Column(name = "first_name", nullable = false, length = 75)
 	private String firstName;
 	
+	@Access(AccessType.PROPERTY)
 	@Length(max = 75)
 	@Column(name = "last_name", nullable = false, length = 75)
 	private String lastName;
 
+	/*
+	 * Checked and incremented by every update, so that a detached instance can
+	 * be written back without reading the row first. Bulk updates bypass the
+	 * entity and must increment it themselves, or a stale copy overwrites
+	 * their change: named HQL updates as "update versioned TUsr ...", native
+	 * ones with "version = version + 1" as in TUsrImporter.
+	 */
+	@Version
+	@Column(name = "version", nullable = false)
+	private Integer version;
+
+	@Transient
+	private final Set<String> dirtyProperties = new HashSet<String>();
+
 	public Integer getUsrId() {
 		return usrId;
 	}
@@ -55,6 +107,7 @@ public class TUsr implements Serializable{
 	}
 
 	public void setUsrName(final String usrName) {
+		track("usrName", this.usrName, usrName);
 		this.usrName = usrName;
 	}
 
@@ -63,6 +116,7 @@ public class TUsr implements Serializable{
 	}
 
 	public void setEmail(final String email) {
+		track("email", this.email, email);
 		this.email = email;
 	}
 
@@ -71,6 +125,7 @@ public class TUsr implements Serializable{
 	}
 
 	public void setPassword(final String password) {
+		track("password", this.password, password);
 		this.password = password;
 	}
 
@@ -79,6 +134,7 @@ public class TUsr implements Serializable{
 	}
 
 	public void setFirstName(final String firstName) {
+		track("firstName", this.firstName, firstName);
 		this.firstName = firstName;
 	}
 
@@ -87,7 +143,35 @@ public class TUsr implements Serializable{
 	}
 
 	public void setLastName(final String lastName) {
+		track("lastName", this.lastName, lastName);
 		this.lastName = lastName;
 	}
 
+	public Integer getVersion() {
+		return version;
+	}
+
+	public void setVersion(final Integer version) {
+		this.version = version;
+	}
+
+	@Override
+	public Set<String> getDirtyProperties() {
+		return dirtyProperties;
+	}
+
+	@Override
+	@PostLoad
+	@PrePersist
+	public void clearDirtyProperties() {
+		dirtyProperties.clear();
+	}
+
+	private void track(final String property, final Object oldValue,
+			final Object newValue) {
+		if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+			dirtyProperties.add(property);
+		}
+	}
+
 }
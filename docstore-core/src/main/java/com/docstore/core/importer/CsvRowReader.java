@@ -0,0 +1,112 @@
+package com.docstore.core.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RowReader for comma separated files (RFC 4180): fields may be enclosed in
+ * double quotes, in which case they can contain delimiters, line breaks and
+ * escaped ("") quotes.
+ * 
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public class CsvRowReader implements RowReader {
+
+	private static final int EOF = -1;
+
+	private final BufferedReader reader;
+
+	private final char delimiter;
+
+	private final StringBuilder field = new StringBuilder();
+
+	private long rowNumber;
+
+	private boolean endOfFile;
+
+	public CsvRowReader(final Reader reader) {
+		this(reader, ',');
+	}
+
+	public CsvRowReader(final Reader reader, final char delimiter) {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader
+				: new BufferedReader(reader);
+		this.delimiter = delimiter;
+	}
+
+	public String[] readRow() throws IOException {
+		if (endOfFile) {
+			return null;
+		}
+		final List<String> row = new ArrayList<String>();
+		field.setLength(0);
+		boolean quoted = false;
+		boolean fieldWasQuoted = false;
+
+		int c = reader.read();
+		if (c == EOF) {
+			endOfFile = true;
+			return null;
+		}
+		rowNumber++;
+		while (true) {
+			if (quoted) {
+				if (c == EOF) {
+					throw new IOException("Unterminated quoted field in row "
+							+ rowNumber);
+				} else if (c == '"') {
+					reader.mark(1);
+					final int next = reader.read();
+					if (next == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						reader.reset();
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else if (c == '"' && field.length() == 0 && !fieldWasQuoted) {
+				quoted = true;
+				fieldWasQuoted = true;
+			} else if (c == delimiter) {
+				row.add(toValue(fieldWasQuoted));
+				fieldWasQuoted = false;
+			} else if (c == '\n' || c == '\r' || c == EOF) {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				} else if (c == EOF) {
+					endOfFile = true;
+				}
+				row.add(toValue(fieldWasQuoted));
+				return row.toArray(new String[row.size()]);
+			} else {
+				field.append((char) c);
+			}
+			c = reader.read();
+		}
+	}
+
+	private String toValue(final boolean wasQuoted) {
+		final String value = field.toString();
+		field.setLength(0);
+		return value.length() == 0 && !wasQuoted ? null : value;
+	}
+
+	public long getRowNumber() {
+		return rowNumber;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
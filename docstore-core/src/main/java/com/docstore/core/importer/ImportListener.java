@@ -0,0 +1,38 @@
+package com.docstore.core.importer;
+
+/**
+ * Receives progress notifications from an import. Callbacks are invoked from
+ * the reading thread and the writer threads, so implementations must be
+ * thread safe.
+ * 
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public interface ImportListener {
+
+	/**
+	 * Called after every written batch.
+	 * 
+	 * @param rowsRead
+	 *            rows read from the file so far
+	 * @param rowsWritten
+	 *            rows written to the database so far
+	 * @param rowsRejected
+	 *            rows rejected by validation or for an email collision so far
+	 */
+	void onProgress(long rowsRead, long rowsWritten, long rowsRejected);
+
+	/**
+	 * Called for every row that failed validation.
+	 * 
+	 * @param rowNumber
+	 *            the 1 based row number in the file
+	 * @param row
+	 *            the cell values of the row
+	 * @param reason
+	 *            why the row was rejected
+	 */
+	void onRejected(long rowNumber, String[] row, String reason);
+
+}
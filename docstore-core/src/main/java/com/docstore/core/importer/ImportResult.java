@@ -0,0 +1,78 @@
+package com.docstore.core.importer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of an import.
+ * 
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public class ImportResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long rowsRead;
+
+	private final long rowsWritten;
+
+	private final long rowsRejected;
+
+	private final long elapsedMillis;
+
+	private final List<String> rejections;
+
+	public ImportResult(final long rowsRead, final long rowsWritten,
+			final long rowsRejected, final long elapsedMillis,
+			final List<String> rejections) {
+		this.rowsRead = rowsRead;
+		this.rowsWritten = rowsWritten;
+		this.rowsRejected = rowsRejected;
+		this.elapsedMillis = elapsedMillis;
+		this.rejections = Collections.unmodifiableList(new ArrayList<String>(
+				rejections));
+	}
+
+	/**
+	 * @return the number of data rows read, excluding the header row
+	 */
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return "row n: reason" messages of the first rejected rows; the number
+	 *         kept is bounded, see getRowsRejected for the total
+	 */
+	public List<String> getRejections() {
+		return rejections;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedMillis == 0 ? 0 : rowsWritten * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "ImportResult [read=" + rowsRead + ", written=" + rowsWritten
+				+ ", rejected=" + rowsRejected + ", elapsedMillis="
+				+ elapsedMillis + "]";
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.docstore.core.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward only reader over the rows of a tabular file. Implementations read
+ * one row at a time and never hold the whole file in memory.
+ * 
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public interface RowReader extends Closeable {
+
+	/**
+	 * Read the next row.
+	 * 
+	 * @return the cell values of the row, empty cells as null; null once the
+	 *         end of the file has been reached
+	 * @throws IOException
+	 *             if the file cannot be read or is malformed
+	 */
+	String[] readRow() throws IOException;
+
+	/**
+	 * @return the 1 based number of the row last returned by readRow
+	 */
+	long getRowNumber();
+
+}
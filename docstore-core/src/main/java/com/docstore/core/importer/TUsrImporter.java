@@ -0,0 +1,491 @@
+package com.docstore.core.importer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sql.DataSource;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.docstore.core.dao.GenericDAO;
+import com.docstore.core.entity.TUsr;
+
+/**
+ * Bulk importer for t_usr from .xlsx or .csv files whose first row holds the
+ * column names usr_name, email, password, first_name and last_name (in any
+ * order).
+ * 
+ * The file is read row by row on the calling thread. Every row is validated
+ * against the constraints of TUsr, valid rows are grouped into batches of
+ * batchSize and handed through a bounded queue to writerCount writer threads,
+ * each of which upserts its batch with one JDBC batch (rows are matched on the
+ * unique usr_name). Because the queue is bounded, the reader blocks when the
+ * writers fall behind, so memory use does not depend on the file size.
+ * 
+ * email is unique as well, and an upsert fires on either key. A row whose
+ * email belongs to a user of another usr_name is rejected before the batch
+ * is written, and the update only touches a row whose usr_name matches, so
+ * an email collision that slips past that check (e.g. between two writers)
+ * never overwrites the other user; the row is rejected after the write.
+ * 
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+@Component("tUsrImporter")
+public class TUsrImporter {
+
+	private static final String[] COLUMNS = { "usr_name", "email", "password",
+			"first_name", "last_name" };
+
+	private static final String[] PROPERTIES = { "usrName", "email",
+			"password", "firstName", "lastName" };
+
+	private static final String UPSERT_SQL = "insert into t_usr (usr_id, usr_name, email, password, first_name, last_name)"
+			+ " values (?, ?, ?, ?, ?, ?) on duplicate key update"
+			+ " email = if(usr_name = values(usr_name), values(email), email),"
+			+ " password = if(usr_name = values(usr_name), values(password), password),"
+			+ " first_name = if(usr_name = values(usr_name), values(first_name), first_name),"
+			+ " last_name = if(usr_name = values(usr_name), values(last_name), last_name),"
+			+ " version = if(usr_name = values(usr_name), version + 1, version)";
+
+	private static final String EMAIL_COLLISION = "email is already used by another user";
+
+	private static final int USR_NAME = 0;
+
+	private static final int EMAIL = 1;
+
+	private static final List<ImportRow> END_OF_INPUT = Collections
+			.unmodifiableList(new ArrayList<ImportRow>());
+
+	@Autowired
+	private GenericDAO genericDAO;
+
+	@Autowired
+	@Qualifier("dataSource")
+	private DataSource dataSource;
+
+	private Validator validator;
+
+	private int batchSize = 500;
+
+	private int writerCount = 4;
+
+	private int maxReportedRejections = 1000;
+
+	/**
+	 * Import a .xlsx or .csv (UTF-8) file.
+	 * 
+	 * @param file
+	 *            the file to import
+	 * @param listener
+	 *            receives progress and rejected rows, may be null
+	 * @return the import counts
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public ImportResult importFile(final File file,
+			final ImportListener listener) throws IOException {
+		final RowReader reader = file.getName().toLowerCase().endsWith(".xlsx") ? new XlsxRowReader(
+				file) : new CsvRowReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			return importRows(reader, listener);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Import the rows of the given reader; the first row must be the header.
+	 * 
+	 * @param reader
+	 *            the rows to import
+	 * @param listener
+	 *            receives progress and rejected rows, may be null
+	 * @return the import counts
+	 * @throws IOException
+	 *             if the rows cannot be read
+	 */
+	public ImportResult importRows(final RowReader reader,
+			final ImportListener listener) throws IOException {
+		final long start = System.currentTimeMillis();
+		final String[] header = reader.readRow();
+		if (header == null) {
+			return new ImportResult(0, 0, 0, 0,
+					Collections.<String> emptyList());
+		}
+		final int[] columnIndexes = mapColumns(header);
+		final ImportListener progress = listener != null ? listener
+				: NO_OP_LISTENER;
+
+		final BlockingQueue<List<ImportRow>> queue = new ArrayBlockingQueue<List<ImportRow>>(
+				writerCount * 2);
+		final AtomicLong rowsRead = new AtomicLong();
+		final AtomicLong rowsWritten = new AtomicLong();
+		final AtomicLong rowsRejected = new AtomicLong();
+		final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		final List<String> rejections = Collections
+				.synchronizedList(new ArrayList<String>());
+
+		final ExecutorService writers = Executors.newFixedThreadPool(
+				writerCount, new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(final Runnable runnable) {
+						return new Thread(runnable, "tusr-import-writer-"
+								+ count.incrementAndGet());
+					}
+				});
+		for (int i = 0; i < writerCount; i++) {
+			writers.execute(new Runnable() {
+				public void run() {
+					write(queue, failure, rowsRead, rowsWritten, rowsRejected,
+							rejections, progress);
+				}
+			});
+		}
+
+		try {
+			List<ImportRow> batch = new ArrayList<ImportRow>(batchSize);
+			String[] row;
+			while (failure.get() == null && (row = reader.readRow()) != null) {
+				final String[] values = new String[COLUMNS.length];
+				boolean blank = true;
+				for (int i = 0; i < COLUMNS.length; i++) {
+					final int column = columnIndexes[i];
+					values[i] = column < row.length && row[column] != null ? row[column]
+							.trim() : null;
+					blank &= values[i] == null || values[i].length() == 0;
+				}
+				if (blank) {
+					continue;
+				}
+				rowsRead.incrementAndGet();
+
+				final String reason = validate(values);
+				if (reason != null) {
+					reject(reader.getRowNumber(), row, reason, rowsRejected,
+							rejections, progress);
+					continue;
+				}
+
+				batch.add(new ImportRow(reader.getRowNumber(), row, values));
+				if (batch.size() == batchSize) {
+					put(queue, batch);
+					batch = new ArrayList<ImportRow>(batchSize);
+				}
+			}
+			if (!batch.isEmpty()) {
+				put(queue, batch);
+			}
+		} finally {
+			for (int i = 0; i < writerCount; i++) {
+				put(queue, END_OF_INPUT);
+			}
+			writers.shutdown();
+			try {
+				writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		// rows were written around the entity manager
+		genericDAO.invalidate(TUsr.class);
+		return new ImportResult(rowsRead.get(), rowsWritten.get(),
+				rowsRejected.get(), System.currentTimeMillis() - start,
+				rejections);
+	}
+
+	/**
+	 * Writer loop; once a writer failed the remaining batches are drained
+	 * without being written so that the reader never blocks.
+	 */
+	private void write(final BlockingQueue<List<ImportRow>> queue,
+			final AtomicReference<RuntimeException> failure,
+			final AtomicLong rowsRead, final AtomicLong rowsWritten,
+			final AtomicLong rowsRejected, final List<String> rejections,
+			final ImportListener progress) {
+		final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		while (true) {
+			final List<ImportRow> batch;
+			try {
+				batch = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (batch == END_OF_INPUT) {
+				return;
+			}
+			if (failure.get() != null) {
+				continue;
+			}
+			try {
+				final List<ImportRow> writable = new ArrayList<ImportRow>(
+						batch.size());
+				final Map<String, String> owners = findUsrs(jdbcTemplate,
+						"email", EMAIL, "usr_name", batch);
+				for (ImportRow row : batch) {
+					final String owner = owners.get(row.values[EMAIL]);
+					if (owner != null
+							&& !owner.equalsIgnoreCase(row.values[USR_NAME])) {
+						reject(row.rowNumber, row.row, EMAIL_COLLISION,
+								rowsRejected, rejections, progress);
+					} else {
+						// later rows of the batch collide with this one
+						owners.put(row.values[EMAIL], row.values[USR_NAME]);
+						writable.add(row);
+					}
+				}
+				if (!writable.isEmpty()) {
+					upsert(jdbcTemplate, writable);
+				}
+				int written = 0;
+				for (ImportRow row : findNotWritten(jdbcTemplate, writable)) {
+					reject(row.rowNumber, row.row, EMAIL_COLLISION,
+							rowsRejected, rejections, progress);
+					written--;
+				}
+				written += writable.size();
+				rowsWritten.addAndGet(written);
+				progress.onProgress(rowsRead.get(), rowsWritten.get(),
+						rowsRejected.get());
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, e);
+			}
+		}
+	}
+
+	/**
+	 * @return the valueColumn of the users whose keyColumn holds one of the
+	 *         values of the rows at keyIndex, keyed by keyColumn and compared
+	 *         case insensitively like the column collation
+	 */
+	private static Map<String, String> findUsrs(
+			final JdbcTemplate jdbcTemplate, final String keyColumn,
+			final int keyIndex, final String valueColumn,
+			final List<ImportRow> rows) {
+		final Map<String, String> usrs = new TreeMap<String, String>(
+				String.CASE_INSENSITIVE_ORDER);
+		if (rows.isEmpty()) {
+			return usrs;
+		}
+		final StringBuilder sql = new StringBuilder("select ")
+				.append(keyColumn).append(", ").append(valueColumn)
+				.append(" from t_usr where ").append(keyColumn).append(" in (");
+		final Object[] args = new Object[rows.size()];
+		for (int i = 0; i < args.length; i++) {
+			sql.append(i == 0 ? "?" : ", ?");
+			args[i] = rows.get(i).values[keyIndex];
+		}
+		for (Map<String, Object> usr : jdbcTemplate.queryForList(
+				sql.append(')').toString(), args)) {
+			usrs.put((String) usr.get(keyColumn),
+					(String) usr.get(valueColumn));
+		}
+		return usrs;
+	}
+
+	/**
+	 * @return the written rows whose user does not have their email now, i.e.
+	 *         whose insert or update the guard skipped; of several rows with
+	 *         the same usr_name only the last one is checked
+	 */
+	private static List<ImportRow> findNotWritten(
+			final JdbcTemplate jdbcTemplate, final List<ImportRow> rows) {
+		final Map<String, ImportRow> lastRows = new TreeMap<String, ImportRow>(
+				String.CASE_INSENSITIVE_ORDER);
+		for (ImportRow row : rows) {
+			lastRows.put(row.values[USR_NAME], row);
+		}
+		final Map<String, String> emails = findUsrs(jdbcTemplate, "usr_name",
+				USR_NAME, "email", rows);
+		final List<ImportRow> notWritten = new ArrayList<ImportRow>();
+		for (ImportRow row : lastRows.values()) {
+			if (!row.values[EMAIL].equalsIgnoreCase(emails
+					.get(row.values[USR_NAME]))) {
+				notWritten.add(row);
+			}
+		}
+		return notWritten;
+	}
+
+	private void upsert(final JdbcTemplate jdbcTemplate,
+			final List<ImportRow> batch) {
+		final long[] ids = new long[batch.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = genericDAO.generateID("t_usr", "t_unique_key",
+					"key_value", "key_name", "49");
+		}
+		jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+			public void setValues(final PreparedStatement ps, final int i)
+					throws SQLException {
+				final String[] values = batch.get(i).values;
+				ps.setLong(1, ids[i]);
+				for (int column = 0; column < values.length; column++) {
+					ps.setString(column + 2, values[column]);
+				}
+			}
+
+			public int getBatchSize() {
+				return batch.size();
+			}
+		});
+	}
+
+	/**
+	 * @return null if the row is valid, else the reason it is rejected
+	 */
+	private String validate(final String[] values) {
+		final StringBuilder reason = new StringBuilder();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if (values[i] == null || values[i].length() == 0) {
+				reason.append(COLUMNS[i]).append(" is required; ");
+				continue;
+			}
+			for (ConstraintViolation<TUsr> violation : getValidator()
+					.validateValue(TUsr.class, PROPERTIES[i], values[i])) {
+				reason.append(COLUMNS[i]).append(' ')
+						.append(violation.getMessage()).append("; ");
+			}
+		}
+		return reason.length() == 0 ? null : reason.substring(0,
+				reason.length() - 2);
+	}
+
+	private int[] mapColumns(final String[] header) throws IOException {
+		final int[] indexes = new int[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++) {
+			indexes[i] = -1;
+			for (int column = 0; column < header.length; column++) {
+				if (header[column] != null
+						&& COLUMNS[i].equalsIgnoreCase(header[column].trim())) {
+					indexes[i] = column;
+				}
+			}
+			if (indexes[i] == -1) {
+				throw new IOException("Missing column " + COLUMNS[i]
+						+ " in header row");
+			}
+		}
+		return indexes;
+	}
+
+	private static void put(final BlockingQueue<List<ImportRow>> queue,
+			final List<ImportRow> batch) {
+		try {
+			queue.put(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while importing", e);
+		}
+	}
+
+	private void reject(final long rowNumber, final String[] row,
+			final String reason, final AtomicLong rowsRejected,
+			final List<String> rejections, final ImportListener progress) {
+		rowsRejected.incrementAndGet();
+		if (rejections.size() < maxReportedRejections) {
+			rejections.add("row " + rowNumber + ": " + reason);
+		}
+		progress.onRejected(rowNumber, row, reason);
+	}
+
+	private Validator getValidator() {
+		if (validator == null) {
+			validator = Validation.buildDefaultValidatorFactory()
+					.getValidator();
+		}
+		return validator;
+	}
+
+	public void setValidator(final Validator validator) {
+		this.validator = validator;
+	}
+
+	/**
+	 * @param batchSize
+	 *            number of rows upserted per JDBC batch
+	 */
+	public void setBatchSize(final int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param writerCount
+	 *            number of parallel writer threads; each one holds a
+	 *            connection while it writes
+	 */
+	public void setWriterCount(final int writerCount) {
+		this.writerCount = writerCount;
+	}
+
+	/**
+	 * @param maxReportedRejections
+	 *            number of rejected rows listed in the ImportResult
+	 */
+	public void setMaxReportedRejections(final int maxReportedRejections) {
+		this.maxReportedRejections = maxReportedRejections;
+	}
+
+	/**
+	 * A valid row on its way to a writer.
+	 */
+	private static final class ImportRow {
+
+		private final long rowNumber;
+
+		private final String[] row;
+
+		/** in the order of COLUMNS */
+		private final String[] values;
+
+		private ImportRow(final long rowNumber, final String[] row,
+				final String[] values) {
+			this.rowNumber = rowNumber;
+			this.row = row;
+			this.values = values;
+		}
+	}
+
+	private static final ImportListener NO_OP_LISTENER = new ImportListener() {
+		public void onProgress(final long rowsRead, final long rowsWritten,
+				final long rowsRejected) {
+		}
+
+		public void onRejected(final long rowNumber, final String[] row,
+				final String reason) {
+		}
+	};
+
+}
@@ -0,0 +1,322 @@
+package com.docstore.core.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * RowReader for Office Open XML workbooks (.xlsx). The worksheet XML is
+ * pulled element by element with StAX straight out of the zip file, so only
+ * the current row is held in memory.
+ * 
+ * Text cells usually point into the shared string table of the workbook,
+ * which has to be read up front. The first sharedStringsInMemory entries are
+ * kept on the heap, any further ones are spilled to a temporary file and
+ * looked up by offset, so very large workbooks do not grow the heap with the
+ * number of distinct values.
+ * 
+ * @author JCoE team
+ * @version 1.0
+ * 
+ */
+public class XlsxRowReader implements RowReader {
+
+	/** Zip entry of the first worksheet of a workbook. */
+	public static final String FIRST_SHEET = "xl/worksheets/sheet1.xml";
+
+	private static final String SHARED_STRINGS = "xl/sharedStrings.xml";
+
+	private static final int DEFAULT_SHARED_STRINGS_IN_MEMORY = 100000;
+
+	private final ZipFile zipFile;
+
+	private final SharedStrings sharedStrings;
+
+	private final InputStream sheetStream;
+
+	private final XMLStreamReader sheet;
+
+	private long rowNumber;
+
+	public XlsxRowReader(final File file) throws IOException {
+		this(file, FIRST_SHEET, DEFAULT_SHARED_STRINGS_IN_MEMORY);
+	}
+
+	/**
+	 * @param file
+	 *            the workbook
+	 * @param sheetEntry
+	 *            zip entry of the worksheet to read, e.g. FIRST_SHEET
+	 * @param sharedStringsInMemory
+	 *            number of shared strings kept on the heap
+	 * @throws IOException
+	 *             if the workbook cannot be opened
+	 */
+	public XlsxRowReader(final File file, final String sheetEntry,
+			final int sharedStringsInMemory) throws IOException {
+		zipFile = new ZipFile(file);
+		try {
+			sharedStrings = new SharedStrings(sharedStringsInMemory);
+			final ZipEntry sharedStringsEntry = zipFile
+					.getEntry(SHARED_STRINGS);
+			if (sharedStringsEntry != null) {
+				readSharedStrings(zipFile.getInputStream(sharedStringsEntry));
+			}
+			final ZipEntry sheetZipEntry = zipFile.getEntry(sheetEntry);
+			if (sheetZipEntry == null) {
+				throw new IOException("No worksheet " + sheetEntry + " in "
+						+ file);
+			}
+			sheetStream = zipFile.getInputStream(sheetZipEntry);
+			sheet = createXMLInputFactory().createXMLStreamReader(sheetStream);
+		} catch (XMLStreamException e) {
+			close();
+			throw new IOException("Cannot read workbook " + file, e);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	public String[] readRow() throws IOException {
+		try {
+			while (sheet.hasNext()) {
+				if (sheet.next() == XMLStreamConstants.START_ELEMENT
+						&& "row".equals(sheet.getLocalName())) {
+					final String r = sheet.getAttributeValue(null, "r");
+					rowNumber = r != null ? Long.parseLong(r) : rowNumber + 1;
+					return readCells();
+				}
+			}
+			return null;
+		} catch (XMLStreamException e) {
+			throw new IOException("Malformed worksheet near row " + rowNumber,
+					e);
+		}
+	}
+
+	private String[] readCells() throws XMLStreamException, IOException {
+		String[] row = new String[0];
+		int nextColumn = 0;
+		while (sheet.hasNext()) {
+			final int event = sheet.next();
+			if (event == XMLStreamConstants.END_ELEMENT
+					&& "row".equals(sheet.getLocalName())) {
+				return row;
+			}
+			if (event == XMLStreamConstants.START_ELEMENT
+					&& "c".equals(sheet.getLocalName())) {
+				final String reference = sheet.getAttributeValue(null, "r");
+				final int column = reference != null ? columnIndex(reference)
+						: nextColumn;
+				final String value = readCellValue(sheet.getAttributeValue(
+						null, "t"));
+				if (column >= row.length) {
+					row = Arrays.copyOf(row, column + 1);
+				}
+				row[column] = value;
+				nextColumn = column + 1;
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * Reads the text of the &lt;v&gt; or inline &lt;t&gt; elements of the
+	 * current cell.
+	 */
+	private String readCellValue(final String type) throws XMLStreamException,
+			IOException {
+		final StringBuilder text = new StringBuilder();
+		boolean inValue = false;
+		boolean hasValue = false;
+		while (sheet.hasNext()) {
+			final int event = sheet.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				final String name = sheet.getLocalName();
+				inValue = "v".equals(name) || "t".equals(name);
+				hasValue |= inValue;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if ("c".equals(sheet.getLocalName())) {
+					break;
+				}
+				inValue = false;
+			} else if (inValue
+					&& (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+				text.append(sheet.getText());
+			}
+		}
+		if (!hasValue) {
+			return null;
+		}
+		if ("s".equals(type)) {
+			return sharedStrings.get(Integer.parseInt(text.toString().trim()));
+		} else if ("b".equals(type)) {
+			return "1".equals(text.toString()) ? "TRUE" : "FALSE";
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Converts the column letters of a cell reference such as "AB12" to a 0
+	 * based column index.
+	 */
+	static int columnIndex(final String reference) {
+		int column = 0;
+		for (int i = 0; i < reference.length(); i++) {
+			final char c = reference.charAt(i);
+			if (c < 'A' || c > 'Z') {
+				break;
+			}
+			column = column * 26 + (c - 'A' + 1);
+		}
+		return column - 1;
+	}
+
+	private void readSharedStrings(final InputStream in)
+			throws XMLStreamException, IOException {
+		final XMLStreamReader sst = createXMLInputFactory()
+				.createXMLStreamReader(in);
+		try {
+			final StringBuilder text = new StringBuilder();
+			boolean inText = false;
+			int phoneticDepth = 0;
+			while (sst.hasNext()) {
+				final int event = sst.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					final String name = sst.getLocalName();
+					if ("si".equals(name)) {
+						text.setLength(0);
+					} else if ("rPh".equals(name)) {
+						phoneticDepth++;
+					} else if ("t".equals(name)) {
+						inText = phoneticDepth == 0;
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					final String name = sst.getLocalName();
+					if ("si".equals(name)) {
+						sharedStrings.add(text.toString());
+					} else if ("rPh".equals(name)) {
+						phoneticDepth--;
+					} else if ("t".equals(name)) {
+						inText = false;
+					}
+				} else if (inText
+						&& (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+					text.append(sst.getText());
+				}
+			}
+		} finally {
+			sst.close();
+			in.close();
+		}
+	}
+
+	private static XMLInputFactory createXMLInputFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
+
+	public long getRowNumber() {
+		return rowNumber;
+	}
+
+	public void close() throws IOException {
+		try {
+			if (sheet != null) {
+				sheet.close();
+			}
+		} catch (XMLStreamException e) {
+			// the underlying stream is closed below
+		} finally {
+			try {
+				if (sharedStrings != null) {
+					sharedStrings.close();
+				}
+			} finally {
+				zipFile.close();
+			}
+		}
+	}
+
+	/**
+	 * Shared string table, kept on the heap up to a limit and spilled to a
+	 * temporary file beyond it.
+	 */
+	private static final class SharedStrings {
+
+		private final int inMemoryLimit;
+
+		private final List<String> inMemory = new ArrayList<String>();
+
+		private long[] offsets = new long[0];
+
+		private int spilled;
+
+		private File spillFile;
+
+		private RandomAccessFile spill;
+
+		SharedStrings(final int inMemoryLimit) {
+			this.inMemoryLimit = inMemoryLimit;
+		}
+
+		void add(final String value) throws IOException {
+			if (inMemory.size() < inMemoryLimit) {
+				inMemory.add(value);
+				return;
+			}
+			if (spill == null) {
+				spillFile = File.createTempFile("xlsx-shared-strings", ".tmp");
+				spillFile.deleteOnExit();
+				spill = new RandomAccessFile(spillFile, "rw");
+			}
+			if (spilled == offsets.length) {
+				offsets = Arrays.copyOf(offsets, Math.max(1024,
+						offsets.length * 2));
+			}
+			offsets[spilled++] = spill.getFilePointer();
+			final byte[] bytes = value.getBytes("UTF-8");
+			spill.writeInt(bytes.length);
+			spill.write(bytes);
+		}
+
+		String get(final int index) throws IOException {
+			if (index < inMemory.size()) {
+				return inMemory.get(index);
+			}
+			final int spillIndex = index - inMemory.size();
+			if (spillIndex >= spilled) {
+				throw new IOException("Shared string " + index
+						+ " does not exist");
+			}
+			spill.seek(offsets[spillIndex]);
+			final byte[] bytes = new byte[spill.readInt()];
+			spill.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		void close() throws IOException {
+			if (spill != null) {
+				spill.close();
+				spillFile.delete();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.docstore.core.monitor;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, error count, rows returned and latency of one DAO method and
+ * query. All counters are lock-free so recording adds no contention between
+ * request threads.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class DAOMetrics implements DAOMetricsMBean {
+
+	private final String method;
+
+	private final String query;
+
+	private final LongAdder callCount = new LongAdder();
+
+	private final LongAdder errorCount = new LongAdder();
+
+	private final LongAdder rowCount = new LongAdder();
+
+	private final LongAdder totalMicros = new LongAdder();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	public DAOMetrics(final String method, final String query) {
+		this.method = method;
+		this.query = query;
+	}
+
+	/**
+	 * @param nanos
+	 *            the duration of the call
+	 * @param rows
+	 *            the rows returned or affected
+	 * @param failed
+	 *            whether the call threw an exception
+	 */
+	public void record(final long nanos, final long rows, final boolean failed) {
+		final long micros = nanos / 1000;
+		callCount.increment();
+		if (failed) {
+			errorCount.increment();
+		}
+		if (rows > 0) {
+			rowCount.add(rows);
+		}
+		totalMicros.add(micros);
+		latency.record(micros);
+	}
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getQuery() {
+		return query;
+	}
+
+	@Override
+	public long getCallCount() {
+		return callCount.sum();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	@Override
+	public long getRowCount() {
+		return rowCount.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		final long calls = callCount.sum();
+		return calls == 0 ? 0 : totalMicros.sum() / 1000.0 / calls;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return latency.getPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return latency.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return latency.getMax() / 1000.0;
+	}
+
+	@Override
+	public void reset() {
+		callCount.reset();
+		errorCount.reset();
+		rowCount.reset();
+		totalMicros.reset();
+		latency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return method + (query != null ? " " + query : "") + " [calls="
+				+ getCallCount() + ", errors=" + getErrorCount() + ", rows="
+				+ getRowCount() + ", p50=" + getP50Millis() + "ms, p99="
+				+ getP99Millis() + "ms, max=" + getMaxMillis() + "ms]";
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.docstore.core.monitor;
+
+import java.util.Collection;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import com.docstore.core.dao.BatchStatistics;
+import com.docstore.core.dao.KeysetPage;
+
+/**
+ * Records every call through a DAO proxy in the DAOMetricsRegistry, keyed by
+ * the method name and the query it ran: the first argument when it is a
+ * String (named query or SQL) or the simple name of the entity class when it
+ * is a Class.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class DAOMetricsInterceptor implements MethodInterceptor {
+
+	private DAOMetricsRegistry registry;
+
+	@Override
+	public Object invoke(final MethodInvocation invocation) throws Throwable {
+		final long start = System.nanoTime();
+		Object result = null;
+		boolean failed = true;
+		try {
+			result = invocation.proceed();
+			failed = false;
+			return result;
+		} finally {
+			final String method = invocation.getMethod().getName();
+			registry.record(method, queryOf(invocation.getArguments()),
+					System.nanoTime() - start, failed ? 0 : rowsOf(method,
+							result), failed);
+		}
+	}
+
+	private static String queryOf(final Object[] arguments) {
+		if (arguments == null || arguments.length == 0) {
+			return null;
+		}
+		if (arguments[0] instanceof String) {
+			return (String) arguments[0];
+		}
+		if (arguments[0] instanceof Class) {
+			return ((Class<?>) arguments[0]).getSimpleName();
+		}
+		return null;
+	}
+
+	private static long rowsOf(final String method, final Object result) {
+		if (result == null) {
+			return 0;
+		}
+		if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		}
+		if (result instanceof int[]) {
+			return ((int[]) result).length;
+		}
+		if (result instanceof KeysetPage) {
+			return ((KeysetPage<?>) result).getContent().size();
+		}
+		if (result instanceof BatchStatistics) {
+			return ((BatchStatistics) result).getRowCount();
+		}
+		if (result instanceof Number
+				&& (method.startsWith("update") || method.startsWith("execute") || method
+						.startsWith("stream"))) {
+			// affected or streamed rows
+			return ((Number) result).longValue();
+		}
+		return 1;
+	}
+
+	public void setRegistry(final DAOMetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+}
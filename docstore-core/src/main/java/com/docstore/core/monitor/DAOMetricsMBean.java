@@ -0,0 +1,32 @@
+package com.docstore.core.monitor;
+
+/**
+ * JMX view of the metrics of one DAO method and query.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public interface DAOMetricsMBean {
+
+	String getMethod();
+
+	String getQuery();
+
+	long getCallCount();
+
+	long getErrorCount();
+
+	long getRowCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	void reset();
+
+}
@@ -0,0 +1,202 @@
+package com.docstore.core.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Keeps a DAOMetrics per DAO method and query and publishes each of them as
+ * an MBean named com.docstore.core:type=DAOMetrics,method=...,query=... on
+ * the platform MBean server.
+ *
+ * Native SQL is used as the query key as well, so keys are normalised and
+ * capped at maxKeys; further keys are recorded under the query "(other)".
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class DAOMetricsRegistry implements DAOMetricsRegistryMBean,
+		InitializingBean, DisposableBean {
+
+	private static final Log LOGGER = LogFactory
+			.getLog(DAOMetricsRegistry.class);
+
+	private static final String DOMAIN = "com.docstore.core";
+
+	private static final String OTHER = "(other)";
+
+	private static final int MAX_QUERY_LENGTH = 160;
+
+	private final ConcurrentMap<String, DAOMetrics> metrics = new ConcurrentHashMap<String, DAOMetrics>();
+
+	private final List<ObjectName> registered = Collections
+			.synchronizedList(new ArrayList<ObjectName>());
+
+	private MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+	private boolean jmxEnabled = true;
+
+	private int maxKeys = 2000;
+
+	@Override
+	public void afterPropertiesSet() {
+		if (jmxEnabled) {
+			register(this, DOMAIN + ":type=DAOMetrics,name=registry");
+		}
+	}
+
+	@Override
+	public void destroy() {
+		synchronized (registered) {
+			for (ObjectName name : registered) {
+				try {
+					mbeanServer.unregisterMBean(name);
+				} catch (JMException e) {
+					LOGGER.debug("Could not unregister " + name, e);
+				}
+			}
+			registered.clear();
+		}
+	}
+
+	/**
+	 * Record one call.
+	 *
+	 * @param method
+	 *            the DAO method
+	 * @param query
+	 *            the named query, SQL or entity the call ran, may be null
+	 * @param nanos
+	 *            the duration of the call
+	 * @param rows
+	 *            the rows returned or affected
+	 * @param failed
+	 *            whether the call threw an exception
+	 */
+	public void record(final String method, final String query,
+			final long nanos, final long rows, final boolean failed) {
+		getMetrics(method, query).record(nanos, rows, failed);
+	}
+
+	/**
+	 * @return the metrics of the method and query, created on first use
+	 */
+	public DAOMetrics getMetrics(final String method, final String query) {
+		String normalized = normalize(query);
+		String key = method + '|' + normalized;
+		DAOMetrics existing = metrics.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		if (metrics.size() >= maxKeys) {
+			normalized = OTHER;
+			key = method + '|' + OTHER;
+			existing = metrics.get(key);
+			if (existing != null) {
+				return existing;
+			}
+		}
+		final DAOMetrics created = new DAOMetrics(method, normalized);
+		existing = metrics.putIfAbsent(key, created);
+		if (existing != null) {
+			return existing;
+		}
+		if (jmxEnabled) {
+			register(created, DOMAIN + ":type=DAOMetrics,method=" + method
+					+ ",query=" + ObjectName.quote(String.valueOf(normalized)));
+		}
+		return created;
+	}
+
+	/**
+	 * @return a snapshot of all metrics
+	 */
+	public List<DAOMetrics> getAllMetrics() {
+		return new ArrayList<DAOMetrics>(metrics.values());
+	}
+
+	@Override
+	public int getMetricsCount() {
+		return metrics.size();
+	}
+
+	@Override
+	public String[] getSlowest(final int count) {
+		final List<DAOMetrics> all = getAllMetrics();
+		Collections.sort(all, new Comparator<DAOMetrics>() {
+			public int compare(final DAOMetrics a, final DAOMetrics b) {
+				return Double.compare(b.getP99Millis(), a.getP99Millis());
+			}
+		});
+		final int size = Math.min(count, all.size());
+		final String[] slowest = new String[size];
+		for (int i = 0; i < size; i++) {
+			slowest[i] = all.get(i).toString();
+		}
+		return slowest;
+	}
+
+	@Override
+	public void resetAll() {
+		for (DAOMetrics each : metrics.values()) {
+			each.reset();
+		}
+	}
+
+	private void register(final Object mbean, final String name) {
+		try {
+			final ObjectName objectName = new ObjectName(name);
+			if (mbeanServer.isRegistered(objectName)) {
+				mbeanServer.unregisterMBean(objectName);
+			}
+			mbeanServer.registerMBean(mbean, objectName);
+			registered.add(objectName);
+		} catch (JMException e) {
+			LOGGER.warn("Could not register DAO metrics MBean " + name, e);
+		}
+	}
+
+	private static String normalize(final String query) {
+		if (query == null) {
+			return null;
+		}
+		final String collapsed = query.trim().replaceAll("\\s+", " ");
+		return collapsed.length() > MAX_QUERY_LENGTH ? collapsed.substring(0,
+				MAX_QUERY_LENGTH) + "..." : collapsed;
+	}
+
+	public void setMbeanServer(final MBeanServer mbeanServer) {
+		this.mbeanServer = mbeanServer;
+	}
+
+	/**
+	 * @param jmxEnabled
+	 *            whether metrics are published as MBeans (default true)
+	 */
+	public void setJmxEnabled(final boolean jmxEnabled) {
+		this.jmxEnabled = jmxEnabled;
+	}
+
+	/**
+	 * @param maxKeys
+	 *            number of distinct method and query keys kept
+	 */
+	public void setMaxKeys(final int maxKeys) {
+		this.maxKeys = maxKeys;
+	}
+
+}
@@ -0,0 +1,26 @@
+package com.docstore.core.monitor;
+
+/**
+ * JMX view of all recorded DAO metrics.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public interface DAOMetricsRegistryMBean {
+
+	/**
+	 * @return number of distinct method and query keys recorded
+	 */
+	int getMetricsCount();
+
+	/**
+	 * @param count
+	 *            number of entries to return
+	 * @return the keys with the highest p99 latency, slowest first
+	 */
+	String[] getSlowest(int count);
+
+	void resetAll();
+
+}
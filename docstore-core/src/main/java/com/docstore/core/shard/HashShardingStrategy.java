@@ -0,0 +1,23 @@
+package com.docstore.core.shard;
+
+import java.io.Serializable;
+
+/**
+ * Spreads identifiers evenly: numeric identifiers by their value modulo the
+ * shard count, others by their hash code. Adding a shard moves most rows, so
+ * the shard count is fixed once data is loaded.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class HashShardingStrategy implements ShardingStrategy {
+
+	@Override
+	public int shardFor(final Serializable id, final int shardCount) {
+		final long value = id instanceof Number ? ((Number) id).longValue()
+				: id.hashCode();
+		return (int) (((value % shardCount) + shardCount) % shardCount);
+	}
+
+}
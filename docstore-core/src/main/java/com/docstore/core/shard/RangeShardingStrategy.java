@@ -0,0 +1,44 @@
+package com.docstore.core.shard;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Assigns numeric identifiers by range: shard i holds the identifiers below
+ * upperBounds[i] not held by an earlier shard, the last shard everything
+ * above the last bound. New shards are added by appending a bound, without
+ * moving existing rows.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class RangeShardingStrategy implements ShardingStrategy {
+
+	private List<Long> upperBounds = Collections.emptyList();
+
+	@Override
+	public int shardFor(final Serializable id, final int shardCount) {
+		if (upperBounds.size() != shardCount - 1) {
+			throw new IllegalStateException(shardCount + " shards need "
+					+ (shardCount - 1) + " upper bounds, got " + upperBounds);
+		}
+		final long value = ((Number) id).longValue();
+		final int index = Collections.binarySearch(upperBounds, value);
+		// a value equal to a bound belongs to the next shard
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	/**
+	 * @param upperBounds
+	 *            exclusive upper bound of every shard but the last, ascending
+	 */
+	public void setUpperBounds(final List<Long> upperBounds) {
+		final List<Long> sorted = new ArrayList<Long>(upperBounds);
+		Collections.sort(sorted);
+		this.upperBounds = sorted;
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.docstore.core.shard;
+
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.docstore.core.dao.GenericDAO;
+
+/**
+ * One shard: the GenericDAO and transaction manager of its own
+ * EntityManagerFactory.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class Shard {
+
+	private GenericDAO genericDAO;
+
+	private PlatformTransactionManager transactionManager;
+
+	public GenericDAO getGenericDAO() {
+		return genericDAO;
+	}
+
+	public void setGenericDAO(final GenericDAO genericDAO) {
+		this.genericDAO = genericDAO;
+	}
+
+	public PlatformTransactionManager getTransactionManager() {
+		return transactionManager;
+	}
+
+	public void setTransactionManager(
+			final PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+}
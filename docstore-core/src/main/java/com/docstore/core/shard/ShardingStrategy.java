@@ -0,0 +1,23 @@
+package com.docstore.core.shard;
+
+import java.io.Serializable;
+
+/**
+ * Decides which shard holds the entity with a given identifier.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public interface ShardingStrategy {
+
+	/**
+	 * @param id
+	 *            the entity identifier
+	 * @param shardCount
+	 *            the number of shards
+	 * @return the shard index, between 0 and shardCount - 1
+	 */
+	int shardFor(Serializable id, int shardCount);
+
+}
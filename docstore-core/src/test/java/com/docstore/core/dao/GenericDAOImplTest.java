@@ -0,0 +1,479 @@
+package com.docstore.core.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.orm.jpa.persistenceunit.PersistenceUnitPostProcessor;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docstore.core.datasource.DatabaseContext;
+import com.docstore.core.datasource.DatabaseContextHolder;
+import com.docstore.core.entity.TUsr;
+import com.docstore.core.entity.TUsrNote;
+
+/**
+ * Unit test for GenericDAOImpl on an in-memory database, with the schema
+ * created from the mappings of META-INF/persistence-test.xml.
+ */
+public class GenericDAOImplTest extends TestCase {
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private Connection keepAlive;
+
+	private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+	private GenericDAOImpl genericDAO;
+
+	private TransactionTemplate transactionTemplate;
+
+	private final List<RecordedStatement> statements = Collections
+			.synchronizedList(new ArrayList<RecordedStatement>());
+
+	@Override
+	protected void setUp() throws Exception {
+		final JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:dao" + DATABASES.incrementAndGet());
+		dataSource.setUser("sa");
+		keepAlive = dataSource.getConnection();
+
+		entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+		entityManagerFactory.setDataSource(new RecordingDataSource(dataSource,
+				statements));
+		entityManagerFactory.setPersistenceUnitName("DOCSTORETESTPU");
+		entityManagerFactory
+				.setPersistenceXmlLocation("classpath:META-INF/persistence-test.xml");
+		entityManagerFactory
+				.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		// the unit lists its classes; Hibernate 4.1 cannot scan newer class files
+		entityManagerFactory
+				.setPersistenceUnitPostProcessors(new PersistenceUnitPostProcessor[] { new PersistenceUnitPostProcessor() {
+					public void postProcessPersistenceUnitInfo(
+							final MutablePersistenceUnitInfo pui) {
+						pui.setPersistenceUnitRootUrl(null);
+					}
+				} });
+		entityManagerFactory.afterPropertiesSet();
+
+		genericDAO = new GenericDAOImpl();
+		genericDAO.setEntityManagerFactory(entityManagerFactory.getObject());
+		genericDAO.afterPropertiesSet();
+		transactionTemplate = new TransactionTemplate(
+				new JpaTransactionManager(entityManagerFactory.getObject()));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		entityManagerFactory.destroy();
+		keepAlive.close();
+	}
+
+	public void testBatchedVersionedUpdateBindsParametersInOrder()
+			throws Exception {
+		insertUser(1);
+		insertUser(2);
+		insertUser(3);
+
+		final int[] counts = executeBatch("TUsr.updateEmail", 2,
+				Arrays.<Object> asList("one@test", 1),
+				Arrays.<Object> asList("three@test", 3));
+
+		assertEquals(2, counts.length);
+		assertEquals(1, counts[0]);
+		assertEquals(1, counts[1]);
+		assertEquals("one@test", column(1, "email"));
+		assertEquals("1", column(1, "version"));
+		assertEquals("user2@test", column(2, "email"));
+		assertEquals("0", column(2, "version"));
+		assertEquals("three@test", column(3, "email"));
+		assertEquals("1", column(3, "version"));
+	}
+
+	public void testReorderedParametersAreBoundToTheirPlaceholders()
+			throws Exception {
+		insertUser(1);
+		insertUser(2);
+
+		// ?2 comes first in the SQL
+		executeBatch("TUsr.updateEmailById", 10,
+				Arrays.<Object> asList(2, "two@test"));
+
+		assertEquals("user1@test", column(1, "email"));
+		assertEquals("two@test", column(2, "email"));
+		assertEquals("1", column(2, "version"));
+	}
+
+	public void testRepeatedParameterIsBoundAtEveryPlaceholder()
+			throws Exception {
+		insertUser(1);
+
+		executeBatch("TUsr.updateNames", 10, Arrays.<Object> asList("Same", 1));
+
+		assertEquals("Same", column(1, "first_name"));
+		assertEquals("Same", column(1, "last_name"));
+	}
+
+	public void testMultiColumnParameterSpansItsPlaceholders()
+			throws Exception {
+		insertNote(1, 1, "a");
+		insertNote(1, 2, "b");
+		insertNote(2, 1, "c");
+
+		// the key is bound to usr_id = ? and note_no = ?
+		final int[] counts = executeBatch("TUsrNote.updateText", 10,
+				Arrays.<Object> asList("x", new TUsrNote.Key(1, 2)),
+				Arrays.<Object> asList("y", new TUsrNote.Key(2, 1)));
+
+		assertEquals(1, counts[0]);
+		assertEquals(1, counts[1]);
+		assertEquals("a", noteText(1, 1));
+		assertEquals("x", noteText(1, 2));
+		assertEquals("y", noteText(2, 1));
+	}
+
+	public void testNonPositionalParameterIsRejected() {
+		// the timestamp version of update versioned is a parameter of its own
+		try {
+			genericDAO.executeBatchByNamedQuery(
+					"TUsrNote.updateTextVersioned",
+					Collections.singletonList(Arrays.<Object> asList("x",
+							new TUsrNote.Key(1, 1))), 10);
+			fail("the version seed cannot be bound from a parameter row");
+		} catch (InvalidDataAccessApiUsageException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	public void testNativeNamedQueryBindsPlainParameters() throws Exception {
+		insertUser(1);
+		insertUser(2);
+
+		executeBatch("TUsr.updateLastNameNative", 10,
+				Arrays.<Object> asList("Native", 2));
+
+		assertEquals("Last1", column(1, "last_name"));
+		assertEquals("Native", column(2, "last_name"));
+		assertEquals("1", column(2, "version"));
+	}
+
+	public void testGetAllKeepsInputOrderAndSkipsMissingIds()
+			throws Exception {
+		for (int id = 1; id <= 10; id++) {
+			insertUser(id);
+		}
+		genericDAO.setInListChunkSize(8);
+		statements.clear();
+
+		// 11 distinct ids: a chunk of 8 and a last chunk of 3
+		final List<TUsr> users = genericDAO.getAll(TUsr.class, Arrays.asList(
+				7, 3, 42, 3, null, 1, 10, 2, 99, 5, 4, 6, 8));
+
+		assertEquals(Arrays.asList(7, 3, 3, 1, 10, 2, 5, 4, 6, 8), ids(users));
+		assertSame(users.get(1), users.get(2));
+		// the last chunk is padded to the next power of two with its last id
+		assertEquals(Arrays.asList(Arrays.<Object> asList(7, 3, 42, 1, 10, 2,
+				99, 5), Arrays.<Object> asList(4, 6, 8, 8)), inLists());
+	}
+
+	public void testGetAllChunksAtInListChunkSize() throws Exception {
+		for (int id = 1; id <= 10; id++) {
+			insertUser(id);
+		}
+		genericDAO.setInListChunkSize(6);
+		statements.clear();
+
+		// 6 is no power of two: a full chunk is not padded beyond it
+		final List<TUsr> users = genericDAO.getAll(TUsr.class,
+				Arrays.asList(9, 8, 7, 6, 5, 4, 3, 2, 1));
+
+		assertEquals(Arrays.asList(9, 8, 7, 6, 5, 4, 3, 2, 1), ids(users));
+		assertEquals(Arrays.asList(Arrays.<Object> asList(9, 8, 7, 6, 5, 4),
+				Arrays.<Object> asList(3, 2, 1, 1)), inLists());
+	}
+
+	public void testGetAllTakesManagedEntitiesFromThePersistenceContext()
+			throws Exception {
+		insertUser(1);
+		insertUser(2);
+		insertUser(3);
+
+		transactionTemplate.execute(new TransactionCallback<Object>() {
+			public Object doInTransaction(final TransactionStatus status) {
+				final TUsr managed = genericDAO.get(TUsr.class, 2);
+				statements.clear();
+
+				final List<TUsr> users = genericDAO.getAll(TUsr.class,
+						Arrays.asList(1, 2, 3));
+
+				assertEquals(Arrays.asList(1, 2, 3), ids(users));
+				assertSame(managed, users.get(1));
+				assertEquals(Collections.singletonList(Arrays.<Object> asList(
+						1, 3)), inLists());
+				return null;
+			}
+		});
+	}
+
+	public void testGetAllTakesCachedEntitiesFromTheSecondLevelCache()
+			throws Exception {
+		for (int id = 1; id <= 4; id++) {
+			insertUser(id);
+		}
+		// loads 1 to 3 into the entity cache
+		genericDAO.getAll(TUsr.class, Arrays.asList(1, 2, 3));
+		assertTrue(entityManagerFactory.getObject().getCache()
+				.contains(TUsr.class, 2));
+		statements.clear();
+
+		final List<TUsr> users = genericDAO.getAll(TUsr.class,
+				Arrays.asList(4, 3, 2, 1));
+
+		assertEquals(Arrays.asList(4, 3, 2, 1), ids(users));
+		// only the uncached id reaches the database
+		assertEquals(1, statements.size());
+		assertEquals(Collections.singletonList(Arrays.<Object> asList(4)),
+				inLists());
+	}
+
+	public void testGetAllWithOnlyMissingIdsIsEmpty() {
+		genericDAO.setInListChunkSize(8);
+		assertTrue(genericDAO.getAll(TUsr.class, Arrays.asList(1, 2, 2))
+				.isEmpty());
+		assertTrue(genericDAO.getAll(TUsr.class,
+				Collections.<Integer> emptyList()).isEmpty());
+	}
+
+	public void testReplicaReadsDoNotFillTheQueryCache() throws Exception {
+		insertUser(1);
+		genericDAO.setCacheableQueries(Collections
+				.singleton("TUsr.findByEmail"));
+		final List<Object> params = Collections
+				.<Object> singletonList("user1@test");
+
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		try {
+			genericDAO.findEntitiesByNamedQuery("TUsr.findByEmail", params);
+			genericDAO.findEntitiesByNamedQuery("TUsr.findByEmail", params);
+			assertEquals(2, statements.size());
+
+			// a result read on the primary is cached and served to replica reads
+			DatabaseContextHolder.setContext(null);
+			genericDAO.findEntitiesByNamedQuery("TUsr.findByEmail", params);
+			assertEquals(3, statements.size());
+			DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+			final List<TUsr> users = genericDAO.findEntitiesByNamedQuery(
+					"TUsr.findByEmail", params);
+			assertEquals(Arrays.asList(1), ids(users));
+			assertEquals(3, statements.size());
+		} finally {
+			DatabaseContextHolder.clear();
+		}
+	}
+
+	private int[] executeBatch(final String queryName, final int chunkSize,
+			final List<Object>... rows) {
+		return transactionTemplate.execute(new TransactionCallback<int[]>() {
+			public int[] doInTransaction(final TransactionStatus status) {
+				return genericDAO.executeBatchByNamedQuery(queryName,
+						Arrays.asList(rows), chunkSize);
+			}
+		});
+	}
+
+	private void insertUser(final int id) throws SQLException {
+		final PreparedStatement ps = keepAlive
+				.prepareStatement("insert into t_usr (usr_id, usr_name, email,"
+						+ " password, first_name, last_name, version)"
+						+ " values (?, ?, ?, 'secret', ?, ?, 0)");
+		try {
+			ps.setInt(1, id);
+			ps.setString(2, "user" + id);
+			ps.setString(3, "user" + id + "@test");
+			ps.setString(4, "First" + id);
+			ps.setString(5, "Last" + id);
+			ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
+
+	private void insertNote(final int usrId, final int noteNo,
+			final String text) throws SQLException {
+		final PreparedStatement ps = keepAlive
+				.prepareStatement("insert into t_usr_note (usr_id, note_no,"
+						+ " note_text, updated_at)"
+						+ " values (?, ?, ?, current_timestamp)");
+		try {
+			ps.setInt(1, usrId);
+			ps.setInt(2, noteNo);
+			ps.setString(3, text);
+			ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
+
+	private String column(final int usrId, final String column)
+			throws SQLException {
+		return queryString("select " + column + " from t_usr where usr_id = "
+				+ usrId);
+	}
+
+	private String noteText(final int usrId, final int noteNo)
+			throws SQLException {
+		return queryString("select note_text from t_usr_note where usr_id = "
+				+ usrId + " and note_no = " + noteNo);
+	}
+
+	private String queryString(final String sql) throws SQLException {
+		final Statement st = keepAlive.createStatement();
+		try {
+			final ResultSet rs = st.executeQuery(sql);
+			assertTrue(rs.next());
+			return rs.getString(1);
+		} finally {
+			st.close();
+		}
+	}
+
+	private static List<Integer> ids(final List<TUsr> users) {
+		final List<Integer> ids = new ArrayList<Integer>();
+		for (TUsr user : users) {
+			ids.add(user.getUsrId());
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the parameters bound to every IN list statement, in order
+	 */
+	private List<List<Object>> inLists() {
+		final List<List<Object>> inLists = new ArrayList<List<Object>>();
+		synchronized (statements) {
+			for (RecordedStatement statement : statements) {
+				if (statement.sql.contains(" in (")) {
+					inLists.add(new ArrayList<Object>(
+							statement.parameters.values()));
+				}
+			}
+		}
+		return inLists;
+	}
+
+	/**
+	 * A statement prepared by Hibernate and the parameters bound to it.
+	 */
+	private static final class RecordedStatement {
+
+		final String sql;
+
+		final Map<Integer, Object> parameters = new TreeMap<Integer, Object>();
+
+		RecordedStatement(final String sql) {
+			this.sql = sql;
+		}
+	}
+
+	/**
+	 * Records every statement Hibernate prepares.
+	 */
+	private static final class RecordingDataSource extends AbstractDataSource {
+
+		private final JdbcDataSource target;
+
+		private final List<RecordedStatement> statements;
+
+		RecordingDataSource(final JdbcDataSource target,
+				final List<RecordedStatement> statements) {
+			this.target = target;
+			this.statements = statements;
+		}
+
+		public Connection getConnection() throws SQLException {
+			return record(target.getConnection());
+		}
+
+		public Connection getConnection(final String username,
+				final String password) throws SQLException {
+			return record(target.getConnection(username, password));
+		}
+
+		private Connection record(final Connection connection) {
+			return (Connection) Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class },
+					new InvocationHandler() {
+						public Object invoke(final Object proxy,
+								final Method method, final Object[] args)
+								throws Throwable {
+							final Object result = delegate(connection, method,
+									args);
+							if ("prepareStatement".equals(method.getName())) {
+								final RecordedStatement statement = new RecordedStatement(
+										(String) args[0]);
+								statements.add(statement);
+								return record((PreparedStatement) result,
+										statement);
+							}
+							return result;
+						}
+					});
+		}
+
+		private static PreparedStatement record(final PreparedStatement ps,
+				final RecordedStatement statement) {
+			return (PreparedStatement) Proxy.newProxyInstance(
+					PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class },
+					new InvocationHandler() {
+						public Object invoke(final Object proxy,
+								final Method method, final Object[] args)
+								throws Throwable {
+							if (method.getName().startsWith("set")
+									&& args != null && args.length >= 2
+									&& args[0] instanceof Integer) {
+								statement.parameters.put((Integer) args[0],
+										args[1]);
+							}
+							return delegate(ps, method,
+									args);
+						}
+					});
+		}
+
+		private static Object delegate(final Object target, final Method method,
+				final Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+
+}
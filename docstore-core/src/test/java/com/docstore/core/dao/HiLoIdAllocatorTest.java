@@ -0,0 +1,163 @@
+package com.docstore.core.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+/**
+ * Unit test for the block allocation of hi/lo ids on an in-memory key table.
+ */
+public class HiLoIdAllocatorTest extends TestCase {
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private static final Executor DIRECT = new Executor() {
+		public void execute(final Runnable command) {
+			command.run();
+		}
+	};
+
+	private JdbcDataSource dataSource;
+
+	private Connection keepAlive;
+
+	@Override
+	protected void setUp() throws Exception {
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:hilo" + DATABASES.incrementAndGet()
+				+ ";MODE=MySQL");
+		dataSource.setUser("sa");
+		keepAlive = dataSource.getConnection();
+		final Statement st = keepAlive.createStatement();
+		st.execute("create table t_unique_key (key_name varchar(100) not null"
+				+ " primary key, key_value int not null)");
+		st.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		keepAlive.close();
+	}
+
+	public void testBlocksFollowTheHiValue() throws Exception {
+		final HiLoIdAllocator allocator = newAllocator(4, null);
+		for (long expected = 1; expected <= 4; expected++) {
+			assertEquals(expected, allocator.nextId());
+		}
+		assertEquals(1, hi());
+		assertEquals(5, allocator.nextId());
+		assertEquals(2, hi());
+		for (long expected = 6; expected <= 9; expected++) {
+			assertEquals(expected, allocator.nextId());
+		}
+		assertEquals(10, allocator.nextId());
+		assertEquals(3, hi());
+	}
+
+	public void testPrefetchFetchesTheNextBlockAhead() throws Exception {
+		final HiLoIdAllocator allocator = newAllocator(7, DIRECT);
+		for (long expected = 1; expected <= 4; expected++) {
+			assertEquals(expected, allocator.nextId());
+		}
+		assertEquals(1, hi());
+		// a quarter of the block left
+		assertEquals(5, allocator.nextId());
+		assertEquals(2, hi());
+		for (long expected = 6; expected <= 12; expected++) {
+			assertEquals(expected, allocator.nextId());
+		}
+		// the block of hi 1 came from the prefetch
+		assertEquals(2, hi());
+		assertEquals(13, allocator.nextId());
+		assertEquals(3, hi());
+	}
+
+	public void testIdsAreUniqueAcrossThreadsAndAllocators()
+			throws Exception {
+		// two allocators on the same row stand in for two JVMs
+		final ExecutorService prefetch = Executors.newFixedThreadPool(2);
+		final HiLoIdAllocator[] allocators = { newAllocator(9, prefetch),
+				newAllocator(9, prefetch) };
+		final int threads = 8;
+		final int idsPerThread = 500;
+		final Set<Long> ids = Collections
+				.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Integer>> duplicates = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < threads; t++) {
+				final HiLoIdAllocator allocator = allocators[t % 2];
+				duplicates.add(workers.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						start.await();
+						int duplicated = 0;
+						for (int i = 0; i < idsPerThread; i++) {
+							if (!ids.add(allocator.nextId())) {
+								duplicated++;
+							}
+						}
+						return duplicated;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Integer> duplicated : duplicates) {
+				assertEquals(0, duplicated.get().intValue());
+			}
+		} finally {
+			workers.shutdown();
+			prefetch.shutdown();
+		}
+		assertEquals(threads * idsPerThread, ids.size());
+		for (Long id : ids) {
+			assertTrue(id > 0 && id < hi() * 10);
+		}
+	}
+
+	public void testNegativeMaxLoIsRejected() {
+		try {
+			newAllocator(-1, null);
+			fail("maxLo must not be negative");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private HiLoIdAllocator newAllocator(final int maxLo,
+			final Executor prefetchExecutor) {
+		return new HiLoIdAllocator(dataSource, "t_unique_key", "key_value",
+				"key_name", "t_usr", maxLo, prefetchExecutor);
+	}
+
+	private long hi() throws SQLException {
+		final Statement st = keepAlive.createStatement();
+		try {
+			final ResultSet rs = st
+					.executeQuery("select key_value from t_unique_key"
+							+ " where key_name = 't_usr'");
+			assertTrue(rs.next());
+			return rs.getLong(1);
+		} finally {
+			st.close();
+		}
+	}
+
+}
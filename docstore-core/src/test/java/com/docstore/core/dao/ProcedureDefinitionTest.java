@@ -0,0 +1,33 @@
+package com.docstore.core.dao;
+
+import java.sql.Types;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the stored procedure signatures.
+ */
+public class ProcedureDefinitionTest extends TestCase {
+
+	public void testCallStringHasOnePlaceholderPerParameter() {
+		final ProcedureDefinition definition = ProcedureDefinition
+				.named("P_Test").in(Types.BIGINT).inOut(Types.VARCHAR)
+				.out(Types.INTEGER);
+		assertEquals("{ call P_Test(?,?,?) }", definition.getCallString());
+		assertEquals("{ call P_None() }", ProcedureDefinition.named("P_None")
+				.getCallString());
+	}
+
+	public void testArgumentsAreInAndInOutParameters() {
+		final ProcedureDefinition in = ProcedureDefinition.named("P_In")
+				.in(Types.BIGINT).in(Types.VARCHAR);
+		assertEquals(2, in.getArgumentCount());
+		assertFalse(in.hasOutParameters());
+
+		final ProcedureDefinition out = ProcedureDefinition.named("P_Out")
+				.in(Types.BIGINT).inOut(Types.VARCHAR).out(Types.INTEGER);
+		assertEquals(2, out.getArgumentCount());
+		assertTrue(out.hasOutParameters());
+	}
+
+}
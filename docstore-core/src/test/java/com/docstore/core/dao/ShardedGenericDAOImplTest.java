@@ -0,0 +1,34 @@
+package com.docstore.core.dao;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the merge of sorted shard results.
+ */
+public class ShardedGenericDAOImplTest extends TestCase {
+
+	@SuppressWarnings("unchecked")
+	public void testMergeKeepsOrderAcrossShards() {
+		final Comparator<Integer> order = new Comparator<Integer>() {
+			public int compare(final Integer a, final Integer b) {
+				return a.compareTo(b);
+			}
+		};
+		final List<List<Integer>> shards = Arrays.asList(
+				Arrays.asList(1, 4, 7), Collections.<Integer> emptyList(),
+				null, Arrays.asList(2, 3, 8, 9), Arrays.asList(5, 6));
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9),
+				ShardedGenericDAOImpl.merge(shards, order, 0, -1));
+		assertEquals(Arrays.asList(4, 5, 6),
+				ShardedGenericDAOImpl.merge(shards, order, 3, 3));
+		assertEquals(Arrays.asList(8, 9),
+				ShardedGenericDAOImpl.merge(shards, order, 7, 5));
+		assertTrue(ShardedGenericDAOImpl.merge(shards, order, 9, 5).isEmpty());
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.docstore.core.datasource;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Unit test for the routing state of a thread and its hand-over to worker
+ * threads.
+ */
+public class DatabaseContextHolderTest extends TestCase {
+
+	@Override
+	protected void tearDown() throws Exception {
+		DatabaseContextHolder.clear();
+	}
+
+	public void testSnapshotCarriesTheStateToAWorkerThread() throws Exception {
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		DatabaseContextHolder.markWrite();
+		DatabaseContextHolder.pinToPrimary();
+		final long lastWrite = DatabaseContextHolder.getLastWriteMillis();
+		final Object snapshot = DatabaseContextHolder.snapshot();
+
+		final AtomicReference<String> seen = new AtomicReference<String>();
+		final Thread worker = new Thread(new Runnable() {
+			public void run() {
+				final Object workerState = DatabaseContextHolder.snapshot();
+				DatabaseContextHolder.restore(snapshot);
+				try {
+					seen.set(state());
+				} finally {
+					DatabaseContextHolder.restore(workerState);
+				}
+			}
+		});
+		worker.start();
+		worker.join();
+
+		assertEquals("REPLICA " + lastWrite + " true", seen.get());
+	}
+
+	public void testRestoreBringsBackTheStateOfTheWorker() {
+		DatabaseContextHolder.markWrite();
+		DatabaseContextHolder.pinToPrimary();
+		final Object callerState = DatabaseContextHolder.snapshot();
+
+		// the same thread standing in for a worker
+		DatabaseContextHolder.clear();
+		DatabaseContextHolder.setContext(DatabaseContext.PRIMARY);
+		final Object workerState = DatabaseContextHolder.snapshot();
+		DatabaseContextHolder.restore(callerState);
+		assertNull(DatabaseContextHolder.getContext());
+		assertTrue(DatabaseContextHolder.isPinnedToPrimary());
+
+		DatabaseContextHolder.restore(workerState);
+		assertEquals("PRIMARY 0 false", state());
+	}
+
+	public void testSnapshotIsNotChangedByTheThreadItIsRestoredOn() {
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		final Object snapshot = DatabaseContextHolder.snapshot();
+
+		DatabaseContextHolder.restore(snapshot);
+		DatabaseContextHolder.setContext(DatabaseContext.PRIMARY);
+		DatabaseContextHolder.markWrite();
+		DatabaseContextHolder.pinToPrimary();
+
+		// a second worker gets the state of the caller, not of the first one
+		DatabaseContextHolder.restore(snapshot);
+		assertEquals("REPLICA 0 false", state());
+	}
+
+	public void testRestoreNullClearsTheThread() {
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		DatabaseContextHolder.markWrite();
+		DatabaseContextHolder.pinToPrimary();
+
+		DatabaseContextHolder.restore(null);
+		assertEquals("null 0 false", state());
+	}
+
+	public void testContextDecidesBeforeTheTransaction() {
+		assertFalse(DatabaseContextHolder.isReplicaRead());
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		assertTrue(DatabaseContextHolder.isReplicaRead());
+
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		try {
+			DatabaseContextHolder.setContext(null);
+			assertFalse(DatabaseContextHolder.isReplicaRead());
+			TransactionSynchronizationManager
+					.setCurrentTransactionReadOnly(true);
+			assertTrue(DatabaseContextHolder.isReplicaRead());
+			DatabaseContextHolder.setContext(DatabaseContext.PRIMARY);
+			assertFalse(DatabaseContextHolder.isReplicaRead());
+		} finally {
+			TransactionSynchronizationManager
+					.setCurrentTransactionReadOnly(false);
+			TransactionSynchronizationManager.setActualTransactionActive(false);
+		}
+	}
+
+	private static String state() {
+		return DatabaseContextHolder.getContext() + " "
+				+ DatabaseContextHolder.getLastWriteMillis() + " "
+				+ DatabaseContextHolder.isPinnedToPrimary();
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.docstore.core.datasource;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.docstore.core.dao.GenericDAO;
+
+/**
+ * Unit test for the read/write decision taken on GenericDAO calls.
+ */
+public class DatabaseRoutingInterceptorTest extends TestCase {
+
+	private final DatabaseRoutingInterceptor interceptor = new DatabaseRoutingInterceptor();
+
+	@Override
+	protected void tearDown() throws Exception {
+		DatabaseContextHolder.clear();
+	}
+
+	public void testReadOutsideATransactionGoesToAReplica() throws Throwable {
+		for (String method : new String[] { "findEntitiesByNamedQuery",
+				"get", "getAll", "loadAll", "countEntitiesNamedQuery",
+				"streamAll" }) {
+			final Invocation invocation = invoke(method);
+			assertEquals(method, DatabaseContext.REPLICA, invocation.context);
+			assertNull(method, DatabaseContextHolder.getContext());
+			assertEquals(method, 0, invocation.lastWriteMillis);
+		}
+	}
+
+	public void testReadInsideATransactionIsLeftToTheTransaction()
+			throws Throwable {
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		try {
+			assertNull(invoke("findEntitiesByNamedQuery").context);
+		} finally {
+			TransactionSynchronizationManager.setActualTransactionActive(false);
+		}
+	}
+
+	public void testReadKeepsTheContextOfTheCaller() throws Throwable {
+		DatabaseContextHolder.setContext(DatabaseContext.PRIMARY);
+		assertEquals(DatabaseContext.PRIMARY, invoke("get").context);
+		assertEquals(DatabaseContext.PRIMARY,
+				DatabaseContextHolder.getContext());
+	}
+
+	public void testWriteIsMarkedBeforeItRuns() throws Throwable {
+		for (String method : new String[] { "store", "update", "remove",
+				"bulkUpdate", "updateEntitiesNamedQuery",
+				"executeUpdateOnNativeQuery", "loadBulkKeys" }) {
+			DatabaseContextHolder.clear();
+			final Invocation invocation = invoke(method);
+			assertNull(method, invocation.context);
+			assertTrue(method, invocation.lastWriteMillis > 0);
+		}
+	}
+
+	public void testNeutralMethodsNeitherReadNorWrite() throws Throwable {
+		for (String method : new String[] { "evict", "evictAll",
+				"invalidate", "jpaSession", "registerProcedure",
+				"switchDatabaseContext" }) {
+			final Invocation invocation = invoke(method);
+			assertNull(method, invocation.context);
+			assertEquals(method, 0, invocation.lastWriteMillis);
+		}
+	}
+
+	private Invocation invoke(final String methodName) throws Throwable {
+		final Invocation invocation = new Invocation(methodName);
+		assertEquals(methodName, interceptor.invoke(invocation));
+		return invocation;
+	}
+
+	/**
+	 * A call of the GenericDAO method of the given name that records the
+	 * routing state it runs with.
+	 */
+	private static final class Invocation implements MethodInvocation {
+
+		private final Method method;
+
+		private DatabaseContext context;
+
+		private long lastWriteMillis;
+
+		Invocation(final String methodName) {
+			this.method = find(methodName);
+		}
+
+		private static Method find(final String methodName) {
+			for (Method method : GenericDAO.class.getMethods()) {
+				if (method.getName().equals(methodName)) {
+					return method;
+				}
+			}
+			throw new IllegalArgumentException("No GenericDAO." + methodName);
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		public Object[] getArguments() {
+			return new Object[0];
+		}
+
+		public Object proceed() {
+			context = DatabaseContextHolder.getContext();
+			lastWriteMillis = DatabaseContextHolder.getLastWriteMillis();
+			return method.getName();
+		}
+
+		public Object getThis() {
+			return null;
+		}
+
+		public AccessibleObject getStaticPart() {
+			return method;
+		}
+	}
+
+}
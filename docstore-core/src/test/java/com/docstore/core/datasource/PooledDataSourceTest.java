@@ -0,0 +1,256 @@
+package com.docstore.core.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+/**
+ * Unit test for the connection pool on an in-memory database.
+ */
+public class PooledDataSourceTest extends TestCase {
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private static final long DEADLINE_MILLIS = 5000;
+
+	private TargetDataSource target;
+
+	private Connection keepAlive;
+
+	private PooledDataSource pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		final JdbcDataSource h2 = new JdbcDataSource();
+		h2.setURL("jdbc:h2:mem:pool" + DATABASES.incrementAndGet());
+		h2.setUser("sa");
+		keepAlive = h2.getConnection();
+		target = new TargetDataSource(h2);
+		pool = new PooledDataSource();
+		pool.setTargetDataSource(target);
+		pool.setJmxEnabled(false);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		pool.close();
+		keepAlive.close();
+	}
+
+	public void testGetConnectionTimesOutWhenThePoolIsExhausted()
+			throws Exception {
+		pool.setMinPoolSize(0);
+		pool.setMaxPoolSize(1);
+		pool.setMaxWaitMillis(100);
+		pool.afterPropertiesSet();
+
+		final Connection borrowed = pool.getConnection();
+		try {
+			pool.getConnection();
+			fail("the only connection is borrowed");
+		} catch (SQLException e) {
+			assertEquals("08001", e.getSQLState());
+		}
+		assertEquals(1, pool.getTimeoutCount());
+		assertEquals(1, pool.getActiveConnections());
+
+		borrowed.close();
+		pool.getConnection().close();
+		assertEquals(1, pool.getTimeoutCount());
+		assertEquals(2, pool.getBorrowCount());
+		assertEquals(1, pool.getCreatedCount());
+	}
+
+	public void testFailedCreateReleasesItsPermit() throws Exception {
+		pool.setMinPoolSize(0);
+		pool.setMaxPoolSize(1);
+		pool.setMaxWaitMillis(100);
+		pool.afterPropertiesSet();
+
+		target.failures.set(3);
+		for (int i = 0; i < 3; i++) {
+			try {
+				pool.getConnection();
+				fail("the target refuses connections");
+			} catch (SQLException e) {
+				// a leaked permit would turn the next attempt into a timeout
+				assertEquals(TargetDataSource.REFUSED, e.getMessage());
+			}
+		}
+		assertEquals(0, pool.getTimeoutCount());
+		assertEquals(0, pool.getActiveConnections());
+
+		final Connection connection = pool.getConnection();
+		assertFalse(connection.isClosed());
+		connection.close();
+		assertEquals(1, pool.getCreatedCount());
+	}
+
+	public void testGiveBackRestoresStateAndClosesLeftOpenStatements()
+			throws Exception {
+		pool.setMinPoolSize(0);
+		pool.setMaxPoolSize(1);
+		pool.afterPropertiesSet();
+
+		Connection connection = pool.getConnection();
+		final int isolation = connection.getTransactionIsolation();
+		final String catalog = connection.getCatalog();
+		final int holdability = connection.getHoldability();
+		final int otherIsolation = isolation == Connection.TRANSACTION_SERIALIZABLE
+				? Connection.TRANSACTION_READ_COMMITTED
+				: Connection.TRANSACTION_SERIALIZABLE;
+		final int otherHoldability = holdability == ResultSet.HOLD_CURSORS_OVER_COMMIT
+				? ResultSet.CLOSE_CURSORS_AT_COMMIT
+				: ResultSet.HOLD_CURSORS_OVER_COMMIT;
+
+		connection.setAutoCommit(false);
+		connection.setReadOnly(true);
+		connection.setTransactionIsolation(otherIsolation);
+		connection.setCatalog("OTHER");
+		connection.setHoldability(otherHoldability);
+		final Statement statement = connection.createStatement();
+		final PreparedStatement prepared = connection
+				.prepareStatement("select 1");
+		prepared.executeQuery();
+		connection.close();
+
+		assertTrue(statement.isClosed());
+		assertTrue(prepared.isClosed());
+
+		// the pool holds one physical connection, so this is the same one
+		connection = pool.getConnection();
+		assertEquals(1, pool.getCreatedCount());
+		assertTrue(connection.getAutoCommit());
+		assertFalse(connection.isReadOnly());
+		assertEquals(isolation, connection.getTransactionIsolation());
+		assertEquals(catalog, connection.getCatalog());
+		assertEquals(holdability, connection.getHoldability());
+		connection.close();
+	}
+
+	public void testIdleConnectionsAreEvictedDownToMinPoolSize()
+			throws Exception {
+		pool.setMinPoolSize(1);
+		pool.setMaxPoolSize(4);
+		pool.setIdleTimeoutMillis(100);
+		pool.setHousekeepingIntervalMillis(20);
+		pool.afterPropertiesSet();
+
+		final Connection[] connections = new Connection[3];
+		for (int i = 0; i < connections.length; i++) {
+			connections[i] = pool.getConnection();
+		}
+		assertEquals(3, pool.getCreatedCount());
+		for (Connection connection : connections) {
+			connection.close();
+		}
+
+		final long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+		while (pool.getDestroyedCount() < 2
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(2, pool.getDestroyedCount());
+		Thread.sleep(200);
+		assertEquals(1, pool.getIdleConnections());
+		assertEquals(1, pool.getTotalConnections());
+		assertEquals(2, pool.getDestroyedCount());
+	}
+
+	public void testLeakedConnectionIsReportedOnce() throws Exception {
+		pool.setMinPoolSize(0);
+		pool.setMaxPoolSize(2);
+		pool.setLeakDetectionThresholdMillis(50);
+		pool.setHousekeepingIntervalMillis(20);
+		pool.afterPropertiesSet();
+
+		final Connection leaked = pool.getConnection();
+		final long deadline = System.currentTimeMillis() + DEADLINE_MILLIS;
+		while (pool.getLeakCount() == 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, pool.getLeakCount());
+		Thread.sleep(200);
+		assertEquals(1, pool.getLeakCount());
+
+		// a connection given back in time is not a leak
+		pool.getConnection().close();
+		leaked.close();
+		Thread.sleep(200);
+		assertEquals(1, pool.getLeakCount());
+	}
+
+	/**
+	 * Opens connections on H2 and can be told to refuse them. H2 ignores
+	 * setCatalog, so the catalog is kept on a proxy of each connection.
+	 */
+	private static final class TargetDataSource extends AbstractDataSource {
+
+		static final String REFUSED = "Connection refused";
+
+		final AtomicInteger failures = new AtomicInteger();
+
+		private final JdbcDataSource h2;
+
+		TargetDataSource(final JdbcDataSource h2) {
+			this.h2 = h2;
+		}
+
+		public Connection getConnection() throws SQLException {
+			if (failures.getAndDecrement() > 0) {
+				throw new SQLException(REFUSED, "08001");
+			}
+			final Connection connection = h2.getConnection();
+			return (Connection) Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class },
+					new CatalogHandler(connection));
+		}
+
+		public Connection getConnection(final String username,
+				final String password) throws SQLException {
+			return h2.getConnection(username, password);
+		}
+	}
+
+	private static final class CatalogHandler implements InvocationHandler {
+
+		private final Connection connection;
+
+		private String catalog;
+
+		CatalogHandler(final Connection connection) throws SQLException {
+			this.connection = connection;
+			this.catalog = connection.getCatalog();
+		}
+
+		public Object invoke(final Object proxy, final Method method,
+				final Object[] args) throws Throwable {
+			if ("getCatalog".equals(method.getName())) {
+				return catalog;
+			} else if ("setCatalog".equals(method.getName())) {
+				catalog = (String) args[0];
+				return null;
+			}
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+
+}
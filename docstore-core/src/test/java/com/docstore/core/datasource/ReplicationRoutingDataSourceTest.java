@@ -0,0 +1,270 @@
+package com.docstore.core.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Unit test for the routing of connections between a primary and two
+ * replicas, each an in-memory database whose replication status can be set.
+ */
+public class ReplicationRoutingDataSourceTest extends TestCase {
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private TargetDataSource primary;
+
+	private TargetDataSource replica0;
+
+	private TargetDataSource replica1;
+
+	private ReplicationRoutingDataSource router;
+
+	@Override
+	protected void setUp() throws Exception {
+		primary = new TargetDataSource("primary");
+		replica0 = new TargetDataSource("replica0");
+		replica1 = new TargetDataSource("replica1");
+		router = new ReplicationRoutingDataSource();
+		router.setPrimaryDataSource(primary);
+		router.setReplicaDataSources(Arrays.<DataSource> asList(replica0,
+				replica1));
+		router.setLagQuery("select lag as Seconds_Behind_Master"
+				+ " from replica_status");
+		// the lag is checked by the tests
+		router.setLagCheckIntervalMillis(0);
+		router.afterPropertiesSet();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DatabaseContextHolder.clear();
+		router.destroy();
+		primary.close();
+		replica0.close();
+		replica1.close();
+	}
+
+	public void testUnmarkedCallsGoToThePrimary() throws Exception {
+		assertEquals("primary", route());
+		DatabaseContextHolder.setContext(DatabaseContext.PRIMARY);
+		assertEquals("primary", route());
+	}
+
+	public void testReadsGoToTheReplicasRoundRobin() throws Exception {
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		assertEquals(
+				Arrays.asList("replica0", "replica1", "replica0", "replica1"),
+				route(4));
+	}
+
+	public void testReadOnlyTransactionReadsFromAReplica() throws Exception {
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		try {
+			assertEquals("replica0", route());
+			// the context of the call wins over the transaction
+			DatabaseContextHolder.setContext(DatabaseContext.PRIMARY);
+			assertEquals("primary", route());
+			DatabaseContextHolder.setContext(null);
+			TransactionSynchronizationManager
+					.setCurrentTransactionReadOnly(false);
+			assertEquals("primary", route());
+		} finally {
+			TransactionSynchronizationManager
+					.setCurrentTransactionReadOnly(false);
+			TransactionSynchronizationManager.setActualTransactionActive(false);
+		}
+	}
+
+	public void testLaggingReplicaIsTakenOutOfRotation() throws Exception {
+		router.setMaxLagSeconds(5);
+		replica0.setLag(Long.valueOf(30));
+		router.checkReplicas();
+
+		assertEquals(1, router.getHealthyReplicaCount());
+		assertTrue(Arrays.equals(new long[] { 30, 0 },
+				router.getReplicaLagSeconds()));
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		assertEquals(Arrays.asList("replica1", "replica1", "replica1"),
+				route(3));
+
+		// caught up to the limit
+		replica0.setLag(Long.valueOf(5));
+		router.checkReplicas();
+		assertEquals(2, router.getHealthyReplicaCount());
+		assertTrue(route(2).contains("replica0"));
+	}
+
+	public void testStoppedOrUnreachableReplicasFallBackToThePrimary()
+			throws Exception {
+		replica0.setLag(null);
+		replica1.refusing = true;
+		router.checkReplicas();
+
+		assertEquals(0, router.getHealthyReplicaCount());
+		assertTrue(Arrays.equals(new long[] { -1, -1 },
+				router.getReplicaLagSeconds()));
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		assertEquals(Arrays.asList("primary", "primary"), route(2));
+
+		// an instance without replication status is up to date
+		replica0.clearStatus();
+		router.checkReplicas();
+		assertEquals(1, router.getHealthyReplicaCount());
+		assertEquals(Arrays.asList("replica0", "replica0"), route(2));
+	}
+
+	public void testRefusedReplicaConnectionFallsBackToThePrimary()
+			throws Exception {
+		replica0.refusing = true;
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+
+		assertEquals("primary", route());
+		assertEquals(1, router.getHealthyReplicaCount());
+		assertEquals(Arrays.asList("replica1", "replica1"), route(2));
+
+		// the next lag check puts it back
+		replica0.refusing = false;
+		router.checkReplicas();
+		assertEquals(2, router.getHealthyReplicaCount());
+	}
+
+	public void testThreadThatWroteReadsFromThePrimary() throws Exception {
+		router.setPinAfterWriteMillis(100);
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		DatabaseContextHolder.markWrite();
+		assertEquals("primary", route());
+
+		Thread.sleep(150);
+		assertEquals("replica0", route());
+
+		// pinned until the request clears the thread
+		DatabaseContextHolder.pinToPrimary();
+		Thread.sleep(150);
+		assertEquals("primary", route());
+		DatabaseContextHolder.clear();
+		DatabaseContextHolder.setContext(DatabaseContext.REPLICA);
+		assertEquals("replica1", route());
+	}
+
+	/**
+	 * @return the name of the target the next connection comes from
+	 */
+	private String route() throws SQLException {
+		final Connection connection = router.getConnection();
+		try {
+			return connection.toString();
+		} finally {
+			connection.close();
+		}
+	}
+
+	private List<String> route(final int count) throws SQLException {
+		final List<String> targets = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			targets.add(route());
+		}
+		return targets;
+	}
+
+	/**
+	 * Opens connections named after the target on their own H2 database,
+	 * whose replica_status table answers the lag query, and can be told to
+	 * refuse them.
+	 */
+	private static final class TargetDataSource extends AbstractDataSource {
+
+		volatile boolean refusing;
+
+		private final String name;
+
+		private final JdbcDataSource h2 = new JdbcDataSource();
+
+		private final Connection keepAlive;
+
+		TargetDataSource(final String name) throws SQLException {
+			this.name = name;
+			h2.setURL("jdbc:h2:mem:routing" + DATABASES.incrementAndGet());
+			h2.setUser("sa");
+			keepAlive = h2.getConnection();
+			keepAlive.createStatement().execute(
+					"create table replica_status (lag bigint)");
+			setLag(Long.valueOf(0));
+		}
+
+		/**
+		 * @param lag
+		 *            seconds behind the primary, null if replication is
+		 *            stopped
+		 */
+		void setLag(final Long lag) throws SQLException {
+			clearStatus();
+			final PreparedStatement ps = keepAlive
+					.prepareStatement("insert into replica_status values (?)");
+			try {
+				ps.setObject(1, lag);
+				ps.executeUpdate();
+			} finally {
+				ps.close();
+			}
+		}
+
+		/**
+		 * Answer the lag query like an instance that is not a replica.
+		 */
+		void clearStatus() throws SQLException {
+			keepAlive.createStatement().execute("delete from replica_status");
+		}
+
+		void close() throws SQLException {
+			keepAlive.close();
+		}
+
+		public Connection getConnection() throws SQLException {
+			if (refusing) {
+				throw new SQLException("Connection refused", "08001");
+			}
+			final Connection connection = h2.getConnection();
+			return (Connection) Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class },
+					new InvocationHandler() {
+						public Object invoke(final Object proxy,
+								final Method method, final Object[] args)
+								throws Throwable {
+							if ("toString".equals(method.getName())) {
+								return name;
+							}
+							try {
+								return method.invoke(connection, args);
+							} catch (InvocationTargetException e) {
+								throw e.getTargetException();
+							}
+						}
+					});
+		}
+
+		public Connection getConnection(final String username,
+				final String password) throws SQLException {
+			return getConnection();
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.docstore.core.entity;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * Test entity with a two column key and a timestamp version, for queries
+ * whose parameters span several columns.
+ */
+@Entity
+@Table(name = "t_usr_note")
+public class TUsrNote implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@EmbeddedId
+	private Key id;
+
+	@Column(name = "note_text", length = 200)
+	private String text;
+
+	@Version
+	@Column(name = "updated_at")
+	private Timestamp updatedAt;
+
+	public Key getId() {
+		return id;
+	}
+
+	public void setId(final Key id) {
+		this.id = id;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(final String text) {
+		this.text = text;
+	}
+
+	public Timestamp getUpdatedAt() {
+		return updatedAt;
+	}
+
+	@Embeddable
+	public static class Key implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		@Column(name = "usr_id", nullable = false)
+		private Integer usrId;
+
+		@Column(name = "note_no", nullable = false)
+		private Integer noteNo;
+
+		public Key() {
+		}
+
+		public Key(final Integer usrId, final Integer noteNo) {
+			this.usrId = usrId;
+			this.noteNo = noteNo;
+		}
+
+		public Integer getUsrId() {
+			return usrId;
+		}
+
+		public Integer getNoteNo() {
+			return noteNo;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) other;
+			return usrId.equals(key.usrId) && noteNo.equals(key.noteNo);
+		}
+
+		@Override
+		public int hashCode() {
+			return usrId.hashCode() * 31 + noteNo.hashCode();
+		}
+	}
+
+}
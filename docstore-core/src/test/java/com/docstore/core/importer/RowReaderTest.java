@@ -0,0 +1,104 @@
+package com.docstore.core.importer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the CSV and XLSX row readers.
+ */
+public class RowReaderTest extends TestCase {
+
+	private static final String SPREADSHEETML = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+	private static final String[] HEADER = { "usr_name", "email", "password",
+			"first_name", "last_name" };
+
+	public void testCsvQuotingAndEmptyFields() throws Exception {
+		final RowReader reader = new CsvRowReader(new StringReader(
+				"a,\"b,c\",\"d \"\"e\"\"\"\r\n,\"multi\nline\",x\n"));
+		try {
+			assertEquals(Arrays.asList("a", "b,c", "d \"e\""),
+					Arrays.asList(reader.readRow()));
+			assertEquals(1, reader.getRowNumber());
+			assertEquals(Arrays.asList(null, "multi\nline", "x"),
+					Arrays.asList(reader.readRow()));
+			assertNull(reader.readRow());
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void testColumnIndex() {
+		assertEquals(0, XlsxRowReader.columnIndex("A1"));
+		assertEquals(25, XlsxRowReader.columnIndex("Z10"));
+		assertEquals(26, XlsxRowReader.columnIndex("AA3"));
+	}
+
+	public void testXlsxWithSpilledSharedStrings() throws Exception {
+		final File file = File.createTempFile("row-reader-test", ".xlsx");
+		try {
+			writeWorkbook(file);
+			final RowReader reader = new XlsxRowReader(file,
+					XlsxRowReader.FIRST_SHEET, 2);
+			try {
+				assertEquals(Arrays.asList(HEADER),
+						Arrays.asList(reader.readRow()));
+				assertEquals(1, reader.getRowNumber());
+				assertEquals(Arrays.asList("ILYA  REYTER",
+						"ILYA.REYTER@gmail.com", null, "Ilya", "TRUE"),
+						Arrays.asList(reader.readRow()));
+				assertEquals(3, reader.getRowNumber());
+				assertNull(reader.readRow());
+			} finally {
+				reader.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Writes a workbook with seven shared strings, five of which spill with
+	 * two kept in memory. The second row skips a column, has a phonetic run
+	 * and an inline and a boolean cell.
+	 */
+	private static void writeWorkbook(final File file) throws IOException {
+		final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(
+				file));
+		try {
+			zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+			zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+					+ "<sst xmlns=\"" + SPREADSHEETML + "\">"
+					+ "<si><t>usr_name</t></si><si><t>email</t></si>"
+					+ "<si><t>password</t></si><si><t>first_name</t></si>"
+					+ "<si><t>last_name</t></si>"
+					+ "<si><r><t xml:space=\"preserve\">ILYA  </t></r>"
+					+ "<r><t>REYTER</t></r><rPh sb=\"0\" eb=\"1\"><t>x</t></rPh></si>"
+					+ "<si><t>ILYA.REYTER@gmail.com</t></si></sst>")
+					.getBytes("UTF-8"));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry(XlsxRowReader.FIRST_SHEET));
+			zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+					+ "<worksheet xmlns=\"" + SPREADSHEETML + "\"><sheetData>"
+					+ "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c>"
+					+ "<c r=\"B1\" t=\"s\"><v>1</v></c><c r=\"C1\" t=\"s\"><v>2</v></c>"
+					+ "<c r=\"D1\" t=\"s\"><v>3</v></c><c r=\"E1\" t=\"s\"><v>4</v></c></row>"
+					+ "<row r=\"3\"><c r=\"A3\" t=\"s\"><v>5</v></c>"
+					+ "<c r=\"B3\" t=\"s\"><v>6</v></c>"
+					+ "<c r=\"D3\" t=\"inlineStr\"><is><t>Ilya</t></is></c>"
+					+ "<c r=\"E3\" t=\"b\"><v>1</v></c></row>"
+					+ "</sheetData></worksheet>").getBytes("UTF-8"));
+			zip.closeEntry();
+		} finally {
+			zip.close();
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.docstore.core.monitor;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the latency histogram buckets and percentiles.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	public void testBucketBoundsCoverEveryValue() {
+		final long[] values = { 0, 1, 7, 8, 9, 15, 16, 1000, 123456789L,
+				Long.MAX_VALUE };
+		for (long value : values) {
+			final int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+			if (index > 0) {
+				assertTrue(value > LatencyHistogram.bucketUpperBound(index - 1));
+			}
+		}
+	}
+
+	public void testPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		final long p50 = histogram.getPercentile(50);
+		assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+		final long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 990 && p99 <= 1000);
+		assertEquals(1000, histogram.getMax());
+
+		histogram.reset();
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+}
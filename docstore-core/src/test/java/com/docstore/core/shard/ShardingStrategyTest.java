@@ -0,0 +1,35 @@
+package com.docstore.core.shard;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the shard assignment of identifiers.
+ */
+public class ShardingStrategyTest extends TestCase {
+
+	public void testHashSpreadsNumericIds() {
+		final HashShardingStrategy strategy = new HashShardingStrategy();
+		assertEquals(0, strategy.shardFor(Integer.valueOf(8), 4));
+		assertEquals(3, strategy.shardFor(Long.valueOf(11), 4));
+		final int shard = strategy.shardFor(Integer.valueOf(-5), 4);
+		assertTrue(shard >= 0 && shard < 4);
+	}
+
+	public void testRangeBoundsAreExclusive() {
+		final RangeShardingStrategy strategy = new RangeShardingStrategy();
+		strategy.setUpperBounds(Arrays.asList(2000L, 1000L));
+		assertEquals(0, strategy.shardFor(Integer.valueOf(999), 3));
+		assertEquals(1, strategy.shardFor(Integer.valueOf(1000), 3));
+		assertEquals(1, strategy.shardFor(Long.valueOf(1999), 3));
+		assertEquals(2, strategy.shardFor(Long.valueOf(2000), 3));
+		try {
+			strategy.shardFor(Integer.valueOf(1), 2);
+			fail("bounds do not match the shard count");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.docstore.portal.web;
+
+import org.springframework.ui.ModelMap;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.WebRequestInterceptor;
+
+import com.docstore.core.datasource.DatabaseContextHolder;
+
+/**
+ * Scopes the database routing state of DatabaseContextHolder to one request:
+ * a request that wrote reads from the primary until it completes, and the
+ * next request served by the same thread starts unpinned.
+ *
+ * @author JCoE team
+ * @version 1.0
+ *
+ */
+public class DatabaseContextInterceptor implements WebRequestInterceptor {
+
+	@Override
+	public void preHandle(final WebRequest request) {
+		DatabaseContextHolder.clear();
+	}
+
+	@Override
+	public void postHandle(final WebRequest request, final ModelMap model) {
+	}
+
+	@Override
+	public void afterCompletion(final WebRequest request, final Exception ex) {
+		DatabaseContextHolder.clear();
+	}
+
+}